@@ -1,11 +1,45 @@
 package main;
 
+import main.controller.RecurringScheduler;
+import main.dao.DatabaseLock;
+import main.dao.MonthlyRollups;
 import main.view.LoginFrame;
 
 import javax.swing.*;
+import java.sql.SQLException;
 
 public class Main {
     public static void main(String[] args) {
+        boolean headless = args.length > 0 && ("--rebuild-rollups".equals(args[0]) || "--scheduler".equals(args[0]));
+
+        // Mỗi file DB chỉ được một tiến trình dùng: cache trong bộ nhớ của tiến trình này không thấy các giao dịch
+        // do tiến trình khác ghi (vd. --scheduler chạy song song với giao diện)
+        if (!DatabaseLock.acquire()) {
+            String message = "Cơ sở dữ liệu đang được một tiến trình khác sử dụng (ứng dụng hoặc --scheduler).";
+            if (headless) {
+                System.err.println(message);
+            } else {
+                JOptionPane.showMessageDialog(null, message, "Lỗi", JOptionPane.ERROR_MESSAGE);
+            }
+            System.exit(1);
+        }
+
+        // Tính lại bảng tổng hợp theo tháng rồi thoát: java main.Main --rebuild-rollups
+        if (args.length > 0 && "--rebuild-rollups".equals(args[0])) {
+            rebuildRollups();
+            return;
+        }
+
+        // Chỉ chạy các giao dịch định kỳ, không mở giao diện (máy chủ): java main.Main --scheduler
+        // Không chạy cùng lúc với giao diện trên cùng file DB (giao diện đã tự chạy bộ lập lịch)
+        if (args.length > 0 && "--scheduler".equals(args[0])) {
+            runScheduler();
+            return;
+        }
+
+        // Giao dịch định kỳ của mọi người dùng được chạy trên luồng nền, đúng hạn kể cả khi ứng dụng mở nhiều ngày
+        RecurringScheduler.start();
+
         // Set look and feel to system default
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -20,4 +54,30 @@ public class Main {
             }
         });
     }
-}
\ No newline at end of file
+
+    private static void rebuildRollups() {
+        long start = System.currentTimeMillis();
+        try {
+            MonthlyRollups.rebuild();
+            System.out.println("Đã tính lại monthly_rollups trong " + (System.currentTimeMillis() - start) + " ms");
+        } catch (SQLException e) {
+            System.err.println("Lỗi khi tính lại monthly_rollups: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void runScheduler() {
+        RecurringScheduler.start();
+        System.out.println("Đang chạy bộ lập lịch giao dịch định kỳ (Ctrl+C để dừng)");
+        Runtime.getRuntime().addShutdownHook(new Thread(RecurringScheduler::stop));
+        try {
+            while (true) {
+                Thread.sleep(60 * 60 * 1000L);
+                System.out.println(RecurringScheduler.getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package main.cache;
+
+import main.event.ChangeEvent;
+import main.event.EventBus;
+import main.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Đồng bộ giữa các lần ghi vào transactions và các cache nạp từ DB (RangeSumIndex, LedgerCache, ReportResultCache).
+ * Mỗi lần ghi được bao bởi begin()/Write.close(); một cache nạp xong chỉ được dùng nếu không có lần ghi nào
+ * bắt đầu hoặc kết thúc trong lúc nạp, nhờ vậy không mất hoặc cộng trùng giao dịch nào.
+ */
+public final class CacheWrites {
+    private static int pendingWrites = 0;
+    private static long generation = 0;
+
+    private CacheWrites() {
+    }
+
+    /**
+     * Bắt đầu một lần ghi. Ghi nhận giao dịch bằng added/removed sau khi commit,
+     * các cache được cập nhật khi close() rồi mới phát các sự kiện đã ghi nhận bằng publish.
+     */
+    public static Write begin() {
+        synchronized (CacheWrites.class) {
+            pendingWrites++;
+            generation++;
+        }
+        return new Write();
+    }
+
+    /**
+     * Thế hệ hiện tại trước khi nạp cache, -1 nếu đang có lần ghi chưa xong (khi đó không nên nạp)
+     */
+    static synchronized long startLoad() {
+        return pendingWrites > 0 ? -1 : generation;
+    }
+
+    /**
+     * Cài cache vừa nạp nếu thế hệ chưa đổi kể từ startLoad(); trả về null nếu phải nạp lại
+     */
+    static synchronized <T> T install(long startGeneration, Supplier<T> installer) {
+        return generation == startGeneration ? installer.get() : null;
+    }
+
+    // Gọi khi bỏ cache để các lần nạp đang chạy không cài lại dữ liệu cũ
+    static synchronized void invalidate(Runnable remover) {
+        generation++;
+        remover.run();
+    }
+
+    /**
+     * Một lần ghi đang chạy; dùng với try-with-resources quanh transaction của DB
+     */
+    public static class Write implements AutoCloseable {
+        private final List<Transaction> added = new ArrayList<>(1);
+        private final List<Transaction> removed = new ArrayList<>(1);
+        private final List<ChangeEvent> events = new ArrayList<>(1);
+        private boolean closed = false;
+
+        private Write() {
+        }
+
+        // Giao dịch đã được thêm (gọi sau khi commit)
+        public void added(Transaction t) {
+            added.add(t);
+        }
+
+        // Giao dịch đã bị xóa hoặc bản cũ của giao dịch đã sửa (gọi sau khi commit)
+        public void removed(Transaction t) {
+            removed.add(t);
+        }
+
+        // Sự kiện phát qua EventBus sau khi các cache đã cập nhật (gọi sau khi commit)
+        public void publish(ChangeEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Áp dụng thay đổi khi lần ghi vẫn còn được tính là đang chạy: trong lúc này startLoad() trả về -1
+            // nên không lần nạp nào đọc được dòng vừa commit rồi lại nhận thêm delta của chính dòng đó
+            try {
+                for (Transaction t : removed) {
+                    RangeSumIndex.apply(t, -1);
+                    LedgerCache.apply(t, -1);
+                    ReportResultCache.invalidate(t.getUserId(), t.getTransactionDate());
+                }
+                for (Transaction t : added) {
+                    RangeSumIndex.apply(t, 1);
+                    LedgerCache.apply(t, 1);
+                    ReportResultCache.invalidate(t.getUserId(), t.getTransactionDate());
+                }
+            } finally {
+                synchronized (CacheWrites.class) {
+                    pendingWrites--;
+                    generation++;
+                }
+            }
+            RangeSumIndex.verifyAfterWrite(removed, added);
+            EventBus.publishAll(events);
+        }
+    }
+}
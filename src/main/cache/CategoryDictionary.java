@@ -0,0 +1,190 @@
+package main.cache;
+
+import main.dao.Database;
+import main.model.Category;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Từ điển danh mục trong bộ nhớ: id -> tên, loại, user_id, hạn mức (mảng, vì id danh mục nhỏ và liên tiếp).
+ * Nạp một lần khi cần, danh mục mới được thêm thẳng vào từ điển nên không phải đọc lại bảng categories.
+ * Danh sách giao dịch lấy tên danh mục từ đây thay cho LEFT JOIN categories; mỗi danh mục chỉ có một
+ * đối tượng String tên, dùng chung cho mọi giao dịch đọc ra.
+ * Mỗi bản từ điển không đổi sau khi tạo (thêm danh mục tạo bản mới), nên đọc được từ nhiều luồng.
+ */
+public final class CategoryDictionary {
+    private static volatile CategoryDictionary current;
+
+    private final String[] names;
+    private final String[] types;
+    private final Integer[] userIds;
+    private final BigDecimal[] budgetLimits;
+
+    private CategoryDictionary(int maxId) {
+        names = new String[maxId + 1];
+        types = new String[maxId + 1];
+        userIds = new Integer[maxId + 1];
+        budgetLimits = new BigDecimal[maxId + 1];
+    }
+
+    private CategoryDictionary(CategoryDictionary source, int maxId) {
+        names = Arrays.copyOf(source.names, maxId + 1);
+        types = Arrays.copyOf(source.types, maxId + 1);
+        userIds = Arrays.copyOf(source.userIds, maxId + 1);
+        budgetLimits = Arrays.copyOf(source.budgetLimits, maxId + 1);
+    }
+
+    /**
+     * Từ điển hiện tại, nạp nếu chưa có; null nếu không đọc được DB
+     */
+    public static CategoryDictionary get() {
+        CategoryDictionary dictionary = current;
+        if (dictionary != null) {
+            return dictionary;
+        }
+        synchronized (CategoryDictionary.class) {
+            if (current == null) {
+                try {
+                    current = load();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Gọi sau khi thêm danh mục vào DB: thêm vào từ điển đã nạp (chưa nạp thì lần nạp sau sẽ có)
+     */
+    public static synchronized void added(Category category) {
+        CategoryDictionary dictionary = current;
+        if (dictionary == null) {
+            return;
+        }
+        int id = category.getId();
+        CategoryDictionary updated = new CategoryDictionary(dictionary, Math.max(id, dictionary.names.length - 1));
+        updated.names[id] = category.getName();
+        updated.types[id] = category.getType();
+        updated.userIds[id] = category.getUserId();
+        updated.budgetLimits[id] = category.getBudgetLimit() != null ? category.getBudgetLimit() : BigDecimal.ZERO;
+        current = updated;
+    }
+
+    /**
+     * Bỏ từ điển để lần sau đọc lại (khi bảng categories bị sửa ngoài TransactionController)
+     */
+    public static synchronized void invalidate() {
+        current = null;
+    }
+
+    private static CategoryDictionary load() throws SQLException {
+        try (Connection conn = Database.getConnection();
+             Statement stmt = conn.createStatement()) {
+            int maxId;
+            try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM categories")) {
+                maxId = rs.next() ? rs.getInt(1) : 0;
+            }
+            CategoryDictionary dictionary = new CategoryDictionary(maxId);
+            try (ResultSet rs = stmt.executeQuery("SELECT id, name, type, user_id, budget_limit FROM categories")) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    if (id >= 0 && id <= maxId) {
+                        dictionary.names[id] = rs.getString("name");
+                        dictionary.types[id] = rs.getString("type");
+                        int userId = rs.getInt("user_id");
+                        dictionary.userIds[id] = rs.wasNull() ? null : userId;
+                        BigDecimal budgetLimit = rs.getBigDecimal("budget_limit");
+                        dictionary.budgetLimits[id] = budgetLimit != null ? budgetLimit : BigDecimal.ZERO;
+                    }
+                }
+            }
+            return dictionary;
+        }
+    }
+
+    public String name(int id) {
+        return exists(id) ? names[id] : null;
+    }
+
+    public String type(int id) {
+        return exists(id) ? types[id] : null;
+    }
+
+    public BigDecimal budgetLimit(int id) {
+        return exists(id) ? budgetLimits[id] : null;
+    }
+
+    /**
+     * Danh mục có đúng loại và dùng được cho người dùng (của riêng người dùng hoặc dùng chung)
+     */
+    public boolean isVisible(int id, String type, int userId) {
+        return isVisible(id, userId) && type.equals(types[id]);
+    }
+
+    /**
+     * Danh mục dùng được cho người dùng (của riêng người dùng hoặc dùng chung), mọi loại
+     */
+    public boolean isVisible(int id, int userId) {
+        return exists(id) && (userIds[id] == null || userIds[id] == userId);
+    }
+
+    /**
+     * Các danh mục (mọi loại) mà người dùng dùng được, theo id
+     */
+    public List<Category> list(int userId) {
+        List<Category> list = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (isVisible(id, userId)) {
+                list.add(toCategory(id));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Các danh mục của loại type mà người dùng dùng được, theo id
+     */
+    public List<Category> list(int userId, String type) {
+        List<Category> list = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (isVisible(id, type, userId)) {
+                list.add(toCategory(id));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Mọi danh mục, theo id
+     */
+    public List<Category> listAll() {
+        List<Category> list = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            if (exists(id)) {
+                list.add(toCategory(id));
+            }
+        }
+        return list;
+    }
+
+    private boolean exists(int id) {
+        return id >= 0 && id < names.length && names[id] != null;
+    }
+
+    private Category toCategory(int id) {
+        Category category = new Category(names[id], types[id]);
+        category.setId(id);
+        category.setUserId(userIds[id]);
+        category.setBudgetLimit(budgetLimits[id]);
+        return category;
+    }
+}
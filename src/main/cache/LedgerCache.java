@@ -0,0 +1,320 @@
+package main.cache;
+
+import main.dao.Database;
+import main.model.Money;
+import main.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sổ giao dịch của người dùng dạng cột trong bộ nhớ, để các báo cáo tính toán không cần truy vấn DB.
+ * Mỗi giao dịch chỉ chiếm vài mảng nguyên thủy (id, epoch day, số tiền theo đơn vị nhỏ nhất, danh mục,
+ * bit thu nhập), sắp xếp theo (ngày, id) nên một khoảng ngày là một đoạn liên tiếp tìm được bằng tìm kiếm nhị phân.
+ * Sổ được nạp một lần, cập nhật sau mỗi lần ghi (xem {@link CacheWrites}) và bị loại theo LRU hoặc khi đăng xuất.
+ */
+public final class LedgerCache {
+    // Tắt bằng -Dpf.cache.ledger=false
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pf.cache.ledger", "true"));
+    // Số người dùng giữ sổ cùng lúc
+    private static final int MAX_USERS = Integer.getInteger("pf.cache.ledger.maxUsers", 2);
+    // Người dùng có nhiều giao dịch hơn ngưỡng này không được cache (~20 byte mỗi giao dịch)
+    private static final int MAX_ROWS = Integer.getInteger("pf.cache.ledger.maxRows", 1_000_000);
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final LinkedHashMap<Integer, Ledger> LEDGERS = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Ledger> eldest) {
+            return size() > MAX_USERS;
+        }
+    };
+
+    private LedgerCache() {
+    }
+
+    /**
+     * Sổ của người dùng, nạp nếu chưa có; null nếu cache bị tắt, người dùng có quá nhiều giao dịch
+     * hoặc đang có lần ghi chưa xong (khi đó người gọi truy vấn SQL như cũ)
+     */
+    public static Ledger get(int userId) {
+        if (!ENABLED) {
+            return null;
+        }
+        synchronized (LEDGERS) {
+            Ledger ledger = LEDGERS.get(userId);
+            if (ledger != null) {
+                return ledger;
+            }
+        }
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            long startGeneration = CacheWrites.startLoad();
+            if (startGeneration < 0) {
+                return null;
+            }
+            Ledger loaded;
+            try {
+                loaded = load(userId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            if (loaded == null) {
+                return null;
+            }
+            Ledger installed = CacheWrites.install(startGeneration, () -> {
+                synchronized (LEDGERS) {
+                    Ledger existing = LEDGERS.putIfAbsent(userId, loaded);
+                    return existing != null ? existing : loaded;
+                }
+            });
+            if (installed != null) {
+                return installed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loại sổ của một người dùng (khi đăng xuất)
+     */
+    public static void evict(int userId) {
+        CacheWrites.invalidate(() -> {
+            synchronized (LEDGERS) {
+                LEDGERS.remove(userId);
+            }
+        });
+    }
+
+    public static void clear() {
+        CacheWrites.invalidate(() -> {
+            synchronized (LEDGERS) {
+                LEDGERS.clear();
+            }
+        });
+    }
+
+    // Được CacheWrites gọi sau mỗi lần ghi đã commit
+    static void apply(Transaction t, int sign) {
+        Ledger ledger;
+        synchronized (LEDGERS) {
+            ledger = LEDGERS.get(t.getUserId());
+        }
+        if (ledger == null) {
+            return;
+        }
+        if (sign > 0) {
+            ledger.insert(t.getId(), (int) t.getTransactionDate().toEpochDay(),
+                    t.getMoney().getMinor(), t.getCategoryId(), "INCOME".equals(t.getType()));
+        } else {
+            ledger.remove(t.getId(), (int) t.getTransactionDate().toEpochDay());
+        }
+    }
+
+    private static Ledger load(int userId) throws SQLException {
+        String countSql = "SELECT COUNT(*) FROM transactions WHERE user_id = ?";
+        String sql = "SELECT id, transaction_date, amount, category_id, type FROM transactions " +
+                "WHERE user_id = ? ORDER BY transaction_date, id";
+
+        try (Connection conn = Database.getConnection()) {
+            // Đếm và đọc trên cùng một snapshot
+            conn.setAutoCommit(false);
+            int count;
+            try (PreparedStatement pstmt = conn.prepareStatement(countSql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                count = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (count > MAX_ROWS) {
+                return null;
+            }
+
+            Ledger ledger = new Ledger(Math.max(16, count));
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    ledger.append(rs.getInt("id"),
+                            (int) rs.getDate("transaction_date").toLocalDate().toEpochDay(),
+                            Money.toMinor(rs.getBigDecimal("amount")),
+                            rs.getInt("category_id"),
+                            "INCOME".equals(rs.getString("type")));
+                }
+            }
+            return ledger;
+        }
+    }
+
+    /**
+     * Sổ giao dịch của một người dùng. Đọc các cột trong readLock()/readUnlock();
+     * chỉ số i hợp lệ trong [0, size()).
+     */
+    public static class Ledger {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private int size;
+        private int[] ids;
+        private int[] epochDays;
+        private long[] amountsMinor;
+        private int[] categoryIds;
+        private final BitSet income = new BitSet();
+        private int maxCategoryId;
+
+        Ledger(int capacity) {
+            ids = new int[capacity];
+            epochDays = new int[capacity];
+            amountsMinor = new long[capacity];
+            categoryIds = new int[capacity];
+        }
+
+        public void readLock() {
+            lock.readLock().lock();
+        }
+
+        public void readUnlock() {
+            lock.readLock().unlock();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int id(int i) {
+            return ids[i];
+        }
+
+        public int epochDay(int i) {
+            return epochDays[i];
+        }
+
+        public long amountMinor(int i) {
+            return amountsMinor[i];
+        }
+
+        public int categoryId(int i) {
+            return categoryIds[i];
+        }
+
+        public boolean isIncome(int i) {
+            return income.get(i);
+        }
+
+        // Id danh mục lớn nhất, để người gọi cấp mảng cộng dồn theo danh mục
+        public int maxCategoryId() {
+            return maxCategoryId;
+        }
+
+        /**
+         * Vị trí đầu tiên có ngày >= epochDay
+         */
+        public int lowerBound(long epochDay) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (epochDays[mid] < epochDay) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Vị trí đầu tiên có ngày > epochDay
+         */
+        public int upperBound(long epochDay) {
+            return lowerBound(epochDay + 1);
+        }
+
+        // Chỉ dùng khi nạp (dữ liệu đã sắp xếp theo ngày, id)
+        void append(int id, int epochDay, long amountMinor, int categoryId, boolean isIncome) {
+            ensureCapacity(size + 1);
+            set(size, id, epochDay, amountMinor, categoryId, isIncome);
+            size++;
+        }
+
+        void insert(int id, int epochDay, long amountMinor, int categoryId, boolean isIncome) {
+            lock.writeLock().lock();
+            try {
+                // Vị trí chèn giữ thứ tự (ngày, id)
+                int position = upperBound(epochDay);
+                while (position > 0 && epochDays[position - 1] == epochDay && ids[position - 1] > id) {
+                    position--;
+                }
+                // Giao dịch đã có trong sổ (vd. sổ được nạp sau khi dòng đã commit): không thêm lần nữa
+                if (position > 0 && epochDays[position - 1] == epochDay && ids[position - 1] == id) {
+                    return;
+                }
+                ensureCapacity(size + 1);
+                shift(position, position + 1, size - position);
+                set(position, id, epochDay, amountMinor, categoryId, isIncome);
+                size++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(int id, int epochDay) {
+            lock.writeLock().lock();
+            try {
+                for (int i = lowerBound(epochDay); i < size && epochDays[i] == epochDay; i++) {
+                    if (ids[i] == id) {
+                        shift(i + 1, i, size - i - 1);
+                        size--;
+                        income.clear(size);
+                        return;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void set(int i, int id, int epochDay, long amountMinor, int categoryId, boolean isIncome) {
+            ids[i] = id;
+            epochDays[i] = epochDay;
+            amountsMinor[i] = amountMinor;
+            categoryIds[i] = categoryId;
+            income.set(i, isIncome);
+            maxCategoryId = Math.max(maxCategoryId, categoryId);
+        }
+
+        private void shift(int from, int to, int length) {
+            if (length <= 0) {
+                return;
+            }
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(epochDays, from, epochDays, to, length);
+            System.arraycopy(amountsMinor, from, amountsMinor, to, length);
+            System.arraycopy(categoryIds, from, categoryIds, to, length);
+            // BitSet không có arraycopy: dịch các bit từ cuối đoạn (khi dịch phải) hoặc từ đầu (khi dịch trái)
+            if (to > from) {
+                for (int i = length - 1; i >= 0; i--) {
+                    income.set(to + i, income.get(from + i));
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    income.set(to + i, income.get(from + i));
+                }
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= ids.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, newCapacity);
+            epochDays = Arrays.copyOf(epochDays, newCapacity);
+            amountsMinor = Arrays.copyOf(amountsMinor, newCapacity);
+            categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package main.cache;
+
+import main.dao.Database;
+import main.model.Money;
+import main.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chỉ mục trong bộ nhớ cho tổng thu/chi theo khoảng ngày bất kỳ.
+ * Mỗi người dùng có hai cây Fenwick (thu nhập, chi tiêu) theo epoch day, giá trị tính bằng đơn vị nhỏ nhất
+ * (1/100), nên tổng một khoảng ngày chỉ tốn O(log n) mà không cần truy vấn SQLite.
+ * Chỉ mục được nạp khi cần và được cập nhật sau mỗi lần ghi đã commit (xem {@link CacheWrites}).
+ */
+public final class RangeSumIndex {
+    // Tắt bằng -Dpf.cache.rangeIndex=false
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pf.cache.rangeIndex", "true"));
+    // So chỉ mục với DB sau mỗi lần ghi (đọc lại toàn bộ giao dịch của người dùng, chỉ để gỡ lỗi):
+    // -Dpf.cache.rangeIndex.verify=true
+    private static final boolean VERIFY_WRITES = Boolean.getBoolean("pf.cache.rangeIndex.verify");
+
+    // Khoảng ngày tối đa của một người dùng (~200 năm); dữ liệu trải rộng hơn thì dùng SQL
+    private static final int MAX_SPAN_DAYS = 200 * 366;
+    // Dư thêm mỗi đầu khi mở rộng mảng để không phải mở rộng liên tục
+    private static final int GROW_PADDING_DAYS = 366;
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final Map<Integer, UserIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private RangeSumIndex() {
+    }
+
+    /**
+     * Tổng tiền của một loại giao dịch (INCOME/EXPENSE) trong [startDate, endDate],
+     * null nếu chỉ mục không dùng được (khi đó người gọi truy vấn SQL như cũ)
+     */
+    public static Money sum(int userId, String type, LocalDate startDate, LocalDate endDate) {
+        if (!ENABLED) {
+            return null;
+        }
+        UserIndex index = get(userId);
+        if (index == null) {
+            return null;
+        }
+        return Money.ofMinor(index.sum("INCOME".equals(type), startDate.toEpochDay(), endDate.toEpochDay()));
+    }
+
+    /**
+     * Bỏ chỉ mục của một người dùng (ví dụ khi đăng xuất hoặc sau khi sửa dữ liệu ngoài TransactionController)
+     */
+    public static void invalidate(int userId) {
+        CacheWrites.invalidate(() -> INDEXES.remove(userId));
+    }
+
+    public static void clear() {
+        CacheWrites.invalidate(INDEXES::clear);
+    }
+
+    /**
+     * Kiểm tra bất biến: chỉ mục phải khớp với tổng theo ngày tính lại từ DB.
+     * Trả về true nếu khớp hoặc chỉ mục chưa được nạp.
+     */
+    public static boolean verify(int userId) throws SQLException {
+        UserIndex index = INDEXES.get(userId);
+        if (index == null) {
+            return true;
+        }
+        UserIndex fresh = load(userId);
+        if (fresh == null) {
+            return false;
+        }
+        int mismatches = index.compareTo(fresh, userId);
+        return mismatches == 0;
+    }
+
+    // Được CacheWrites gọi sau khi đã áp dụng xong một lần ghi; chỉ chạy khi bật pf.cache.rangeIndex.verify.
+    // Lần ghi khác chạy cùng lúc có thể làm lệch tạm thời (đã commit nhưng chưa áp dụng).
+    static void verifyAfterWrite(List<Transaction> removed, List<Transaction> added) {
+        if (!VERIFY_WRITES) {
+            return;
+        }
+        Set<Integer> userIds = new TreeSet<>();
+        for (Transaction t : removed) {
+            userIds.add(t.getUserId());
+        }
+        for (Transaction t : added) {
+            userIds.add(t.getUserId());
+        }
+        for (int userId : userIds) {
+            try {
+                if (!verify(userId)) {
+                    System.err.println("RangeSumIndex không khớp với DB sau lần ghi (user " + userId + ")");
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Được CacheWrites gọi sau mỗi lần ghi đã commit
+    static void apply(Transaction t, int sign) {
+        UserIndex index = INDEXES.get(t.getUserId());
+        if (index == null || t.getMoney() == null || t.getTransactionDate() == null) {
+            return;
+        }
+        long delta = sign * t.getMoney().getMinor();
+        if (!index.add("INCOME".equals(t.getType()), t.getTransactionDate().toEpochDay(), delta)) {
+            // Ngày nằm ngoài khoảng hỗ trợ: bỏ chỉ mục, các truy vấn sau sẽ dùng SQL
+            INDEXES.remove(t.getUserId(), index);
+        }
+    }
+
+    private static UserIndex get(int userId) {
+        UserIndex index = INDEXES.get(userId);
+        if (index != null) {
+            return index;
+        }
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            long startGeneration = CacheWrites.startLoad();
+            if (startGeneration < 0) {
+                return null;
+            }
+            UserIndex loaded;
+            try {
+                loaded = load(userId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+            if (loaded == null) {
+                return null;
+            }
+            index = CacheWrites.install(startGeneration, () -> {
+                UserIndex existing = INDEXES.putIfAbsent(userId, loaded);
+                return existing != null ? existing : loaded;
+            });
+            if (index != null) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    // Đọc toàn bộ (ngày, số tiền, loại) của người dùng; null nếu khoảng ngày quá rộng
+    private static UserIndex load(int userId) throws SQLException {
+        String rangeSql = "SELECT MIN(transaction_date), MAX(transaction_date) FROM transactions WHERE user_id = ?";
+        String sql = "SELECT transaction_date, amount, type FROM transactions WHERE user_id = ?";
+
+        try (Connection conn = Database.getConnection()) {
+            // Hai truy vấn đọc trên cùng một snapshot (kết nối được rollback khi trả về pool)
+            conn.setAutoCommit(false);
+            long minDay;
+            long maxDay;
+            try (PreparedStatement pstmt = conn.prepareStatement(rangeSql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                if (!rs.next() || rs.getDate(1) == null) {
+                    // Chưa có giao dịch: tạo chỉ mục quanh ngày hiện tại
+                    minDay = maxDay = LocalDate.now().toEpochDay();
+                } else {
+                    minDay = rs.getDate(1).toLocalDate().toEpochDay();
+                    maxDay = rs.getDate(2).toLocalDate().toEpochDay();
+                }
+            }
+            if (maxDay - minDay + 1 > MAX_SPAN_DAYS) {
+                return null;
+            }
+
+            UserIndex index = new UserIndex(minDay - GROW_PADDING_DAYS,
+                    (int) (maxDay - minDay + 1) + 2 * GROW_PADDING_DAYS);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    index.addDaily("INCOME".equals(rs.getString("type")),
+                            rs.getDate("transaction_date").toLocalDate().toEpochDay(),
+                            Money.toMinor(rs.getBigDecimal("amount")));
+                }
+            }
+            index.buildTrees();
+            return index;
+        }
+    }
+
+    /**
+     * Chỉ mục của một người dùng: tổng theo ngày và cây Fenwick trên khoảng [baseDay, baseDay + size)
+     */
+    private static class UserIndex {
+        private long baseDay;
+        private long[] dailyIncome;
+        private long[] dailyExpense;
+        private long[] incomeTree;
+        private long[] expenseTree;
+
+        UserIndex(long baseDay, int size) {
+            this.baseDay = baseDay;
+            this.dailyIncome = new long[size];
+            this.dailyExpense = new long[size];
+        }
+
+        // Chỉ dùng khi nạp, trước buildTrees()
+        void addDaily(boolean income, long epochDay, long minor) {
+            (income ? dailyIncome : dailyExpense)[(int) (epochDay - baseDay)] += minor;
+        }
+
+        // Dựng cây Fenwick từ mảng theo ngày trong O(n)
+        void buildTrees() {
+            incomeTree = build(dailyIncome);
+            expenseTree = build(dailyExpense);
+        }
+
+        private static long[] build(long[] daily) {
+            long[] tree = new long[daily.length + 1];
+            for (int i = 1; i <= daily.length; i++) {
+                tree[i] += daily[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= daily.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+            return tree;
+        }
+
+        synchronized long sum(boolean income, long startDay, long endDay) {
+            long from = Math.max(startDay, baseDay);
+            long to = Math.min(endDay, baseDay + dailyIncome.length - 1);
+            if (from > to) {
+                return 0;
+            }
+            long[] tree = income ? incomeTree : expenseTree;
+            return prefix(tree, (int) (to - baseDay) + 1) - prefix(tree, (int) (from - baseDay));
+        }
+
+        private static long prefix(long[] tree, int count) {
+            long sum = 0;
+            for (int i = count; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        /**
+         * Cộng delta vào một ngày, mở rộng mảng nếu cần; false nếu vượt quá khoảng hỗ trợ
+         */
+        synchronized boolean add(boolean income, long epochDay, long delta) {
+            if (epochDay < baseDay || epochDay >= baseDay + dailyIncome.length) {
+                if (!grow(epochDay)) {
+                    return false;
+                }
+            }
+            int position = (int) (epochDay - baseDay);
+            (income ? dailyIncome : dailyExpense)[position] += delta;
+            long[] tree = income ? incomeTree : expenseTree;
+            for (int i = position + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+            return true;
+        }
+
+        private boolean grow(long epochDay) {
+            long newBase = Math.min(baseDay, epochDay - GROW_PADDING_DAYS);
+            long newEnd = Math.max(baseDay + dailyIncome.length, epochDay + GROW_PADDING_DAYS + 1);
+            if (newEnd - newBase > MAX_SPAN_DAYS + 2L * GROW_PADDING_DAYS) {
+                return false;
+            }
+            int offset = (int) (baseDay - newBase);
+            long[] income = new long[(int) (newEnd - newBase)];
+            long[] expense = new long[income.length];
+            System.arraycopy(dailyIncome, 0, income, offset, dailyIncome.length);
+            System.arraycopy(dailyExpense, 0, expense, offset, dailyExpense.length);
+            baseDay = newBase;
+            dailyIncome = income;
+            dailyExpense = expense;
+            buildTrees();
+            return true;
+        }
+
+        // Số ngày có tổng khác với chỉ mục tính lại từ DB (ghi chi tiết vài ngày đầu ra stderr)
+        synchronized int compareTo(UserIndex fresh, int userId) {
+            long from = Math.min(baseDay, fresh.baseDay);
+            long to = Math.max(baseDay + dailyIncome.length, fresh.baseDay + fresh.dailyIncome.length);
+            int mismatches = 0;
+            for (long day = from; day < to; day++) {
+                long income = daily(dailyIncome, day);
+                long expense = daily(dailyExpense, day);
+                long freshIncome = fresh.daily(fresh.dailyIncome, day);
+                long freshExpense = fresh.daily(fresh.dailyExpense, day);
+                if (income != freshIncome || expense != freshExpense) {
+                    if (mismatches++ < 10) {
+                        System.err.println("RangeSumIndex lệch (user " + userId + ", " + LocalDate.ofEpochDay(day)
+                                + "): thu " + Money.toBigDecimal(income) + "/" + Money.toBigDecimal(freshIncome)
+                                + ", chi " + Money.toBigDecimal(expense) + "/" + Money.toBigDecimal(freshExpense));
+                    }
+                }
+            }
+            return mismatches;
+        }
+
+        private long daily(long[] values, long day) {
+            long position = day - baseDay;
+            return position >= 0 && position < values.length ? values[(int) position] : 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package main.cache;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache kết quả báo cáo theo (người dùng, loại báo cáo, ngày bắt đầu, ngày kết thúc, tham số), LRU và có hạn dùng.
+ * Mỗi giao dịch được ghi (xem {@link CacheWrites}) chỉ làm mất các kết quả của người dùng đó có khoảng ngày
+ * chứa ngày của giao dịch. Kết quả được dùng chung giữa các lần gọi nên người gọi không được sửa.
+ */
+public final class ReportResultCache {
+    // Tắt bằng -Dpf.cache.reports=false
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("pf.cache.reports", "true"));
+    private static final int MAX_ENTRIES = Integer.getInteger("pf.cache.reports.maxEntries", 256);
+    private static final long TTL_MS = Long.getLong("pf.cache.reports.ttlMs", 5 * 60_000L);
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder EXPIRATIONS = new LongAdder();
+    private static final LongAdder INVALIDATIONS = new LongAdder();
+
+    private static final LinkedHashMap<Key, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                EVICTIONS.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private ReportResultCache() {
+    }
+
+    /**
+     * Tính một kết quả báo cáo; nếu ném ngoại lệ thì không có gì được cache
+     */
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    /**
+     * Kết quả đã cache của báo cáo, nếu chưa có (hoặc đã hết hạn) thì gọi loader và cache lại.
+     * Kết quả tính trong lúc có lần ghi đang chạy hoặc vừa xong thì không được cache.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, E extends Exception> T get(int userId, String type, LocalDate startDate, LocalDate endDate,
+                                                 Loader<T, E> loader, Object... params) throws E {
+        if (!ENABLED) {
+            return loader.load();
+        }
+
+        Key key = new Key(userId, type, startDate, endDate, params);
+        long now = System.currentTimeMillis();
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                if (now - entry.createdAt < TTL_MS) {
+                    HITS.increment();
+                    return (T) entry.value;
+                }
+                ENTRIES.remove(key);
+                EXPIRATIONS.increment();
+            }
+        }
+        MISSES.increment();
+
+        long startGeneration = CacheWrites.startLoad();
+        T value = loader.load();
+        if (startGeneration >= 0) {
+            CacheWrites.install(startGeneration, () -> {
+                synchronized (ENTRIES) {
+                    ENTRIES.put(key, new Entry(value, now));
+                }
+                return value;
+            });
+        }
+        return value;
+    }
+
+    /**
+     * Bỏ các kết quả của người dùng có khoảng ngày chứa date
+     */
+    static void invalidate(int userId, LocalDate date) {
+        CacheWrites.invalidate(() -> {
+            synchronized (ENTRIES) {
+                Iterator<Key> it = ENTRIES.keySet().iterator();
+                while (it.hasNext()) {
+                    Key key = it.next();
+                    if (key.userId == userId && !date.isBefore(key.startDate) && !date.isAfter(key.endDate)) {
+                        it.remove();
+                        INVALIDATIONS.increment();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Bỏ mọi kết quả của một người dùng (khi đăng xuất hoặc sau khi ghi hàng loạt ngoài CacheWrites)
+     */
+    public static void invalidate(int userId) {
+        CacheWrites.invalidate(() -> {
+            synchronized (ENTRIES) {
+                Iterator<Key> it = ENTRIES.keySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next().userId == userId) {
+                        it.remove();
+                        INVALIDATIONS.increment();
+                    }
+                }
+            }
+        });
+    }
+
+    public static void clear() {
+        CacheWrites.invalidate(() -> {
+            synchronized (ENTRIES) {
+                ENTRIES.clear();
+            }
+        });
+    }
+
+    public static Stats getStats() {
+        int size;
+        synchronized (ENTRIES) {
+            size = ENTRIES.size();
+        }
+        return new Stats(size, HITS.sum(), MISSES.sum(), EVICTIONS.sum(), EXPIRATIONS.sum(), INVALIDATIONS.sum());
+    }
+
+    private static final class Key {
+        private final int userId;
+        private final String type;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final Object[] params;
+
+        Key(int userId, String type, LocalDate startDate, LocalDate endDate, Object[] params) {
+            this.userId = userId;
+            this.type = type;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userId == other.userId && type.equals(other.type) && startDate.equals(other.startDate)
+                    && endDate.equals(other.endDate) && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = userId;
+            result = 31 * result + type.hashCode();
+            result = 31 * result + startDate.hashCode();
+            result = 31 * result + endDate.hashCode();
+            return 31 * result + Arrays.hashCode(params);
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long createdAt;
+
+        Entry(Object value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Số liệu của cache kết quả báo cáo
+     */
+    public static class Stats {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+
+        Stats(int size, long hits, long misses, long evictions, long expirations, long invalidations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        // Bị loại vì cache đầy (LRU)
+        public long getEvictions() {
+            return evictions;
+        }
+
+        // Bị loại vì hết hạn dùng
+        public long getExpirations() {
+            return expirations;
+        }
+
+        // Bị loại vì có giao dịch được ghi trong khoảng ngày của kết quả
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ReportResultCache[size=%d, hits=%d, misses=%d, evictions=%d, expirations=%d, "
+                            + "invalidations=%d, hitRate=%.1f%%]",
+                    size, hits, misses, evictions, expirations, invalidations, getHitRate() * 100);
+        }
+    }
+}
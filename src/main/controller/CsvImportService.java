@@ -0,0 +1,533 @@
+package main.controller;
+
+import main.dao.Database;
+import main.model.BatchInsertResult;
+import main.model.ImportReport;
+import main.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Nhập giao dịch từ file CSV (định dạng của ReportController.exportToCSV hoặc theo mapping tùy chọn, .gz cũng được).
+ * File được đọc dạng stream theo từng khối: nhiều luồng phân tích song song, một luồng ghi
+ * duy nhất thêm vào DB bằng TransactionController.addTransactions, nên bộ nhớ không phụ thuộc kích thước file.
+ */
+public class CsvImportService {
+
+    // Số dòng trong mỗi khối gửi cho luồng phân tích / mỗi lần ghi
+    private static final int CHUNK_SIZE = 2_000;
+    private static final int MAX_REPORTED_ERRORS = 1_000;
+
+    /**
+     * Nhận thông báo tiến độ sau mỗi khối được ghi
+     */
+    public interface ProgressListener {
+        void onProgress(ImportReport report);
+    }
+
+    /**
+     * Nhập file theo định dạng mặc định của chức năng xuất CSV
+     */
+    public static ImportReport importFile(int userId, Path file) throws IOException {
+        return importFile(userId, file, CsvMapping.exporterFormat(), null);
+    }
+
+    public static ImportReport importFile(int userId, Path file, CsvMapping mapping,
+                                          ProgressListener listener) throws IOException {
+        ImportReport report = new ImportReport(MAX_REPORTED_ERRORS);
+        long start = System.currentTimeMillis();
+
+        Map<String, Integer> categoryIds = loadCategoryIds(userId);
+        int parserThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, r -> {
+            Thread t = new Thread(r, "csv-import-parser");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Hàng đợi có giới hạn giữa luồng đọc và luồng ghi: giữ bộ nhớ không đổi
+        BlockingQueue<Future<ParsedChunk>> pending = new ArrayBlockingQueue<>(parserThreads * 2);
+        AtomicReference<Throwable> writerError = new AtomicReference<>();
+        Thread writer = new Thread(() -> writeChunks(pending, report, start, listener, writerError),
+                "csv-import-writer");
+        writer.start();
+
+        IOException readError = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(openInput(file), StandardCharsets.UTF_8), 1 << 16)) {
+
+            CsvRecordReader records = new CsvRecordReader(reader);
+            if (mapping.isHasHeader()) {
+                records.next();
+            }
+
+            List<RawRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+            RawRecord record;
+            while ((record = records.next()) != null) {
+                chunk.add(record);
+                if (chunk.size() == CHUNK_SIZE) {
+                    submit(parsers, pending, chunk, userId, mapping, categoryIds, writer, writerError);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(parsers, pending, chunk, userId, mapping, categoryIds, writer, writerError);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.setAborted(true);
+        } catch (IOException e) {
+            readError = e;
+            report.setAborted(true);
+        } finally {
+            // Các khối đã đọc xong vẫn được ghi; chờ luồng ghi kết thúc để báo đúng số dòng đã nhập
+            enqueueEnd(pending, writer);
+            parsers.shutdown();
+            awaitWriter(writer, report);
+        }
+
+        if (writerError.get() != null) {
+            report.setAborted(true);
+            writerError.get().printStackTrace();
+        }
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        if (readError != null) {
+            throw new IOException("Lỗi đọc file sau khi đã nhập " + report.getRowsImported() + " dòng: "
+                    + readError.getMessage(), readError);
+        }
+        return report;
+    }
+
+    private static void awaitWriter(Thread writer, ImportReport report) {
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+            report.setAborted(true);
+        }
+    }
+
+    // File .gz (xuất với tùy chọn nén) được giải nén khi đọc
+    private static InputStream openInput(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return in;
+    }
+
+    private static void submit(ExecutorService parsers, BlockingQueue<Future<ParsedChunk>> pending,
+                               List<RawRecord> chunk, int userId, CsvMapping mapping,
+                               Map<String, Integer> categoryIds, Thread writer,
+                               AtomicReference<Throwable> writerError) throws InterruptedException {
+        Future<ParsedChunk> future = parsers.submit(() -> parseChunk(chunk, userId, mapping, categoryIds));
+        // Chờ chỗ trống trong hàng đợi, dừng nếu luồng ghi đã chết
+        while (!pending.offer(future, 200, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive() || writerError.get() != null) {
+                future.cancel(true);
+                throw new InterruptedException("Luồng ghi đã dừng");
+            }
+        }
+    }
+
+    // Đánh dấu hết dữ liệu bằng một Future rỗng
+    private static void enqueueEnd(BlockingQueue<Future<ParsedChunk>> pending, Thread writer) {
+        Future<ParsedChunk> end = CompletableFuture.completedFuture(ParsedChunk.END);
+        try {
+            while (writer.isAlive() && !pending.offer(end, 200, TimeUnit.MILLISECONDS)) {
+                // Luồng ghi vẫn đang xử lý, tiếp tục chờ
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * Luồng ghi duy nhất: lấy các khối theo đúng thứ tự đã đọc và thêm vào DB bằng batch
+     */
+    private static void writeChunks(BlockingQueue<Future<ParsedChunk>> pending, ImportReport report,
+                                    long start, ProgressListener listener, AtomicReference<Throwable> writerError) {
+        try {
+            while (true) {
+                ParsedChunk chunk = pending.take().get();
+                if (chunk == ParsedChunk.END) {
+                    return;
+                }
+
+                report.addRowsRead(chunk.rowsRead);
+                for (ImportReport.LineError error : chunk.errors) {
+                    report.addError(error.getLineNumber(), error.getMessage());
+                }
+
+                if (!chunk.transactions.isEmpty()) {
+                    BatchInsertResult result = TransactionController.addTransactions(chunk.transactions);
+                    report.addRowsImported(result.getInsertedCount());
+                    for (Map.Entry<Integer, String> failure : result.getFailures().entrySet()) {
+                        report.addError(chunk.lineNumbers[failure.getKey()], failure.getValue());
+                    }
+                }
+
+                report.setElapsedMillis(System.currentTimeMillis() - start);
+                if (listener != null) {
+                    listener.onProgress(report);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerError.set(e);
+        } catch (ExecutionException | RuntimeException e) {
+            writerError.set(e);
+        }
+    }
+
+    /**
+     * Phân tích một khối dòng thành giao dịch (chạy trên luồng phân tích)
+     */
+    private static ParsedChunk parseChunk(List<RawRecord> records, int userId, CsvMapping mapping,
+                                          Map<String, Integer> categoryIds) {
+        ParsedChunk parsed = new ParsedChunk(records.size());
+        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(mapping.getDatePattern());
+
+        for (RawRecord record : records) {
+            if (record.text.trim().isEmpty()) {
+                parsed.rowsRead--;
+                continue;
+            }
+            try {
+                String[] fields = splitFields(record.text, mapping.getDelimiter());
+                parsed.add(toTransaction(fields, userId, mapping, dateFormatter, categoryIds), record.lineNumber);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                parsed.errors.add(new ImportReport.LineError(record.lineNumber, e.getMessage()));
+            }
+        }
+        return parsed;
+    }
+
+    private static Transaction toTransaction(String[] fields, int userId, CsvMapping mapping,
+                                             DateTimeFormatter dateFormatter, Map<String, Integer> categoryIds) {
+        LocalDate date = LocalDate.parse(field(fields, mapping.getDateColumn(), "ngày"), dateFormatter);
+
+        BigDecimal amount;
+        String amountText = field(fields, mapping.getAmountColumn(), "số tiền").replace(" ", "");
+        try {
+            amount = new BigDecimal(amountText);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Số tiền không hợp lệ: " + amountText);
+        }
+
+        // Không có cột loại: số âm là chi tiêu, số dương là thu nhập (định dạng sao kê ngân hàng)
+        String type;
+        if (mapping.getTypeColumn() < 0) {
+            type = amount.signum() < 0 ? "EXPENSE" : "INCOME";
+        } else {
+            type = mapping.resolveType(field(fields, mapping.getTypeColumn(), "loại"));
+        }
+        amount = amount.abs();
+        if (amount.signum() == 0) {
+            throw new IllegalArgumentException("Số tiền phải lớn hơn 0");
+        }
+
+        String categoryName = field(fields, mapping.getCategoryColumn(), "danh mục");
+        Integer categoryId = categoryIds.get(categoryKey(categoryName, type));
+        if (categoryId == null) {
+            throw new IllegalArgumentException("Không tìm thấy danh mục '" + categoryName + "' (" + type + ")");
+        }
+
+        String description = mapping.getDescriptionColumn() >= 0 && mapping.getDescriptionColumn() < fields.length
+                ? fields[mapping.getDescriptionColumn()] : "";
+
+        return new Transaction(userId, categoryId, amount, description, date, type);
+    }
+
+    private static String field(String[] fields, int column, String name) {
+        if (column < 0 || column >= fields.length) {
+            throw new IllegalArgumentException("Thiếu cột " + name + " (cột " + (column + 1) + ")");
+        }
+        String value = fields[column].trim();
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Cột " + name + " bị trống");
+        }
+        return value;
+    }
+
+    /**
+     * Tách một bản ghi CSV thành các trường (hỗ trợ trường trong dấu nháy kép và "" để escape)
+     */
+    static String[] splitFields(String record, char delimiter) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else if (c != '\r') {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    // Đọc danh mục một lần: (tên viết thường, loại) -> id
+    private static Map<String, Integer> loadCategoryIds(int userId) {
+        Map<String, Integer> ids = new HashMap<>();
+        String sql = "SELECT id, name, type FROM categories WHERE user_id = ? OR user_id IS NULL";
+
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                ids.putIfAbsent(categoryKey(rs.getString("name"), rs.getString("type")), rs.getInt("id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return ids;
+    }
+
+    private static String categoryKey(String name, String type) {
+        return name.trim().toLowerCase(Locale.ROOT) + '|' + type;
+    }
+
+    /**
+     * Đọc từng bản ghi CSV, gộp các dòng khi trường trong dấu nháy chứa xuống dòng
+     */
+    private static class CsvRecordReader {
+        private final BufferedReader reader;
+        private long lineNumber = 0;
+
+        CsvRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        RawRecord next() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1); // Bỏ BOM UTF-8
+            }
+
+            long startLine = lineNumber;
+            if (countQuotes(line) % 2 == 0) {
+                return new RawRecord(startLine, line);
+            }
+
+            StringBuilder record = new StringBuilder(line);
+            int quotes = countQuotes(line);
+            String more;
+            while (quotes % 2 != 0 && (more = reader.readLine()) != null) {
+                lineNumber++;
+                record.append('\n').append(more);
+                quotes += countQuotes(more);
+            }
+            return new RawRecord(startLine, record.toString());
+        }
+
+        private static int countQuotes(String s) {
+            int count = 0;
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) == '"') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static class RawRecord {
+        final long lineNumber;
+        final String text;
+
+        RawRecord(long lineNumber, String text) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+    }
+
+    private static class ParsedChunk {
+        static final ParsedChunk END = new ParsedChunk(0);
+
+        final List<Transaction> transactions;
+        final List<ImportReport.LineError> errors = new ArrayList<>();
+        final long[] lineNumbers;
+        int rowsRead;
+
+        ParsedChunk(int size) {
+            this.transactions = new ArrayList<>(size);
+            this.lineNumbers = new long[size];
+            this.rowsRead = size;
+        }
+
+        void add(Transaction t, long lineNumber) {
+            lineNumbers[transactions.size()] = lineNumber;
+            transactions.add(t);
+        }
+    }
+
+    /**
+     * Cách ánh xạ các cột của file CSV. Mặc định giống file do exportToCSV tạo ra:
+     * Ngày,Danh mục,Mô tả,Số tiền,Loại
+     */
+    public static class CsvMapping {
+        private int dateColumn = 0;
+        private int categoryColumn = 1;
+        private int descriptionColumn = 2;
+        private int amountColumn = 3;
+        private int typeColumn = 4; // -1: suy ra loại từ dấu của số tiền
+        private char delimiter = ',';
+        private boolean hasHeader = true;
+        private String datePattern = "yyyy-MM-dd";
+        private Set<String> incomeLabels = new HashSet<>(Arrays.asList("thu nhập", "income"));
+        private Set<String> expenseLabels = new HashSet<>(Arrays.asList("chi tiêu", "expense"));
+
+        public static CsvMapping exporterFormat() {
+            return new CsvMapping();
+        }
+
+        String resolveType(String label) {
+            String normalized = label.trim().toLowerCase(Locale.ROOT);
+            if (incomeLabels.contains(normalized)) {
+                return "INCOME";
+            }
+            if (expenseLabels.contains(normalized)) {
+                return "EXPENSE";
+            }
+            throw new IllegalArgumentException("Loại giao dịch không hợp lệ: " + label);
+        }
+
+        public int getDateColumn() {
+            return dateColumn;
+        }
+
+        public void setDateColumn(int dateColumn) {
+            this.dateColumn = dateColumn;
+        }
+
+        public int getCategoryColumn() {
+            return categoryColumn;
+        }
+
+        public void setCategoryColumn(int categoryColumn) {
+            this.categoryColumn = categoryColumn;
+        }
+
+        public int getDescriptionColumn() {
+            return descriptionColumn;
+        }
+
+        public void setDescriptionColumn(int descriptionColumn) {
+            this.descriptionColumn = descriptionColumn;
+        }
+
+        public int getAmountColumn() {
+            return amountColumn;
+        }
+
+        public void setAmountColumn(int amountColumn) {
+            this.amountColumn = amountColumn;
+        }
+
+        public int getTypeColumn() {
+            return typeColumn;
+        }
+
+        public void setTypeColumn(int typeColumn) {
+            this.typeColumn = typeColumn;
+        }
+
+        public char getDelimiter() {
+            return delimiter;
+        }
+
+        public void setDelimiter(char delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        public boolean isHasHeader() {
+            return hasHeader;
+        }
+
+        public void setHasHeader(boolean hasHeader) {
+            this.hasHeader = hasHeader;
+        }
+
+        public String getDatePattern() {
+            return datePattern;
+        }
+
+        public void setDatePattern(String datePattern) {
+            this.datePattern = datePattern;
+        }
+
+        public void setIncomeLabels(Set<String> labels) {
+            this.incomeLabels = normalize(labels);
+        }
+
+        public void setExpenseLabels(Set<String> labels) {
+            this.expenseLabels = normalize(labels);
+        }
+
+        private static Set<String> normalize(Set<String> labels) {
+            Set<String> normalized = new HashSet<>();
+            for (String label : labels) {
+                normalized.add(label.trim().toLowerCase(Locale.ROOT));
+            }
+            return normalized;
+        }
+    }
+}
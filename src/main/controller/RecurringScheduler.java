@@ -0,0 +1,325 @@
+package main.controller;
+
+import main.event.ChangeBatch;
+import main.event.ChangeEvent;
+import main.event.EventBus;
+import main.model.RecurringTask;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chạy các khoản định kỳ của mọi người dùng đúng hạn trên luồng nền "pf-recurring", kể cả khi ứng dụng
+ * mở liên tục qua nhiều ngày hoặc chạy không có giao diện.
+ * Giữ một hàng đợi ưu tiên theo thời điểm chạy kế tiếp của từng task (0 giờ ngày chạy), ngủ tới hạn sớm nhất rồi
+ * chạy mọi task đã đến hạn trong một transaction (RecurringService.executeTasks).
+ * Thêm/sửa/xóa task qua RecurringService phát RecurringTaskChanged trên EventBus; bộ lập lịch chỉ đọc lại đúng
+ * các task đó, không quét định kỳ bảng recurring_tasks.
+ */
+public final class RecurringScheduler {
+    // Ngủ tối đa chừng này rồi kiểm tra lại đồng hồ (máy ngủ, đổi giờ hệ thống); không đọc DB khi thức dậy
+    private static final long MAX_SLEEP_MS = 60 * 60 * 1000L;
+    // Task chạy lỗi (vd. danh mục không hợp lệ) được thử lại sau khoảng này (-Dpf.recurring.retryMinutes=...)
+    private static final long RETRY_DELAY_MS = Long.getLong("pf.recurring.retryMinutes", 60) * 60 * 1000L;
+
+    private static final Object LOCK = new Object();
+    private static final PriorityQueue<Entry> QUEUE = new PriorityQueue<>();
+    // Mục hiện hành của từng task; mục cũ còn trong QUEUE bị bỏ qua khi lấy ra
+    private static final Map<Integer, Entry> ENTRIES = new HashMap<>();
+    // Task cần đọc lại (đã thay đổi hoặc vừa chạy ở nơi khác), xử lý trên luồng lập lịch
+    private static final Set<Integer> CHANGED = new LinkedHashSet<>();
+    private static final Set<Integer> DELETED = new LinkedHashSet<>();
+
+    private static final LongAdder FIRED = new LongAdder();
+    private static final LongAdder BATCHES = new LongAdder();
+    private static final LongAdder TOTAL_LAG_MS = new LongAdder();
+    private static final AtomicLong MAX_LAG_MS = new AtomicLong();
+    private static final AtomicLong LAST_LAG_MS = new AtomicLong();
+
+    private static Thread thread;
+    private static EventBus.Subscription subscription;
+    private static volatile boolean running = false;
+
+    private RecurringScheduler() {
+    }
+
+    /**
+     * Bắt đầu lập lịch (gọi nhiều lần không sao). Task đã quá hạn được chạy ngay.
+     */
+    public static synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        subscription = EventBus.subscribe(RecurringScheduler::onChange);
+        thread = new Thread(RecurringScheduler::run, "pf-recurring");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Dừng lập lịch; lần chạy đang dở vẫn được commit hoặc rollback trọn vẹn
+     */
+    public static synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        subscription.close();
+        synchronized (LOCK) {
+            LOCK.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (LOCK) {
+            QUEUE.clear();
+            ENTRIES.clear();
+            CHANGED.clear();
+            DELETED.clear();
+        }
+    }
+
+    // Trên luồng của EventBus: chỉ ghi nhận task cần đọc lại rồi đánh thức luồng lập lịch
+    private static void onChange(ChangeBatch batch) {
+        synchronized (LOCK) {
+            for (ChangeEvent.RecurringTaskChanged event : batch.eventsOf(ChangeEvent.RecurringTaskChanged.class)) {
+                (event.isDeleted() ? DELETED : CHANGED).add(event.getTaskId());
+            }
+            // Task được chạy ở nơi khác (vd. RecurringService.checkAndExecuteTasks) đã dời ngày chạy kế tiếp
+            for (ChangeEvent.RecurringExecuted event : batch.eventsOf(ChangeEvent.RecurringExecuted.class)) {
+                CHANGED.add(event.getTaskId());
+            }
+            CHANGED.removeAll(DELETED);
+            if (!CHANGED.isEmpty() || !DELETED.isEmpty()) {
+                LOCK.notifyAll();
+            }
+        }
+    }
+
+    private static void run() {
+        try {
+            schedule(RecurringService.getAllTasks());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        while (running) {
+            List<Integer> changed;
+            List<Integer> due = new ArrayList<>();
+            long now;
+            synchronized (LOCK) {
+                for (int taskId : DELETED) {
+                    ENTRIES.remove(taskId);
+                }
+                DELETED.clear();
+                changed = new ArrayList<>(CHANGED);
+                CHANGED.clear();
+
+                now = System.currentTimeMillis();
+                if (changed.isEmpty()) {
+                    Entry head = peek();
+                    if (head == null || head.fireAt > now) {
+                        long sleep = head == null ? MAX_SLEEP_MS : Math.min(head.fireAt - now, MAX_SLEEP_MS);
+                        try {
+                            LOCK.wait(sleep);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        continue;
+                    }
+                    // Lấy mọi task đã đến hạn để chạy chung một lần
+                    while (peek() != null && peek().fireAt <= now) {
+                        Entry entry = QUEUE.poll();
+                        ENTRIES.remove(entry.taskId);
+                        due.add(entry.taskId);
+                        // Kỳ đã quá hạn từ trước khi task vào hàng đợi (ứng dụng đang tắt, task vừa thêm)
+                        // không tính vào độ trễ
+                        recordLag(now - Math.max(entry.fireAt, entry.queuedAt));
+                    }
+                }
+            }
+
+            try {
+                if (!changed.isEmpty()) {
+                    List<RecurringTask> tasks = RecurringService.getTasks(changed);
+                    synchronized (LOCK) {
+                        // Task không còn trong DB (đã bị xóa) thì bỏ khỏi lịch
+                        for (int taskId : changed) {
+                            ENTRIES.remove(taskId);
+                        }
+                    }
+                    schedule(tasks);
+                    continue;
+                }
+
+                BATCHES.increment();
+                RecurringService.executeTasks(due, LocalDate.now());
+                // Đọc lại ngày chạy kế tiếp; task vẫn còn kỳ đến hạn (chạy lỗi) thì thử lại sau RETRY_DELAY_MS
+                schedule(RecurringService.getTasks(due), System.currentTimeMillis() + RETRY_DELAY_MS);
+            } catch (SQLException | RuntimeException e) {
+                e.printStackTrace();
+                // Lỗi đọc DB: thử lại các task này sau RETRY_DELAY_MS
+                long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+                synchronized (LOCK) {
+                    for (int taskId : due) {
+                        push(new Entry(taskId, retryAt));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void schedule(List<RecurringTask> tasks) {
+        schedule(tasks, Long.MIN_VALUE);
+    }
+
+    // notBefore: mốc sớm nhất cho task còn kỳ đến hạn hôm nay (Long.MIN_VALUE = chạy ngay);
+    // task có ngày chạy kế tiếp sau hôm nay được xếp đúng ngày đó
+    private static void schedule(List<RecurringTask> tasks, long notBefore) {
+        LocalDate today = LocalDate.now();
+        synchronized (LOCK) {
+            for (RecurringTask task : tasks) {
+                LocalDate runDate = RecurringService.nextRunDate(task, today);
+                // Quy tắc không còn lần chạy nào: không xếp lịch
+                if (runDate == null) {
+                    continue;
+                }
+                long fireAt = toMillis(runDate);
+                push(new Entry(task.getId(), runDate.isAfter(today) ? fireAt : Math.max(fireAt, notBefore)));
+            }
+            LOCK.notifyAll();
+        }
+    }
+
+    private static long toMillis(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Gọi khi đang giữ LOCK
+    private static void push(Entry entry) {
+        ENTRIES.put(entry.taskId, entry);
+        QUEUE.add(entry);
+    }
+
+    // Mục hiện hành sớm nhất (bỏ các mục đã bị thay thế); gọi khi đang giữ LOCK
+    private static Entry peek() {
+        Entry head = QUEUE.peek();
+        while (head != null && ENTRIES.get(head.taskId) != head) {
+            QUEUE.poll();
+            head = QUEUE.peek();
+        }
+        return head;
+    }
+
+    private static void recordLag(long lagMs) {
+        FIRED.increment();
+        TOTAL_LAG_MS.add(lagMs);
+        LAST_LAG_MS.set(lagMs);
+        MAX_LAG_MS.accumulateAndGet(lagMs, Math::max);
+    }
+
+    /**
+     * Số liệu lập lịch: số task đã chạy, số lần chạy, độ trễ so với thời điểm đến hạn
+     */
+    public static Stats getStats() {
+        int scheduled;
+        Instant nextFire;
+        synchronized (LOCK) {
+            scheduled = ENTRIES.size();
+            Entry head = peek();
+            nextFire = head != null ? Instant.ofEpochMilli(head.fireAt) : null;
+        }
+        return new Stats(FIRED.sum(), BATCHES.sum(), TOTAL_LAG_MS.sum(), MAX_LAG_MS.get(), LAST_LAG_MS.get(),
+                scheduled, nextFire);
+    }
+
+    /**
+     * Một task trong hàng đợi: id, thời điểm chạy kế tiếp và thời điểm vào hàng đợi (epoch millis)
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final int taskId;
+        private final long fireAt;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private Entry(int taskId, long fireAt) {
+            this.taskId = taskId;
+            this.fireAt = fireAt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(fireAt, other.fireAt);
+        }
+    }
+
+    public static class Stats {
+        private final long fired;
+        private final long batches;
+        private final long totalLagMs;
+        private final long maxLagMs;
+        private final long lastLagMs;
+        private final int scheduled;
+        private final Instant nextFire;
+
+        Stats(long fired, long batches, long totalLagMs, long maxLagMs, long lastLagMs, int scheduled,
+              Instant nextFire) {
+            this.fired = fired;
+            this.batches = batches;
+            this.totalLagMs = totalLagMs;
+            this.maxLagMs = maxLagMs;
+            this.lastLagMs = lastLagMs;
+            this.scheduled = scheduled;
+            this.nextFire = nextFire;
+        }
+
+        public long getFired() {
+            return fired;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public double getAverageLagMs() {
+            return fired > 0 ? (double) totalLagMs / fired : 0;
+        }
+
+        public long getMaxLagMs() {
+            return maxLagMs;
+        }
+
+        public long getLastLagMs() {
+            return lastLagMs;
+        }
+
+        public int getScheduled() {
+            return scheduled;
+        }
+
+        // Thời điểm chạy sớm nhất đang chờ, null nếu không có task nào
+        public Instant getNextFire() {
+            return nextFire;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("RecurringScheduler[fired=%d, batches=%d, avgLag=%.0fms, maxLag=%dms, lastLag=%dms, "
+                    + "scheduled=%d, next=%s]", fired, batches, getAverageLagMs(), maxLagMs, lastLagMs, scheduled,
+                    nextFire);
+        }
+    }
+}
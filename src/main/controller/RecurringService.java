@@ -1,77 +1,472 @@
 package main.controller;
 
+import main.cache.CacheWrites;
 import main.dao.Database;
+import main.event.ChangeEvent;
+import main.event.EventBus;
+import main.model.BatchInsertResult;
+import main.model.RecurrenceRule;
+import main.model.RecurringTask;
 import main.model.Transaction;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Sinh giao dịch cho các khoản định kỳ (recurring_tasks) đến hạn, kể cả các kỳ bị lỡ khi ứng dụng không chạy.
+ * Ngày chạy của từng task theo quy tắc lặp RecurrenceRule. Mỗi kỳ (task, ngày chạy) được ghi vào
+ * recurring_executions trước khi sinh giao dịch; khóa chính của bảng này là khóa chống trùng, nên chạy lại
+ * hoặc hai lần chạy chồng lên nhau không sinh giao dịch hai lần.
+ * Giao dịch, bản ghi kỳ đã chạy và last_run_date được ghi trong cùng một transaction.
+ */
 public class RecurringService {
+    // Chỉ bù các kỳ bị lỡ trong chừng này tháng gần nhất (-Dpf.recurring.maxCatchUp=...)
+    private static final int MAX_CATCH_UP_MONTHS = Integer.getInteger("pf.recurring.maxCatchUp", 36);
+
+    // Mốc đếm chu kỳ của task cũ không có start_date (chỉ có quy tắc hằng tháng, không phụ thuộc mốc)
+    private static final LocalDate LEGACY_ANCHOR = LocalDate.EPOCH;
 
     /**
      * Hàm này kiểm tra và tự động sinh giao dịch nếu đến hạn
      */
     public static void checkAndExecuteTasks(int userId) {
-        LocalDate today = LocalDate.now();
-        int currentDay = today.getDayOfMonth();
-        String currentMonthYear = today.format(DateTimeFormatter.ofPattern("MM/yyyy"));
+        executeDueTasks(userId, LocalDate.now());
+    }
 
-        String sql = "SELECT * FROM recurring_tasks WHERE user_id = ?";
+    /**
+     * Sinh giao dịch cho mọi kỳ đã đến hạn tính tới ngày today của người dùng, trả về số giao dịch đã sinh
+     */
+    static int executeDueTasks(int userId, LocalDate today) {
+        return execute("user_id = ?", Collections.singletonList(userId), today);
+    }
 
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * Như executeDueTasks nhưng cho các task taskIds (của bất kỳ người dùng nào), trong một transaction
+     */
+    static int executeTasks(Collection<Integer> taskIds, LocalDate today) {
+        return execute(null, new ArrayList<>(taskIds), today);
+    }
 
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
+    // condition = null: params là danh sách id task
+    private static int execute(String condition, List<Integer> params, LocalDate today) {
+        List<Due> executed = new ArrayList<>();
+        if (params.isEmpty()) {
+            return 0;
+        }
+
+        try (Connection conn = Database.getConnection();
+             CacheWrites.Write cacheWrite = CacheWrites.begin()) {
+            // Đọc các task rồi mới ghi: giữ khóa ghi ngay từ đầu để không bị SQLITE_BUSY khi nâng khóa
+            Database.beginWrite(conn);
+            try {
+                List<Due> done = new ArrayList<>();
+                List<Due> claimed = claim(conn, findDue(conn, condition, params, today), done);
+                if (claimed.isEmpty()) {
+                    // Các kỳ còn lại đều đã chạy ở lần trước (last_run_date bị giữ lại sau một kỳ lỗi): chỉ dời mốc
+                    if (!done.isEmpty()) {
+                        recordExecutions(conn, Collections.emptyList(), Collections.emptyList(), done);
+                        conn.commit();
+                    } else {
+                        conn.rollback();
+                    }
+                    return 0;
+                }
 
-            TransactionController transController = new TransactionController();
+                // Mọi kỳ đến hạn (kể cả các kỳ bù) được thêm bằng một lần chèn hàng loạt
+                List<Transaction> transactions = new ArrayList<>(claimed.size());
+                for (Due due : claimed) {
+                    transactions.add(due.transaction);
+                }
+                BatchInsertResult result = new BatchInsertResult(transactions.size());
+                TransactionController.insertBatch(conn, transactions, TransactionController.DEFAULT_BATCH_CHUNK_SIZE,
+                        result);
 
-            while (rs.next()) {
-                int taskId = rs.getInt("id");
-                int runDay = rs.getInt("day_of_month");
-                String lastRun = rs.getString("last_executed_month");
+                List<Due> failed = new ArrayList<>();
+                for (int i = 0; i < claimed.size(); i++) {
+                    if (result.isInserted(i)) {
+                        claimed.get(i).transactionId = result.getGeneratedId(i);
+                        executed.add(claimed.get(i));
+                    } else {
+                        failed.add(claimed.get(i));
+                        System.err.println("Lỗi giao dịch tự động (task " + claimed.get(i).taskId + ", "
+                                + claimed.get(i).runDate + "): " + result.getFailures().get(i));
+                    }
+                }
+                recordExecutions(conn, executed, failed, done);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
 
-                // Logic:
-                // 1. Nếu tháng hiện tại KHÁC tháng chạy gần nhất (nghĩa là tháng này chưa chạy)
-                // 2. VÀ hôm nay đã vượt qua hoặc bằng ngày cài đặt
-                if (!currentMonthYear.equals(lastRun) && currentDay >= runDay) {
+            // Chỉ gán id, cập nhật cache và phát sự kiện sau khi đã commit
+            List<Transaction> inserted = new ArrayList<>(executed.size());
+            for (Due due : executed) {
+                due.transaction.setId(due.transactionId);
+                cacheWrite.added(due.transaction);
+                inserted.add(due.transaction);
+            }
+            TransactionController.publishAdded(cacheWrite, inserted);
+            for (Due due : executed) {
+                cacheWrite.publish(new ChangeEvent.RecurringExecuted(due.taskId, due.transaction));
+                System.out.println("Đã chạy giao dịch tự động: " + due.transaction.getDescription()
+                        + " (" + due.runDate + ")");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+        return executed.size();
+    }
 
-                    // -> TỰ ĐỘNG THÊM GIAO DỊCH
+    // Các kỳ đến hạn: ngày chạy từ sau last_run_date (task chưa chạy lần nào: start_date) tới today
+    private static List<Due> findDue(Connection conn, String condition, List<Integer> params,
+                                     LocalDate today) throws SQLException {
+        List<Due> due = new ArrayList<>();
+        for (TaskQuery query : TaskQuery.of(condition, params)) {
+            for (RecurringTask task : query.run(conn)) {
+                RecurrenceRule rule = task.getRecurrence();
+                for (LocalDate runDate : rule.occurrences(firstPendingDate(task, today), today, anchor(task))) {
+                    // -> TỰ ĐỘNG THÊM GIAO DỊCH, ngày giao dịch là ngày chạy của kỳ đó
                     Transaction t = new Transaction();
-                    t.setUserId(userId);
-                    t.setCategoryId(rs.getInt("category_id"));
-                    t.setAmount(rs.getBigDecimal("amount"));
-                    t.setDescription("[Tự động] " + rs.getString("description"));
-                    t.setTransactionDate(today); // Ngày giao dịch là hôm nay
-                    t.setType("EXPENSE"); // Mặc định là chi tiêu (hoặc lưu type trong DB nếu cần)
+                    t.setUserId(task.getUserId());
+                    t.setCategoryId(task.getCategoryId());
+                    t.setAmount(task.getAmount());
+                    t.setDescription("[Tự động] " + task.getDescription());
+                    t.setTransactionDate(runDate);
+                    t.setType(task.getType());
+                    due.add(new Due(task.getId(), runDate, t));
+                }
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Ngày chạy tiếp theo của task tính từ ngày today: ngày chạy của kỳ đầu tiên chưa sinh giao dịch,
+     * null nếu quy tắc không còn lần nào. Kết quả không sau today nghĩa là task đang có kỳ đến hạn.
+     */
+    static LocalDate nextRunDate(RecurringTask task, LocalDate today) {
+        return task.getRecurrence().next(firstPendingDate(task, today), anchor(task));
+    }
 
-                    transController.addTransaction(t);
+    // Ngày sau last_run_date (chưa chạy lần nào: start_date, task cũ không có start_date: đầu tháng hiện tại),
+    // không sớm hơn MAX_CATCH_UP_MONTHS tháng
+    private static LocalDate firstPendingDate(RecurringTask task, LocalDate today) {
+        LocalDate from;
+        if (task.getLastRunDate() != null) {
+            from = task.getLastRunDate().plusDays(1);
+        } else {
+            from = task.getStartDate() != null ? task.getStartDate() : today.withDayOfMonth(1);
+        }
+        LocalDate earliest = today.withDayOfMonth(1).minusMonths(MAX_CATCH_UP_MONTHS - 1);
+        return from.isBefore(earliest) ? earliest : from;
+    }
+
+    private static LocalDate anchor(RecurringTask task) {
+        return task.getStartDate() != null ? task.getStartDate() : LEGACY_ANCHOR;
+    }
 
-                    // -> CẬP NHẬT LẠI recurring_tasks ĐỂ KHÔNG CHẠY LẠI TRONG THÁNG NÀY
-                    updateLastExecution(taskId, currentMonthYear);
+    // Ghi khóa (task, kỳ) cho từng kỳ đến hạn; kỳ đã có khóa (đã chạy) bị bỏ qua và được thêm vào done
+    private static List<Due> claim(Connection conn, List<Due> due, List<Due> done) throws SQLException {
+        List<Due> claimed = new ArrayList<>(due.size());
+        if (due.isEmpty()) {
+            return claimed;
+        }
+        String sql = "INSERT OR IGNORE INTO recurring_executions (task_id, period) VALUES (?, ?)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Due d : due) {
+                pstmt.setInt(1, d.taskId);
+                pstmt.setString(2, d.runDate.toString());
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < due.size(); i++) {
+                if (counts[i] > 0) {
+                    claimed.add(due.get(i));
+                } else {
+                    done.add(due.get(i));
+                }
+            }
+        }
+        return claimed;
+    }
 
-                    System.out.println("Đã chạy giao dịch tự động: " + t.getDescription());
+    // Gắn id giao dịch vào các kỳ đã chạy, trả lại khóa của các kỳ lỗi và dời last_run_date tới kỳ mới nhất
+    // (kể cả các kỳ done đã chạy ở lần trước), nhưng không qua kỳ lỗi sớm nhất của task để lần sau kỳ đó được
+    // chạy lại (các kỳ sau đã có khóa nên không bị sinh lại)
+    private static void recordExecutions(Connection conn, List<Due> executed, List<Due> failed,
+                                         List<Due> done) throws SQLException {
+        Map<Integer, LocalDate> watermarks = new LinkedHashMap<>();
+        for (Due d : done) {
+            watermarks.merge(d.taskId, d.runDate, (a, b) -> a.isAfter(b) ? a : b);
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE recurring_executions SET transaction_id = ? WHERE task_id = ? AND period = ?")) {
+            for (Due d : executed) {
+                pstmt.setInt(1, d.transactionId);
+                pstmt.setInt(2, d.taskId);
+                pstmt.setString(3, d.runDate.toString());
+                pstmt.addBatch();
+                watermarks.merge(d.taskId, d.runDate, (a, b) -> a.isAfter(b) ? a : b);
+            }
+            if (!executed.isEmpty()) {
+                pstmt.executeBatch();
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "DELETE FROM recurring_executions WHERE task_id = ? AND period = ?")) {
+            for (Due d : failed) {
+                pstmt.setInt(1, d.taskId);
+                pstmt.setString(2, d.runDate.toString());
+                pstmt.addBatch();
+                LocalDate watermark = watermarks.get(d.taskId);
+                if (watermark != null && !d.runDate.isAfter(watermark)) {
+                    watermarks.put(d.taskId, d.runDate.minusDays(1));
                 }
             }
+            if (!failed.isEmpty()) {
+                pstmt.executeBatch();
+            }
+        }
+        // -> CẬP NHẬT LẠI recurring_tasks ĐỂ LẦN SAU CHỈ XÉT CÁC NGÀY SAU KỲ NÀY
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE recurring_tasks SET last_run_date = ? WHERE id = ?")) {
+            for (Map.Entry<Integer, LocalDate> entry : watermarks.entrySet()) {
+                pstmt.setString(1, entry.getValue().toString());
+                pstmt.setInt(2, entry.getKey());
+                pstmt.addBatch();
+            }
+            if (!watermarks.isEmpty()) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Các khoản định kỳ của người dùng
+     */
+    public static List<RecurringTask> getTasks(int userId) {
+        try (Connection conn = Database.getConnection()) {
+            return new TaskQuery("user_id = ?", Collections.singletonList(userId)).run(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Đọc các task theo id (task đã bị xóa không có trong kết quả)
+     */
+    static List<RecurringTask> getTasks(Collection<Integer> taskIds) throws SQLException {
+        List<RecurringTask> tasks = new ArrayList<>();
+        try (Connection conn = Database.getConnection()) {
+            for (TaskQuery query : TaskQuery.of(null, new ArrayList<>(taskIds))) {
+                tasks.addAll(query.run(conn));
+            }
+        }
+        return tasks;
+    }
 
+    /**
+     * Mọi khoản định kỳ của mọi người dùng
+     */
+    static List<RecurringTask> getAllTasks() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            return new TaskQuery("1 = 1", Collections.emptyList()).run(conn);
+        }
+    }
+
+    /**
+     * Thêm một khoản định kỳ (gán id cho task). Task không có start_date bắt đầu từ hôm nay.
+     * @throws IllegalArgumentException nếu loại giao dịch hoặc quy tắc lặp không hợp lệ
+     */
+    public static boolean addTask(RecurringTask task) {
+        if (task.getStartDate() == null) {
+            task.setStartDate(LocalDate.now());
+        }
+        String sql = "INSERT INTO recurring_tasks (user_id, category_id, amount, description, day_of_month, "
+                + "type, recurrence, start_date, last_run_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             Statement idStmt = conn.createStatement()) {
+            bindTask(pstmt, task);
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+            try (ResultSet rs = idStmt.executeQuery("SELECT last_insert_rowid()")) {
+                rs.next();
+                task.setId(rs.getInt(1));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
+            return false;
         }
+        EventBus.publish(new ChangeEvent.RecurringTaskChanged(task.getUserId(), task.getId(), false));
+        return true;
     }
 
-    private static void updateLastExecution(int taskId, String monthYear) {
-        String sql = "UPDATE recurring_tasks SET last_executed_month = ? WHERE id = ?";
+    /**
+     * Sửa một khoản định kỳ; các kỳ đã sinh giao dịch giữ nguyên
+     * @throws IllegalArgumentException nếu loại giao dịch hoặc quy tắc lặp không hợp lệ
+     */
+    public static boolean updateTask(RecurringTask task) {
+        String sql = "UPDATE recurring_tasks SET user_id = ?, category_id = ?, amount = ?, description = ?, "
+                + "day_of_month = ?, type = ?, recurrence = ?, start_date = ?, last_run_date = ? WHERE id = ?";
         try (Connection conn = Database.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, monthYear);
-            pstmt.setInt(2, taskId);
-            pstmt.executeUpdate();
+            bindTask(pstmt, task);
+            pstmt.setInt(10, task.getId());
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        EventBus.publish(new ChangeEvent.RecurringTaskChanged(task.getUserId(), task.getId(), false));
+        return true;
+    }
+
+    /**
+     * Xóa một khoản định kỳ cùng các khóa kỳ đã chạy (giao dịch đã sinh vẫn giữ lại)
+     */
+    public static boolean deleteTask(int taskId) {
+        int userId;
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement selectTask = conn.prepareStatement("SELECT user_id FROM recurring_tasks WHERE id = ?");
+                 PreparedStatement deleteExecutions = conn.prepareStatement(
+                         "DELETE FROM recurring_executions WHERE task_id = ?");
+                 PreparedStatement deleteTask = conn.prepareStatement("DELETE FROM recurring_tasks WHERE id = ?")) {
+                selectTask.setInt(1, taskId);
+                try (ResultSet rs = selectTask.executeQuery()) {
+                    if (!rs.next()) {
+                        conn.rollback();
+                        return false;
+                    }
+                    userId = rs.getInt(1);
+                }
+                deleteExecutions.setInt(1, taskId);
+                deleteExecutions.executeUpdate();
+                deleteTask.setInt(1, taskId);
+                deleteTask.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
+            return false;
+        }
+        EventBus.publish(new ChangeEvent.RecurringTaskChanged(userId, taskId, true));
+        return true;
+    }
+
+    private static void bindTask(PreparedStatement pstmt, RecurringTask task) throws SQLException {
+        if (!"INCOME".equals(task.getType()) && !"EXPENSE".equals(task.getType())) {
+            throw new IllegalArgumentException("Loại giao dịch không hợp lệ: " + task.getType());
+        }
+        pstmt.setInt(1, task.getUserId());
+        pstmt.setInt(2, task.getCategoryId());
+        pstmt.setBigDecimal(3, task.getAmount());
+        pstmt.setString(4, task.getDescription());
+        pstmt.setInt(5, task.getDayOfMonth());
+        pstmt.setString(6, task.getType());
+        pstmt.setString(7, task.getRecurrence().toString());
+        pstmt.setString(8, task.getStartDate() != null ? task.getStartDate().toString() : null);
+        pstmt.setString(9, task.getLastRunDate() != null ? task.getLastRunDate().toString() : null);
+    }
+
+    /**
+     * SELECT recurring_tasks theo một điều kiện; danh sách id dài được chia thành nhiều câu IN
+     */
+    private static final class TaskQuery {
+        private static final int MAX_IDS = 500;
+
+        private final String condition;
+        private final List<Integer> params;
+
+        private TaskQuery(String condition, List<Integer> params) {
+            this.condition = condition;
+            this.params = params;
+        }
+
+        // condition = null: params là danh sách id task
+        static List<TaskQuery> of(String condition, List<Integer> params) {
+            if (condition != null) {
+                return Collections.singletonList(new TaskQuery(condition, params));
+            }
+            List<TaskQuery> queries = new ArrayList<>();
+            for (int start = 0; start < params.size(); start += MAX_IDS) {
+                List<Integer> ids = params.subList(start, Math.min(start + MAX_IDS, params.size()));
+                queries.add(new TaskQuery("id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")",
+                        ids));
+            }
+            return queries;
+        }
+
+        List<RecurringTask> run(Connection conn) throws SQLException {
+            List<RecurringTask> tasks = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT * FROM recurring_tasks WHERE " + condition)) {
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setInt(i + 1, params.get(i));
+                }
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    RecurringTask task = new RecurringTask();
+                    task.setId(rs.getInt("id"));
+                    task.setUserId(rs.getInt("user_id"));
+                    task.setCategoryId(rs.getInt("category_id"));
+                    task.setAmount(rs.getBigDecimal("amount"));
+                    task.setDescription(rs.getString("description"));
+                    task.setDayOfMonth(rs.getInt("day_of_month"));
+                    task.setType(rs.getString("type"));
+                    String startDate = rs.getString("start_date");
+                    task.setStartDate(startDate != null ? LocalDate.parse(startDate) : null);
+                    String lastRunDate = rs.getString("last_run_date");
+                    task.setLastRunDate(lastRunDate != null ? LocalDate.parse(lastRunDate) : null);
+                    String recurrence = rs.getString("recurrence");
+                    try {
+                        task.setRecurrence(recurrence != null ? RecurrenceRule.parse(recurrence)
+                                : RecurrenceRule.monthly(task.getDayOfMonth()));
+                    } catch (IllegalArgumentException e) {
+                        // Quy tắc hỏng không được chặn các task khác
+                        System.err.println("Bỏ qua task định kỳ " + task.getId() + ": " + e.getMessage());
+                        continue;
+                    }
+                    tasks.add(task);
+                }
+            }
+            return tasks;
+        }
+    }
+
+    /**
+     * Một kỳ đến hạn của một task và giao dịch sẽ sinh cho kỳ đó
+     */
+    private static final class Due {
+        private final int taskId;
+        private final LocalDate runDate;
+        private final Transaction transaction;
+        private int transactionId; // id sinh ra khi chèn, gán vào transaction sau khi commit
+
+        private Due(int taskId, LocalDate runDate, Transaction transaction) {
+            this.taskId = taskId;
+            this.runDate = runDate;
+            this.transaction = transaction;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,43 @@
 package main.controller;
 
+import main.cache.CategoryDictionary;
+import main.cache.LedgerCache;
+import main.cache.RangeSumIndex;
+import main.cache.ReportResultCache;
 import main.dao.Database;
+import main.dao.MonthlyRollups;
+import main.model.DashboardSnapshot;
+import main.model.Money;
 import main.model.Transaction;
-
+import main.report.Aggregator;
+import main.report.Aggregators;
+import main.report.ReportEngine;
+import main.report.ReportException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class ReportController {
 
@@ -17,9 +45,43 @@ public class ReportController {
      * Lấy tổng thu nhập và chi tiêu theo tháng trong một khoảng thời gian
      */
     public static Map<String, BigDecimal> getMonthlySummary(int userId, LocalDate startDate, LocalDate endDate) {
-        Map<String, BigDecimal> summary = new HashMap<>();
+        return toSummary(getIncomeExpense(userId, startDate, endDate));
+    }
 
-        String sql = "SELECT " +
+    /**
+     * Tổng thu nhập và chi tiêu theo đơn vị nhỏ nhất: {thu, chi}, null nếu lỗi truy vấn
+     */
+    private static long[] getIncomeExpense(int userId, LocalDate startDate, LocalDate endDate) {
+        // Sổ giao dịch trong bộ nhớ: tính trực tiếp, không truy vấn DB
+        LedgerCache.Ledger ledger = LedgerCache.get(userId);
+        if (ledger != null) {
+            long income = 0;
+            long expense = 0;
+            ledger.readLock();
+            try {
+                int end = ledger.upperBound(endDate.toEpochDay());
+                for (int i = ledger.lowerBound(startDate.toEpochDay()); i < end; i++) {
+                    if (ledger.isIncome(i)) {
+                        income += ledger.amountMinor(i);
+                    } else {
+                        expense += ledger.amountMinor(i);
+                    }
+                }
+            } finally {
+                ledger.readUnlock();
+            }
+            return new long[]{income, expense};
+        }
+
+        // Khoảng gồm các tháng trọn vẹn thì đọc từ bảng tổng hợp (vài dòng mỗi tháng)
+        boolean useRollups = MonthlyRollups.coversWholeMonths(startDate, endDate);
+        String sql = useRollups
+                ? "SELECT " +
+                "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN total ELSE 0 END), 0) as total_income, " +
+                "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN total ELSE 0 END), 0) as total_expense " +
+                "FROM monthly_rollups " +
+                "WHERE user_id = ? AND year_month BETWEEN ? AND ?"
+                : "SELECT " +
                 "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN amount ELSE 0 END), 0) as total_income, " +
                 "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN amount ELSE 0 END), 0) as total_expense " +
                 "FROM transactions " +
@@ -29,49 +91,87 @@ public class ReportController {
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
+            bindRange(pstmt, 2, startDate, endDate, useRollups);
 
             ResultSet rs = pstmt.executeQuery();
 
             if (rs.next()) {
-                summary.put("income", rs.getBigDecimal("total_income"));
-                summary.put("expense", rs.getBigDecimal("total_expense"));
-                summary.put("balance", rs.getBigDecimal("total_income").subtract(rs.getBigDecimal("total_expense")));
+                return new long[]{
+                        Money.toMinor(rs.getBigDecimal("total_income")),
+                        Money.toMinor(rs.getBigDecimal("total_expense"))
+                };
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
-        return summary;
+        return null;
     }
 
     /**
      * Lấy chi tiết chi tiêu theo danh mục
      */
     public static List<Map<String, Object>> getExpenseByCategory(int userId, LocalDate startDate, LocalDate endDate) {
-        List<Map<String, Object>> results = new ArrayList<>();
+        return getCategoryTotals(userId, startDate, endDate, false);
+    }
 
-        String sql = "SELECT c.name as category_name, " +
+    /**
+     * Tổng theo danh mục (thu hoặc chi), lấy từ ReportResultCache nếu có; kết quả dùng chung, không được sửa
+     */
+    private static List<Map<String, Object>> getCategoryTotals(int userId, LocalDate startDate, LocalDate endDate,
+                                                               boolean income) {
+        try {
+            return ReportResultCache.get(userId, income ? "income_by_category" : "expense_by_category",
+                    startDate, endDate, () -> queryCategoryTotals(userId, startDate, endDate, income));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    private static List<Map<String, Object>> queryCategoryTotals(int userId, LocalDate startDate, LocalDate endDate,
+                                                                 boolean income) throws SQLException {
+        List<Map<String, Object>> cached = categoryTotalsFromLedger(userId, startDate, endDate, income);
+        if (cached != null) {
+            return Collections.unmodifiableList(cached);
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean useRollups = MonthlyRollups.coversWholeMonths(startDate, endDate);
+        String sql = useRollups
+                ? "SELECT c.name as category_name, " +
+                "COALESCE(SUM(r.total), 0) as total_amount, " +
+                "COALESCE(SUM(r.tx_count), 0) as transaction_count " +
+                "FROM categories c " +
+                "JOIN monthly_rollups r ON c.id = r.category_id " +
+                "AND r.user_id = ? AND r.type = ? " +
+                "AND r.year_month BETWEEN ? AND ? " +
+                "WHERE c.type = ? AND (c.user_id = ? OR c.user_id IS NULL) " +
+                "GROUP BY c.id, c.name " +
+                "HAVING total_amount > 0 " +
+                "ORDER BY total_amount DESC"
+                : "SELECT c.name as category_name, " +
                 "COALESCE(SUM(t.amount), 0) as total_amount, " +
                 "COUNT(t.id) as transaction_count " +
                 "FROM categories c " +
                 "LEFT JOIN transactions t ON c.id = t.category_id " +
-                "AND t.user_id = ? AND t.type = 'EXPENSE' " +
+                "AND t.user_id = ? AND t.type = ? " +
                 "AND t.transaction_date BETWEEN ? AND ? " +
-                "WHERE c.type = 'EXPENSE' AND (c.user_id = ? OR c.user_id IS NULL) " +
+                "WHERE c.type = ? AND (c.user_id = ? OR c.user_id IS NULL) " +
                 "GROUP BY c.id, c.name " +
                 "HAVING total_amount > 0 " +
                 "ORDER BY total_amount DESC";
 
+        String type = income ? "INCOME" : "EXPENSE";
         try (Connection conn = Database.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
-            pstmt.setInt(4, userId);
+            pstmt.setString(2, type);
+            bindRange(pstmt, 3, startDate, endDate, useRollups);
+            pstmt.setString(5, type);
+            pstmt.setInt(6, userId);
 
             ResultSet rs = pstmt.executeQuery();
 
@@ -82,11 +182,58 @@ public class ReportController {
                 row.put("count", rs.getInt("transaction_count"));
                 results.add(row);
             }
+        }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Tổng theo danh mục tính từ sổ giao dịch trong bộ nhớ (cùng kết quả với truy vấn SQL),
+     * null nếu sổ chưa dùng được
+     */
+    private static List<Map<String, Object>> categoryTotalsFromLedger(int userId, LocalDate startDate,
+                                                                      LocalDate endDate, boolean income) {
+        LedgerCache.Ledger ledger = LedgerCache.get(userId);
+        CategoryDictionary categories = ledger != null ? CategoryDictionary.get() : null;
+        if (categories == null) {
+            return null;
+        }
+
+        long[] totals;
+        int[] counts;
+        ledger.readLock();
+        try {
+            totals = new long[ledger.maxCategoryId() + 1];
+            counts = new int[totals.length];
+            int end = ledger.upperBound(endDate.toEpochDay());
+            for (int i = ledger.lowerBound(startDate.toEpochDay()); i < end; i++) {
+                if (ledger.isIncome(i) == income) {
+                    int categoryId = ledger.categoryId(i);
+                    totals[categoryId] += ledger.amountMinor(i);
+                    counts[categoryId]++;
+                }
+            }
+        } finally {
+            ledger.readUnlock();
         }
 
+        String type = income ? "INCOME" : "EXPENSE";
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < totals.length; id++) {
+            if (totals[id] > 0 && categories.isVisible(id, type, userId)) {
+                ids.add(id);
+            }
+        }
+        ids.sort((a, b) -> Long.compare(totals[b], totals[a]));
+
+        List<Map<String, Object>> results = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("category", categories.name(id));
+            row.put("amount", Money.toBigDecimal(totals[id]));
+            row.put("count", counts[id]);
+            results.add(row);
+        }
         return results;
     }
 
@@ -94,100 +241,78 @@ public class ReportController {
      * Lấy chi tiết thu nhập theo danh mục
      */
     public static List<Map<String, Object>> getIncomeByCategory(int userId, LocalDate startDate, LocalDate endDate) {
-        List<Map<String, Object>> results = new ArrayList<>();
-
-        String sql = "SELECT c.name as category_name, " +
-                "COALESCE(SUM(t.amount), 0) as total_amount, " +
-                "COUNT(t.id) as transaction_count " +
-                "FROM categories c " +
-                "LEFT JOIN transactions t ON c.id = t.category_id " +
-                "AND t.user_id = ? AND t.type = 'INCOME' " +
-                "AND t.transaction_date BETWEEN ? AND ? " +
-                "WHERE c.type = 'INCOME' AND (c.user_id = ? OR c.user_id IS NULL) " +
-                "GROUP BY c.id, c.name " +
-                "HAVING total_amount > 0 " +
-                "ORDER BY total_amount DESC";
-
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
-            pstmt.setInt(4, userId);
-
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                Map<String, Object> row = new HashMap<>();
-                row.put("category", rs.getString("category_name"));
-                row.put("amount", rs.getBigDecimal("total_amount"));
-                row.put("count", rs.getInt("transaction_count"));
-                results.add(row);
-            }
+        return getCategoryTotals(userId, startDate, endDate, true);
+    }
 
+    /**
+     * Lấy dữ liệu xu hướng thu chi theo tháng
+     */
+    public static List<Map<String, Object>> getMonthlyTrend(int userId, int numberOfMonths) {
+        try (Connection conn = Database.getConnection()) {
+            return cachedMonthlyTrend(conn, userId, numberOfMonths);
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        LocalDate endDate = LocalDate.now().withDayOfMonth(1).plusMonths(1).minusDays(1);
+        LocalDate startDate = endDate.minusMonths(numberOfMonths - 1).withDayOfMonth(1);
+        return fillMissingMonths(new ArrayList<>(), startDate, numberOfMonths);
+    }
 
-        return results;
+    // Xu hướng numberOfMonths tháng gần nhất, cache theo đúng khoảng các tháng đó
+    private static List<Map<String, Object>> cachedMonthlyTrend(Connection conn, int userId,
+                                                                int numberOfMonths) throws SQLException {
+        LocalDate endDate = LocalDate.now().withDayOfMonth(1).plusMonths(1).minusDays(1);
+        LocalDate startDate = endDate.minusMonths(numberOfMonths - 1).withDayOfMonth(1);
+        return ReportResultCache.get(userId, "monthly_trend", startDate, endDate,
+                () -> Collections.unmodifiableList(getMonthlyTrend(conn, userId, numberOfMonths)));
     }
 
     /**
-     * Lấy dữ liệu xu hướng thu chi theo tháng
+     * Xu hướng thu chi theo tháng trên một kết nối có sẵn
      */
-    public static List<Map<String, Object>> getMonthlyTrend(int userId, int numberOfMonths) {
+    private static List<Map<String, Object>> getMonthlyTrend(Connection conn, int userId,
+                                                             int numberOfMonths) throws SQLException {
         List<Map<String, Object>> trendData = new ArrayList<>();
 
         LocalDate endDate = LocalDate.now().withDayOfMonth(1).plusMonths(1).minusDays(1);
         LocalDate startDate = endDate.minusMonths(numberOfMonths - 1).withDayOfMonth(1);
 
+        // Đọc từ bảng tổng hợp: mỗi tháng chỉ vài dòng (theo danh mục) thay vì toàn bộ giao dịch
         String sql = "SELECT " +
-                "strftime('%Y-%m', transaction_date) as month, " +
-                "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN amount ELSE 0 END), 0) as monthly_income, " +
-                "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN amount ELSE 0 END), 0) as monthly_expense, " +
-                "COUNT(CASE WHEN type = 'INCOME' THEN 1 END) as income_count, " +
-                "COUNT(CASE WHEN type = 'EXPENSE' THEN 1 END) as expense_count " +
-                "FROM transactions " +
-                "WHERE user_id = ? AND transaction_date BETWEEN ? AND ? " +
-                "GROUP BY strftime('%Y-%m', transaction_date) " +
+                "year_month as month, " +
+                "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN total ELSE 0 END), 0) as monthly_income, " +
+                "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN total ELSE 0 END), 0) as monthly_expense, " +
+                "COALESCE(SUM(CASE WHEN type = 'INCOME' THEN tx_count ELSE 0 END), 0) as income_count, " +
+                "COALESCE(SUM(CASE WHEN type = 'EXPENSE' THEN tx_count ELSE 0 END), 0) as expense_count " +
+                "FROM monthly_rollups " +
+                "WHERE user_id = ? AND year_month BETWEEN ? AND ? " +
+                "GROUP BY year_month " +
                 "ORDER BY month";
 
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
+            bindRange(pstmt, 2, startDate, endDate, true);
 
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
+                long income = Money.toMinor(rs.getBigDecimal("monthly_income"));
+                long expense = Money.toMinor(rs.getBigDecimal("monthly_expense"));
+
                 Map<String, Object> monthData = new HashMap<>();
                 monthData.put("month", rs.getString("month"));
-                monthData.put("income", rs.getBigDecimal("monthly_income"));
-                monthData.put("expense", rs.getBigDecimal("monthly_expense"));
-                monthData.put("balance", rs.getBigDecimal("monthly_income")
-                        .subtract(rs.getBigDecimal("monthly_expense")));
+                monthData.put("income", Money.toBigDecimal(income));
+                monthData.put("expense", Money.toBigDecimal(expense));
+                monthData.put("balance", Money.toBigDecimal(income - expense));
                 monthData.put("income_count", rs.getInt("income_count"));
                 monthData.put("expense_count", rs.getInt("expense_count"));
 
                 // Tính tỷ lệ tiết kiệm
-                BigDecimal income = rs.getBigDecimal("monthly_income");
-                BigDecimal expense = rs.getBigDecimal("monthly_expense");
-                BigDecimal savingsRate = BigDecimal.ZERO;
-                if (income.compareTo(BigDecimal.ZERO) > 0) {
-                    savingsRate = income.subtract(expense)
-                            .multiply(BigDecimal.valueOf(100))
-                            .divide(income, 2, BigDecimal.ROUND_HALF_UP);
-                }
-                monthData.put("savings_rate", savingsRate);
+                monthData.put("savings_rate", income > 0 ? Money.percent(income - expense, income, 2) : BigDecimal.ZERO);
 
                 trendData.add(monthData);
             }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
 
         // Đảm bảo có đủ số tháng được yêu cầu
@@ -236,6 +361,21 @@ public class ReportController {
         return null;
     }
 
+    /**
+     * Gán khoảng thời gian vào hai tham số liên tiếp: theo tháng ("yyyy-MM") khi đọc bảng tổng hợp,
+     * theo ngày khi đọc bảng transactions
+     */
+    private static void bindRange(PreparedStatement pstmt, int index, LocalDate startDate, LocalDate endDate,
+                                  boolean useRollups) throws SQLException {
+        if (useRollups) {
+            pstmt.setString(index, MonthlyRollups.yearMonth(startDate));
+            pstmt.setString(index + 1, MonthlyRollups.yearMonth(endDate));
+        } else {
+            pstmt.setDate(index, Date.valueOf(startDate));
+            pstmt.setDate(index + 1, Date.valueOf(endDate));
+        }
+    }
+
     /**
      * Lấy thống kê chi tiêu theo ngày trong tuần
      */
@@ -244,6 +384,37 @@ public class ReportController {
 
         String[] daysOfWeek = {"Chủ nhật", "Thứ hai", "Thứ ba", "Thứ tư", "Thứ năm", "Thứ sáu", "Thứ bảy"};
 
+        LedgerCache.Ledger ledger = LedgerCache.get(userId);
+        if (ledger != null) {
+            long[] totals = new long[7];
+            int[] counts = new int[7];
+            ledger.readLock();
+            try {
+                int end = ledger.upperBound(endDate.toEpochDay());
+                for (int i = ledger.lowerBound(startDate.toEpochDay()); i < end; i++) {
+                    if (!ledger.isIncome(i)) {
+                        // 1970-01-01 là thứ năm; 0 = Chủ nhật giống strftime('%w')
+                        int day = Math.floorMod(ledger.epochDay(i) + 4, 7);
+                        totals[day] += ledger.amountMinor(i);
+                        counts[day]++;
+                    }
+                }
+            } finally {
+                ledger.readUnlock();
+            }
+            for (int day = 0; day < 7; day++) {
+                if (counts[day] > 0) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("day_of_week", daysOfWeek[day]);
+                    row.put("amount", Money.toBigDecimal(totals[day]));
+                    row.put("count", counts[day]);
+                    row.put("avg_amount", Money.toBigDecimal(Money.divideRounded(totals[day], counts[day])));
+                    results.add(row);
+                }
+            }
+            return results;
+        }
+
         String sql = "SELECT " +
                 "CAST(strftime('%w', transaction_date) as INTEGER) as day_of_week, " +
                 "COALESCE(SUM(amount), 0) as total_amount, " +
@@ -415,134 +586,47 @@ public class ReportController {
     }
 
     /**
-     * Lấy tổng hợp thống kê nâng cao
+     * Lấy tổng hợp thống kê nâng cao (một lượt duyệt qua ReportEngine, đọc sổ trong bộ nhớ nếu có).
+     * Kết quả lấy từ ReportResultCache nếu có, không được sửa.
      */
     public static Map<String, Object> getAdvancedStatistics(int userId, LocalDate startDate, LocalDate endDate) {
-        Map<String, Object> statistics = new HashMap<>();
-
-        // 1. Tổng thu, tổng chi, số dư
-        Map<String, BigDecimal> summary = getMonthlySummary(userId, startDate, endDate);
-        statistics.putAll(summary);
-
-        // 2. Số lượng giao dịch
-        String countSql = "SELECT " +
-                "COUNT(CASE WHEN type = 'INCOME' THEN 1 END) as income_count, " +
-                "COUNT(CASE WHEN type = 'EXPENSE' THEN 1 END) as expense_count " +
-                "FROM transactions " +
-                "WHERE user_id = ? AND transaction_date BETWEEN ? AND ?";
-
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(countSql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
+        return ReportResultCache.get(userId, "advanced_statistics", startDate, endDate,
+                () -> Collections.unmodifiableMap(computeAdvancedStatistics(userId, startDate, endDate)));
+    }
 
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                statistics.put("income_count", rs.getInt("income_count"));
-                statistics.put("expense_count", rs.getInt("expense_count"));
-                statistics.put("total_count", rs.getInt("income_count") + rs.getInt("expense_count"));
-            }
+    private static Map<String, Object> computeAdvancedStatistics(int userId, LocalDate startDate, LocalDate endDate) {
+        Map<String, Object> report = ReportEngine.run(userId, startDate, endDate, ReportController::statisticsAggregators);
+        Map<String, Object> statistics = Aggregators.statistics(report);
+        putAverages(statistics);
+        return statistics;
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    // Tổng, số lượng, số ngày có giao dịch và các ngày đặc biệt
+    private static List<Aggregator> statisticsAggregators() {
+        List<Aggregator> aggregators = new ArrayList<>();
+        aggregators.add(Aggregators.sums());
+        aggregators.add(Aggregators.counts());
+        aggregators.add(Aggregators.activeDays());
+        aggregators.add(Aggregators.extremes());
+        return aggregators;
+    }
 
-        // 3. Trung bình theo giao dịch
-        BigDecimal totalIncome = summary.get("income");
-        BigDecimal totalExpense = summary.get("expense");
+    /**
+     * Trung bình theo giao dịch và tỷ lệ tiết kiệm, tính từ tổng và số lượng đã có trong statistics
+     */
+    private static void putAverages(Map<String, Object> statistics) {
+        long totalIncome = Money.toMinor((BigDecimal) statistics.get("income"));
+        long totalExpense = Money.toMinor((BigDecimal) statistics.get("expense"));
         int incomeCount = (int) statistics.get("income_count");
         int expenseCount = (int) statistics.get("expense_count");
 
-        BigDecimal avgIncome = incomeCount > 0 ?
-                totalIncome.divide(BigDecimal.valueOf(incomeCount), 2, BigDecimal.ROUND_HALF_UP) :
-                BigDecimal.ZERO;
-        BigDecimal avgExpense = expenseCount > 0 ?
-                totalExpense.divide(BigDecimal.valueOf(expenseCount), 2, BigDecimal.ROUND_HALF_UP) :
-                BigDecimal.ZERO;
-
-        statistics.put("avg_income_per_transaction", avgIncome);
-        statistics.put("avg_expense_per_transaction", avgExpense);
-
-        // 4. Tỷ lệ tiết kiệm
-        BigDecimal savingsRate = BigDecimal.ZERO;
-        if (totalIncome.compareTo(BigDecimal.ZERO) > 0) {
-            savingsRate = totalIncome.subtract(totalExpense)
-                    .multiply(BigDecimal.valueOf(100))
-                    .divide(totalIncome, 2, BigDecimal.ROUND_HALF_UP);
-        }
-        statistics.put("savings_rate", savingsRate);
-
-        // 5. Ngày có chi tiêu cao nhất/thấp nhất
-        String extremeSql = "SELECT " +
-                "MIN(transaction_date) as first_date, " +
-                "MAX(transaction_date) as last_date, " +
-                "(SELECT transaction_date FROM transactions " +
-                " WHERE user_id = ? AND type = 'EXPENSE' " +
-                " AND transaction_date BETWEEN ? AND ? " +
-                " ORDER BY amount DESC LIMIT 1) as highest_expense_date, " +
-                "(SELECT transaction_date FROM transactions " +
-                " WHERE user_id = ? AND type = 'INCOME' " +
-                " AND transaction_date BETWEEN ? AND ? " +
-                " ORDER BY amount DESC LIMIT 1) as highest_income_date " +
-                "FROM transactions " +
-                "WHERE user_id = ? AND transaction_date BETWEEN ? AND ?";
-
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(extremeSql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
-            pstmt.setInt(4, userId);
-            pstmt.setDate(5, Date.valueOf(startDate));
-            pstmt.setDate(6, Date.valueOf(endDate));
-            pstmt.setInt(7, userId);
-            pstmt.setDate(8, Date.valueOf(startDate));
-            pstmt.setDate(9, Date.valueOf(endDate));
-
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                statistics.put("first_date", rs.getDate("first_date"));
-                statistics.put("last_date", rs.getDate("last_date"));
-                statistics.put("highest_expense_date", rs.getDate("highest_expense_date"));
-                statistics.put("highest_income_date", rs.getDate("highest_income_date"));
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-
-        // 6. Số ngày có giao dịch
-        String activeDaysSql = "SELECT COUNT(DISTINCT transaction_date) as active_days " +
-                "FROM transactions " +
-                "WHERE user_id = ? AND transaction_date BETWEEN ? AND ?";
-
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(activeDaysSql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
-
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                statistics.put("active_days", rs.getInt("active_days"));
-
-                // Tính số ngày trong khoảng thời gian
-                long totalDays = endDate.toEpochDay() - startDate.toEpochDay() + 1;
-                BigDecimal activityRate = BigDecimal.valueOf(rs.getInt("active_days"))
-                        .multiply(BigDecimal.valueOf(100))
-                        .divide(BigDecimal.valueOf(totalDays), 2, BigDecimal.ROUND_HALF_UP);
-                statistics.put("activity_rate", activityRate);
-            }
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        statistics.put("avg_income_per_transaction", incomeCount > 0 ?
+                Money.toBigDecimal(Money.divideRounded(totalIncome, incomeCount)) : BigDecimal.ZERO);
+        statistics.put("avg_expense_per_transaction", expenseCount > 0 ?
+                Money.toBigDecimal(Money.divideRounded(totalExpense, expenseCount)) : BigDecimal.ZERO);
 
-        return statistics;
+        statistics.put("savings_rate", totalIncome > 0 ?
+                Money.percent(totalIncome - totalExpense, totalIncome, 2) : BigDecimal.ZERO);
     }
 
     /**
@@ -551,8 +635,8 @@ public class ReportController {
     public static List<String> getMonthsWithData(int userId) {
         List<String> months = new ArrayList<>();
 
-        String sql = "SELECT DISTINCT strftime('%Y-%m', transaction_date) as month " +
-                "FROM transactions " +
+        String sql = "SELECT DISTINCT year_month as month " +
+                "FROM monthly_rollups " +
                 "WHERE user_id = ? " +
                 "ORDER BY month DESC";
 
@@ -580,149 +664,392 @@ public class ReportController {
         Map<String, Object> overview = new HashMap<>();
 
         LocalDate today = LocalDate.now();
-        LocalDate firstDayOfMonth = today.withDayOfMonth(1);
-        LocalDate lastDayOfMonth = today.withDayOfMonth(today.lengthOfMonth());
-
-        // Thống kê tháng hiện tại
-        Map<String, BigDecimal> currentMonth = getMonthlySummary(userId, firstDayOfMonth, lastDayOfMonth);
-        overview.put("current_month", currentMonth);
 
-        // Thống kê tháng trước
-        LocalDate firstDayOfLastMonth = firstDayOfMonth.minusMonths(1);
-        LocalDate lastDayOfLastMonth = firstDayOfLastMonth.withDayOfMonth(firstDayOfLastMonth.lengthOfMonth());
-        Map<String, BigDecimal> lastMonth = getMonthlySummary(userId, firstDayOfLastMonth, lastDayOfLastMonth);
-        overview.put("last_month", lastMonth);
+        // Tổng thu chi tháng này, tháng trước, top 5 thu/chi và giao dịch 7 ngày gần đây: một lần đọc
+        DashboardSnapshot snapshot = getDashboardSnapshot(userId, YearMonth.from(today), 5, Integer.MAX_VALUE,
+                today.minusDays(7), today);
+        overview.put("current_month", toSummary(
+                new long[]{snapshot.getIncome().getMinor(), snapshot.getExpense().getMinor()}));
+        overview.put("last_month", toSummary(
+                new long[]{snapshot.getPreviousIncome().getMinor(), snapshot.getPreviousExpense().getMinor()}));
 
         // Tính phần trăm thay đổi
-        BigDecimal currentIncome = currentMonth.get("income");
-        BigDecimal lastIncome = lastMonth.get("income");
-        BigDecimal incomeChange = calculatePercentageChange(currentIncome, lastIncome);
-        overview.put("income_change", incomeChange);
+        overview.put("income_change", snapshot.getIncomeChange());
+        overview.put("expense_change", snapshot.getExpenseChange());
 
-        BigDecimal currentExpense = currentMonth.get("expense");
-        BigDecimal lastExpense = lastMonth.get("expense");
-        BigDecimal expenseChange = calculatePercentageChange(currentExpense, lastExpense);
-        overview.put("expense_change", expenseChange);
-
-        // Top 5 chi tiêu tháng này
-        List<Map<String, Object>> topExpenses = getTopExpenses(userId, firstDayOfMonth, lastDayOfMonth, 5);
-        overview.put("top_expenses", topExpenses);
-
-        // Top 5 thu nhập tháng này
-        List<Map<String, Object>> topIncomes = getTopIncomes(userId, firstDayOfMonth, lastDayOfMonth, 5);
-        overview.put("top_incomes", topIncomes);
+        // Top 5 chi tiêu và thu nhập tháng này
+        overview.put("top_expenses", toTopRows(snapshot.getTopExpenses()));
+        overview.put("top_incomes", toTopRows(snapshot.getTopIncomes()));
 
         // Giao dịch gần đây (7 ngày)
-        LocalDate weekAgo = today.minusDays(7);
-        List<Transaction> recentTransactions = TransactionController.getTransactionsByUser(
-                userId, weekAgo, today);
-        overview.put("recent_transactions", recentTransactions);
+        overview.put("recent_transactions", new ArrayList<>(snapshot.getRecentTransactions()));
 
         return overview;
     }
 
+    // Cùng định dạng với getTopExpenses/getTopIncomes
+    private static List<Map<String, Object>> toTopRows(List<Transaction> transactions) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (Transaction t : transactions) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", t.getId());
+            row.put("amount", t.getAmount());
+            row.put("description", t.getDescription());
+            row.put("date", t.getTransactionDate());
+            row.put("category", t.getCategoryName());
+            results.add(row);
+        }
+        return results;
+    }
+
+    /**
+     * Lấy dữ liệu dashboard của một tháng trong một lần đọc: tổng thu chi tháng này và tháng trước,
+     * topLimit giao dịch thu/chi lớn nhất trong tháng và recentLimit giao dịch mới nhất.
+     * Tổng lấy từ chỉ mục trong bộ nhớ nếu có; phần còn lại là tối đa hai câu lệnh trên một kết nối,
+     * cùng một snapshot DB. topLimit/recentLimit = 0 để bỏ qua phần tương ứng.
+     */
+    public static DashboardSnapshot getDashboardSnapshot(int userId, YearMonth month, int topLimit, int recentLimit) {
+        return getDashboardSnapshot(userId, month, topLimit, recentLimit, null, null);
+    }
+
     /**
-     * Tính phần trăm thay đổi
+     * Như trên, nhưng các giao dịch gần đây chỉ lấy trong [recentFrom, recentTo] (cả hai null = mọi ngày)
      */
-    private static BigDecimal calculatePercentageChange(BigDecimal current, BigDecimal previous) {
-        if (previous.compareTo(BigDecimal.ZERO) == 0) {
-            return current.compareTo(BigDecimal.ZERO) > 0 ?
-                    BigDecimal.valueOf(100) : BigDecimal.ZERO;
+    public static DashboardSnapshot getDashboardSnapshot(int userId, YearMonth month, int topLimit, int recentLimit,
+                                                         LocalDate recentFrom, LocalDate recentTo) {
+        LocalDate startDate = month.atDay(1);
+        LocalDate endDate = month.atEndOfMonth();
+        LocalDate previousStart = month.minusMonths(1).atDay(1);
+        LocalDate previousEnd = startDate.minusDays(1);
+
+        Money[] totals = indexedDashboardTotals(userId, startDate, endDate, previousStart, previousEnd);
+        List<Transaction> topExpenses = new ArrayList<>();
+        List<Transaction> topIncomes = new ArrayList<>();
+        List<Transaction> recentTransactions = new ArrayList<>();
+
+        try (Connection conn = Database.getConnection()) {
+            // Các câu lệnh đọc trên cùng một snapshot (kết nối được rollback khi trả về pool)
+            conn.setAutoCommit(false);
+
+            if (totals == null) {
+                totals = queryDashboardTotals(conn, userId, startDate, endDate, previousStart);
+            }
+            if (topLimit > 0 || recentLimit > 0) {
+                queryDashboardLists(conn, userId, startDate, endDate, topLimit, recentLimit, recentFrom, recentTo,
+                        topExpenses, topIncomes, recentTransactions);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        if (totals == null) {
+            totals = new Money[]{Money.ZERO, Money.ZERO, Money.ZERO, Money.ZERO};
+        }
+        return new DashboardSnapshot(userId, month, totals[0], totals[1], totals[2], totals[3],
+                topExpenses, topIncomes, recentTransactions);
+    }
+
+    // {thu, chi, thu tháng trước, chi tháng trước} từ chỉ mục Fenwick, null nếu chưa có chỉ mục
+    private static Money[] indexedDashboardTotals(int userId, LocalDate startDate, LocalDate endDate,
+                                                  LocalDate previousStart, LocalDate previousEnd) {
+        Money income = RangeSumIndex.sum(userId, "INCOME", startDate, endDate);
+        if (income == null) {
+            return null;
+        }
+        Money expense = RangeSumIndex.sum(userId, "EXPENSE", startDate, endDate);
+        Money previousIncome = RangeSumIndex.sum(userId, "INCOME", previousStart, previousEnd);
+        Money previousExpense = RangeSumIndex.sum(userId, "EXPENSE", previousStart, previousEnd);
+        if (expense == null || previousIncome == null || previousExpense == null) {
+            return null;
+        }
+        return new Money[]{income, expense, previousIncome, previousExpense};
+    }
+
+    // Tổng thu chi của tháng này và tháng trước trong một lần quét khoảng [previousStart, endDate]
+    private static Money[] queryDashboardTotals(Connection conn, int userId, LocalDate startDate,
+                                                LocalDate endDate, LocalDate previousStart) throws SQLException {
+        String sql = "SELECT " +
+                "COALESCE(SUM(CASE WHEN transaction_date >= ? AND type = 'INCOME' THEN amount ELSE 0 END), 0) as income, " +
+                "COALESCE(SUM(CASE WHEN transaction_date >= ? AND type = 'EXPENSE' THEN amount ELSE 0 END), 0) as expense, " +
+                "COALESCE(SUM(CASE WHEN transaction_date < ? AND type = 'INCOME' THEN amount ELSE 0 END), 0) as previous_income, " +
+                "COALESCE(SUM(CASE WHEN transaction_date < ? AND type = 'EXPENSE' THEN amount ELSE 0 END), 0) as previous_expense " +
+                "FROM transactions " +
+                // Điều kiện type giúp dùng covering index (user_id, type, transaction_date, amount)
+                "WHERE user_id = ? AND type IN ('INCOME', 'EXPENSE') AND transaction_date BETWEEN ? AND ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            Date start = Date.valueOf(startDate);
+            for (int i = 1; i <= 4; i++) {
+                pstmt.setDate(i, start);
+            }
+            pstmt.setInt(5, userId);
+            pstmt.setDate(6, Date.valueOf(previousStart));
+            pstmt.setDate(7, Date.valueOf(endDate));
+
+            ResultSet rs = pstmt.executeQuery();
+            rs.next();
+            return new Money[]{
+                    Money.of(rs.getBigDecimal("income")),
+                    Money.of(rs.getBigDecimal("expense")),
+                    Money.of(rs.getBigDecimal("previous_income")),
+                    Money.of(rs.getBigDecimal("previous_expense"))
+            };
+        }
+    }
+
+    // Top thu/chi trong tháng và các giao dịch mới nhất: một câu lệnh UNION ALL, mỗi nhánh có LIMIT riêng
+    private static void queryDashboardLists(Connection conn, int userId, LocalDate startDate, LocalDate endDate,
+                                            int topLimit, int recentLimit, LocalDate recentFrom, LocalDate recentTo,
+                                            List<Transaction> topExpenses, List<Transaction> topIncomes,
+                                            List<Transaction> recentTransactions) throws SQLException {
+        boolean recentRange = recentFrom != null && recentTo != null;
+        // Mỗi nhánh chọn id trước trên index (không đọc cả dòng); tên danh mục lấy từ từ điển nếu có
+        CategoryDictionary categories = CategoryDictionary.get();
+        String select = (categories != null
+                ? "SELECT t.*, ? AS section FROM transactions t "
+                : "SELECT t.*, c.name AS category_name, ? AS section " +
+                "FROM transactions t LEFT JOIN categories c ON t.category_id = c.id ") + "WHERE t.id IN ";
+        List<String> branches = new ArrayList<>();
+        if (topLimit > 0) {
+            String top = "(SELECT id FROM transactions " +
+                    "WHERE user_id = ? AND type = ? AND transaction_date BETWEEN ? AND ? " +
+                    "ORDER BY amount DESC LIMIT ?)";
+            branches.add(select + top);
+            branches.add(select + top);
+        }
+        if (recentLimit > 0) {
+            branches.add(select + "(SELECT id FROM transactions WHERE user_id = ? " +
+                    (recentRange ? "AND transaction_date BETWEEN ? AND ? " : "") +
+                    "ORDER BY transaction_date DESC, id DESC LIMIT ?)");
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(String.join(" UNION ALL ", branches))) {
+            int index = 1;
+            if (topLimit > 0) {
+                for (String type : new String[]{"EXPENSE", "INCOME"}) {
+                    pstmt.setString(index++, type);
+                    pstmt.setInt(index++, userId);
+                    pstmt.setString(index++, type);
+                    pstmt.setDate(index++, Date.valueOf(startDate));
+                    pstmt.setDate(index++, Date.valueOf(endDate));
+                    pstmt.setInt(index++, topLimit);
+                }
+            }
+            if (recentLimit > 0) {
+                pstmt.setString(index++, "RECENT");
+                pstmt.setInt(index++, userId);
+                if (recentRange) {
+                    pstmt.setDate(index++, Date.valueOf(recentFrom));
+                    pstmt.setDate(index++, Date.valueOf(recentTo));
+                }
+                pstmt.setInt(index, recentLimit);
+            }
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Transaction t = TransactionController.mapResultSetToTransaction(rs, categories);
+                switch (rs.getString("section")) {
+                    case "EXPENSE":
+                        topExpenses.add(t);
+                        break;
+                    case "INCOME":
+                        topIncomes.add(t);
+                        break;
+                    default:
+                        recentTransactions.add(t);
+                        break;
+                }
+            }
+        }
+
+        // UNION ALL và IN không giữ thứ tự sắp xếp của từng nhánh
+        Comparator<Transaction> byAmount = Comparator.comparing(Transaction::getMoney).reversed();
+        topExpenses.sort(byAmount);
+        topIncomes.sort(byAmount);
+        recentTransactions.sort(Comparator.comparing(Transaction::getTransactionDate)
+                .thenComparingInt(Transaction::getId).reversed());
+    }
+
+    private static Map<String, BigDecimal> toSummary(long[] totals) {
+        Map<String, BigDecimal> summary = new HashMap<>();
+        if (totals != null) {
+            summary.put("income", Money.toBigDecimal(totals[0]));
+            summary.put("expense", Money.toBigDecimal(totals[1]));
+            summary.put("balance", Money.toBigDecimal(totals[0] - totals[1]));
         }
+        return summary;
+    }
 
-        return current.subtract(previous)
-                .multiply(BigDecimal.valueOf(100))
-                .divide(previous, 2, BigDecimal.ROUND_HALF_UP);
+    /**
+     * Nhận tiến độ khi xuất CSV, trả về false để hủy
+     */
+    public interface ExportListener {
+        boolean onProgress(long rowsWritten);
     }
 
+    // Số dòng giữa hai lần báo tiến độ khi xuất CSV
+    private static final int EXPORT_PROGRESS_INTERVAL = 1_000;
+
     /**
      * Xuất dữ liệu báo cáo ra file CSV
      */
     public static boolean exportToCSV(int userId, LocalDate startDate, LocalDate endDate, String filePath) {
-        StringBuilder csv = new StringBuilder();
-
-        // Header
-        csv.append("Ngày,Danh mục,Mô tả,Số tiền,Loại\n");
+        return exportToCSV(userId, startDate, endDate, Paths.get(filePath), filePath.endsWith(".gz"), null) >= 0;
+    }
 
-        String sql = "SELECT t.transaction_date, c.name as category_name, " +
+    /**
+     * Xuất CSV dạng stream: đọc từng dòng từ ResultSet và ghi thẳng ra file (UTF-8, có thể nén gzip),
+     * bộ nhớ không phụ thuộc số dòng. Trả về số dòng đã ghi, -1 nếu lỗi hoặc bị hủy (file dở dang bị xóa).
+     */
+    public static long exportToCSV(int userId, LocalDate startDate, LocalDate endDate, Path file,
+                                   boolean gzip, ExportListener listener) {
+        // Có từ điển danh mục thì không cần JOIN, tên được tra theo category_id khi ghi
+        CategoryDictionary categories = CategoryDictionary.get();
+        String sql = "SELECT t.transaction_date, " +
+                (categories != null ? "t.category_id, " : "c.name as category_name, ") +
                 "t.description, t.amount, t.type " +
                 "FROM transactions t " +
-                "LEFT JOIN categories c ON t.category_id = c.id " +
+                (categories != null ? "" : "LEFT JOIN categories c ON t.category_id = c.id ") +
                 "WHERE t.user_id = ? AND t.transaction_date BETWEEN ? AND ? " +
                 "ORDER BY t.transaction_date DESC";
 
+        long rows = 0;
+        boolean cancelled = false;
+        boolean completed = false;
+
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = openCsvStream(channel, gzip);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
 
             pstmt.setInt(1, userId);
             pstmt.setDate(2, Date.valueOf(startDate));
             pstmt.setDate(3, Date.valueOf(endDate));
 
+            // Header
+            writer.write("Ngày,Danh mục,Mô tả,Số tiền,Loại\n");
+
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                csv.append(rs.getDate("transaction_date")).append(",");
-                csv.append("\"").append(rs.getString("category_name")).append("\",");
-                csv.append("\"").append(rs.getString("description") != null ?
-                        rs.getString("description").replace("\"", "\"\"") : "").append("\",");
-                csv.append(rs.getBigDecimal("amount")).append(",");
-                csv.append(rs.getString("type").equals("INCOME") ? "Thu nhập" : "Chi tiêu").append("\n");
+                writer.write(rs.getDate("transaction_date").toString());
+                writer.write(',');
+                writeQuoted(writer, categories != null
+                        ? categories.name(rs.getInt("category_id")) : rs.getString("category_name"));
+                writer.write(',');
+                writeQuoted(writer, rs.getString("description"));
+                writer.write(',');
+                writer.write(rs.getBigDecimal("amount").toPlainString());
+                writer.write(',');
+                writer.write(rs.getString("type").equals("INCOME") ? "Thu nhập" : "Chi tiêu");
+                writer.write('\n');
+
+                rows++;
+                if (listener != null && rows % EXPORT_PROGRESS_INTERVAL == 0 && !listener.onProgress(rows)) {
+                    cancelled = true;
+                    break;
+                }
             }
 
-            // Ghi ra file
-            java.io.FileWriter writer = new java.io.FileWriter(filePath);
-            writer.write(csv.toString());
-            writer.close();
-
-            return true;
-
+            // Báo tiến độ lần cuối với tổng số dòng (vẫn có thể hủy ở bước này)
+            boolean accepted = !cancelled && (listener == null || listener.onProgress(rows));
+            // Đẩy buffer và ghi phần cuối gzip ngay: lỗi lúc này (đầy đĩa...) phải xóa file và trả về -1
+            writer.flush();
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+            completed = accepted;
         } catch (Exception e) {
             e.printStackTrace();
-            return false;
         }
+
+        if (!completed) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return -1;
+        }
+        return rows;
+    }
+
+    // Ghi qua FileChannel (nén gzip nếu cần); writer phía trên có buffer lớn và mã hóa UTF-8 cố định
+    // (không phụ thuộc charset của hệ điều hành)
+    private static OutputStream openCsvStream(FileChannel channel, boolean gzip) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        return gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+    }
+
+    private static void writeQuoted(Writer writer, String value) throws IOException {
+        writer.write('"');
+        if (value != null) {
+            writer.write(value.indexOf('"') >= 0 ? value.replace("\"", "\"\"") : value);
+        }
+        writer.write('"');
     }
 
     /**
-     * Tạo báo cáo chi tiết cho in ấn
+     * Tạo báo cáo chi tiết cho in ấn. Mọi phần theo khoảng thời gian được tính trong một lượt duyệt
+     * giao dịch (ReportEngine, chia thành nhiều khoảng ngày quét song song với khoảng dài), xu hướng theo tháng
+     * là một Section chạy song song với lượt duyệt và đọc qua cache riêng của nó; thời gian của từng phần
+     * nằm trong khóa "timings". Phần theo khoảng thời gian lấy từ ReportResultCache nếu có, khi đó chỉ các
+     * section được chạy. Kết quả không được sửa.
+     *
+     * @throws ReportException nếu đọc dữ liệu lỗi hoặc báo cáo quá thời gian cho phép
      */
     public static Map<String, Object> generatePrintReport(int userId, LocalDate startDate, LocalDate endDate) {
-        Map<String, Object> report = new HashMap<>();
+        // Xu hướng 6 tháng gần nhất nằm ngoài khoảng [startDate, endDate] mà "print_report" được cache (và bị hủy)
+        // theo, nên không nằm trong kết quả cache đó mà có cache "monthly_trend" theo khoảng của nó
+        Map<String, ReportEngine.Section> sections = new LinkedHashMap<>();
+        sections.put("monthly_trend", conn -> cachedMonthlyTrend(conn, userId, 6));
+
+        Map<String, Object> sectionResults = new HashMap<>();
+        Map<String, Object> cached = ReportResultCache.get(userId, "print_report", startDate, endDate, () -> {
+            Map<String, Object> computed = computePrintReport(userId, startDate, endDate, sections);
+            for (String key : sections.keySet()) {
+                sectionResults.put(key, computed.remove(key));
+            }
+            return Collections.unmodifiableMap(computed);
+        });
+        if (sectionResults.isEmpty()) {
+            Map<String, Object> results = ReportEngine.runSections(sections);
+            results.remove("timings");
+            sectionResults.putAll(results);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>(cached);
+        report.putAll(sectionResults);
+        report.put("generated_date", LocalDate.now());
+        return Collections.unmodifiableMap(report);
+    }
+
+    private static Map<String, Object> computePrintReport(int userId, LocalDate startDate, LocalDate endDate,
+                                                          Map<String, ReportEngine.Section> sections) {
+        Map<String, Object> report = ReportEngine.run(userId, startDate, endDate,
+                ReportController::printReportAggregators, sections);
+        putAverages(Aggregators.statistics(report));
 
         // Thông tin cơ bản
         report.put("start_date", startDate);
         report.put("end_date", endDate);
-        report.put("generated_date", LocalDate.now());
 
-        // Tổng hợp
-        Map<String, Object> statistics = getAdvancedStatistics(userId, startDate, endDate);
-        report.put("statistics", statistics);
+        return report;
+    }
 
+    private static List<Aggregator> printReportAggregators() {
+        List<Aggregator> aggregators = statisticsAggregators();
         // Chi tiết theo danh mục
-        List<Map<String, Object>> expenseByCategory = getExpenseByCategory(userId, startDate, endDate);
-        report.put("expense_by_category", expenseByCategory);
-
-        List<Map<String, Object>> incomeByCategory = getIncomeByCategory(userId, startDate, endDate);
-        report.put("income_by_category", incomeByCategory);
-
+        aggregators.add(Aggregators.categoryTotals(false));
+        aggregators.add(Aggregators.categoryTotals(true));
         // Top giao dịch
-        List<Map<String, Object>> topExpenses = getTopExpenses(userId, startDate, endDate, 10);
-        report.put("top_expenses", topExpenses);
-
-        List<Map<String, Object>> topIncomes = getTopIncomes(userId, startDate, endDate, 10);
-        report.put("top_incomes", topIncomes);
-
-        // Xu hướng
-        List<Map<String, Object>> monthlyTrend = getMonthlyTrend(userId, 6);
-        report.put("monthly_trend", monthlyTrend);
-
-        // Thống kê theo ngày trong tuần
-        List<Map<String, Object>> expenseByDay = getExpenseByDayOfWeek(userId, startDate, endDate);
-        report.put("expense_by_day", expenseByDay);
-
-        // Thống kê theo thời gian trong ngày
-        List<Map<String, Object>> expenseByTime = getExpenseByTimeOfDay(userId, startDate, endDate);
-        report.put("expense_by_time", expenseByTime);
-
-        return report;
+        aggregators.add(Aggregators.top(false, 10));
+        aggregators.add(Aggregators.top(true, 10));
+        // Thống kê theo ngày trong tuần và thời gian trong ngày
+        aggregators.add(Aggregators.expenseByDayOfWeek());
+        aggregators.add(Aggregators.expenseByTimeOfDay());
+        return aggregators;
     }
 }
\ No newline at end of file
@@ -1,19 +1,48 @@
 package main.controller;
 
+import main.cache.CacheWrites;
+import main.cache.CategoryDictionary;
+import main.cache.RangeSumIndex;
+import main.cache.ReportResultCache;
 import main.dao.Database;
+import main.dao.MonthlyRollups;
+import main.event.ChangeEvent;
+import main.event.EventBus;
+import main.model.BatchInsertResult;
 import main.model.Category;
+import main.model.Money;
 import main.model.Transaction;
+import main.model.TransactionPageIndex;
 
 import java.math.BigDecimal;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TransactionController {
 
+    // Số dòng mỗi lần executeBatch khi thêm hàng loạt (-Dpf.batch.chunkSize=...)
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = Integer.getInteger("pf.batch.chunkSize", 500);
+
+    // Thêm hàng loạt nhiều hơn số dòng này thì phát một TransactionsImported cho mỗi người dùng thay vì từng dòng
+    private static final int EVENT_BULK_THRESHOLD = Integer.getInteger("pf.events.bulkThreshold", 256);
+
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT INTO transactions (user_id, category_id, amount, description, transaction_date, type) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
     // Hàm phụ trợ để tính tổng tiền theo loại (LƯU Ý SET Private)
-    private static BigDecimal getTotalAmount(int userId, LocalDate startDate, LocalDate endDate, String type) {
+    private static Money getTotalAmount(int userId, LocalDate startDate, LocalDate endDate, String type) {
+        // Trả lời từ chỉ mục Fenwick trong bộ nhớ nếu có, không cần truy vấn DB
+        Money indexed = RangeSumIndex.sum(userId, type, startDate, endDate);
+        if (indexed != null) {
+            return indexed;
+        }
+
         String sql = "SELECT SUM(amount) FROM transactions " +
                 "WHERE user_id = ? AND type = ? AND transaction_date BETWEEN ? AND ?";
 
@@ -27,32 +56,53 @@ public class TransactionController {
 
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                BigDecimal amount = rs.getBigDecimal(1);
-                return amount != null ? amount : BigDecimal.ZERO;
+                Money amount = Money.of(rs.getBigDecimal(1));
+                return amount != null ? amount : Money.ZERO;
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return BigDecimal.ZERO;
+        return Money.ZERO;
     }
 
     //Tính tổng thu nhập trong khoảng thời gian
-    public static BigDecimal getTotalIncome(int userId, LocalDate startDate, LocalDate endDate) {
+    public static Money getTotalIncome(int userId, LocalDate startDate, LocalDate endDate) {
         return getTotalAmount(userId, startDate, endDate, "INCOME");
     }
 
     //Tính tổng chi tiêu trong khoảng thời gian
-    public static BigDecimal getTotalExpense(int userId, LocalDate startDate, LocalDate endDate) {
+    public static Money getTotalExpense(int userId, LocalDate startDate, LocalDate endDate) {
         return getTotalAmount(userId, startDate, endDate, "EXPENSE");
     }
 
     /**
      * Lấy danh sách chi tiêu gom nhóm theo danh mục (để vẽ biểu đồ/bảng)
-     * Trả về List<Object[]>: [Tên danh mục, Số tiền]
+     * Trả về List<Object[]>: [Tên danh mục, Số tiền], lấy từ ReportResultCache nên không được sửa
      */
     public static List<Object[]> getExpenseByCategory(int userId, LocalDate startDate, LocalDate endDate) {
+        try {
+            return ReportResultCache.get(userId, "expense_by_category_rows", startDate, endDate,
+                    () -> queryExpenseByCategory(userId, startDate, endDate));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    private static List<Object[]> queryExpenseByCategory(int userId, LocalDate startDate,
+                                                         LocalDate endDate) throws SQLException {
         List<Object[]> list = new ArrayList<>();
-        String sql = "SELECT c.name, SUM(t.amount) as total " +
+        // Tháng trọn vẹn: đọc từ bảng tổng hợp monthly_rollups
+        boolean useRollups = MonthlyRollups.coversWholeMonths(startDate, endDate);
+        String sql = useRollups
+                ? "SELECT c.name, SUM(r.total) as total " +
+                "FROM monthly_rollups r " +
+                "JOIN categories c ON r.category_id = c.id " +
+                "WHERE r.user_id = ? AND r.type = 'EXPENSE' " +
+                "AND r.year_month BETWEEN ? AND ? " +
+                "GROUP BY c.name " +
+                "ORDER BY total DESC"
+                : "SELECT c.name, SUM(t.amount) as total " +
                 "FROM transactions t " +
                 "JOIN categories c ON t.category_id = c.id " +
                 "WHERE t.user_id = ? AND t.type = 'EXPENSE' " +
@@ -64,8 +114,13 @@ public class TransactionController {
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
+            if (useRollups) {
+                pstmt.setString(2, MonthlyRollups.yearMonth(startDate));
+                pstmt.setString(3, MonthlyRollups.yearMonth(endDate));
+            } else {
+                pstmt.setDate(2, Date.valueOf(startDate));
+                pstmt.setDate(3, Date.valueOf(endDate));
+            }
 
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
@@ -73,34 +128,73 @@ public class TransactionController {
                 BigDecimal amount = rs.getBigDecimal("total");
                 list.add(new Object[]{categoryName, amount});
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return list;
+        return Collections.unmodifiableList(list);
     }
 
     /**
      * Lấy danh sách giao dịch gần đây (có giới hạn số lượng) cho Dashboard
      */
     public static List<Transaction> getRecentTransactions(int userId, int limit) {
-        List<Transaction> list = new ArrayList<>();
-        String sql = "SELECT t.*, c.name AS category_name " +
-                "FROM transactions t " +
-                "LEFT JOIN categories c ON t.category_id = c.id " +
+        return findTransactions(TransactionQuery.forUser(userId).limit(limit).build());
+    }
+
+    /**
+     * Dựng mục lục phân trang cho danh sách giao dịch của người dùng (ngày giảm dần, id giảm dần).
+     * Chỉ quét index (user_id, transaction_date), không đọc dòng dữ liệu.
+     */
+    public static TransactionPageIndex getTransactionPageIndex(int userId, int pageSize) {
+        int rowCount = 0;
+        List<TransactionPageIndex.Key> pageEnds = new ArrayList<>();
+        String sql = "SELECT transaction_date, id FROM transactions " +
+                "WHERE user_id = ? " +
+                "ORDER BY transaction_date DESC, id DESC";
+
+        try (Connection conn = Database.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                // Chỉ đọc giá trị cột ở dòng cuối mỗi trang
+                if (++rowCount % pageSize == 0) {
+                    pageEnds.add(new TransactionPageIndex.Key(rs.getDate(1).toLocalDate(), rs.getInt(2)));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new TransactionPageIndex(pageSize, rowCount, pageEnds);
+    }
+
+    /**
+     * Lấy một trang giao dịch bằng keyset: các dòng đứng sau khóa after theo thứ tự (ngày giảm dần, id giảm dần).
+     * after = null để lấy trang đầu tiên.
+     */
+    public static List<Transaction> getTransactionsPage(int userId, TransactionPageIndex.Key after, int limit) {
+        List<Transaction> list = new ArrayList<>(limit);
+        CategoryDictionary categories = CategoryDictionary.get();
+        String sql = selectTransactions(categories) +
                 "WHERE t.user_id = ? " +
+                (after != null ? "AND (t.transaction_date, t.id) < (?, ?) " : "") +
                 "ORDER BY t.transaction_date DESC, t.id DESC " +
                 "LIMIT ?";
 
         try (Connection conn = Database.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, limit);
+            int index = 1;
+            pstmt.setInt(index++, userId);
+            if (after != null) {
+                pstmt.setDate(index++, Date.valueOf(after.getDate()));
+                pstmt.setInt(index++, after.getId());
+            }
+            pstmt.setInt(index, limit);
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                Transaction t = mapResultSetToTransaction(rs);
-                list.add(t);
+                list.add(mapResultSetToTransaction(rs, categories));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -112,25 +206,26 @@ public class TransactionController {
      * Lấy danh sách giao dịch trong khoảng thời gian (cho ReportPanel)
      */
     public static List<Transaction> getTransactionsByUser(int userId, LocalDate startDate, LocalDate endDate) {
+        return findTransactions(TransactionQuery.forUser(userId).between(startDate, endDate).build());
+    }
+
+    /**
+     * Lấy các giao dịch thỏa điều kiện query bằng một câu SELECT có tham số
+     * (tên danh mục lấy từ CategoryDictionary nếu dùng được, như các danh sách khác)
+     */
+    public static List<Transaction> findTransactions(TransactionQuery query) {
         List<Transaction> list = new ArrayList<>();
-        String sql = "SELECT t.*, c.name AS category_name " +
-                "FROM transactions t " +
-                "LEFT JOIN categories c ON t.category_id = c.id " +
-                "WHERE t.user_id = ? " +
-                "AND t.transaction_date BETWEEN ? AND ? " +
-                "ORDER BY t.transaction_date DESC";
+        CategoryDictionary categories = CategoryDictionary.get();
+        TransactionQuery.Compiled compiled = query.compile(categories);
 
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(compiled.getSql())) {
 
-            pstmt.setInt(1, userId);
-            pstmt.setDate(2, Date.valueOf(startDate));
-            pstmt.setDate(3, Date.valueOf(endDate));
+            compiled.bind(pstmt);
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                Transaction t = mapResultSetToTransaction(rs);
-                list.add(t);
+                list.add(mapResultSetToTransaction(rs, categories));
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -139,9 +234,20 @@ public class TransactionController {
     }
 
     /**
-     * Hàm phụ trợ để map ResultSet sang Object (tránh lặp code)
+     * Phần SELECT ... FROM của danh sách giao dịch: có từ điển danh mục thì lấy tên từ bộ nhớ, không cần JOIN
      */
-    private static Transaction mapResultSetToTransaction(ResultSet rs) throws SQLException {
+    static String selectTransactions(CategoryDictionary categories) {
+        return categories != null
+                ? "SELECT t.* FROM transactions t "
+                : "SELECT t.*, c.name AS category_name FROM transactions t " +
+                "LEFT JOIN categories c ON t.category_id = c.id ";
+    }
+
+    /**
+     * Hàm phụ trợ để map ResultSet sang Object (tránh lặp code).
+     * categories là từ điển đã dùng khi dựng câu lệnh bằng selectTransactions (null thì đọc cột category_name).
+     */
+    static Transaction mapResultSetToTransaction(ResultSet rs, CategoryDictionary categories) throws SQLException {
         Transaction t = new Transaction();
         t.setId(rs.getInt("id"));
         t.setUserId(rs.getInt("user_id"));
@@ -150,7 +256,8 @@ public class TransactionController {
         t.setDescription(rs.getString("description"));
         t.setTransactionDate(rs.getDate("transaction_date").toLocalDate());
         t.setType(rs.getString("type"));
-        t.setCategoryName(rs.getString("category_name"));
+        // Tên lấy từ từ điển là cùng một đối tượng String cho mọi giao dịch của danh mục
+        t.setCategoryName(categories != null ? categories.name(t.getCategoryId()) : rs.getString("category_name"));
         return t;
     }
 
@@ -195,28 +302,227 @@ public class TransactionController {
     }
 
     /**
-     * Thêm mới một giao dịch
+     * Thêm mới một giao dịch (cập nhật bảng tổng hợp theo tháng trong cùng transaction)
      */
     public static boolean addTransaction(Transaction t) {
-        String sql = "INSERT INTO transactions (user_id, category_id, amount, description, transaction_date, type) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
-
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             CacheWrites.Write cacheWrite = CacheWrites.begin()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_TRANSACTION_SQL);
+                 Statement idStmt = conn.createStatement()) {
+
+                bindInsert(pstmt, t);
+                if (pstmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                int id = (int) lastInsertRowId(idStmt);
+                MonthlyRollups.apply(conn, t, 1);
+
+                conn.commit();
+                // Chỉ gán id sau khi commit: rollback thì giao dịch của người gọi không mang id không tồn tại
+                t.setId(id);
+                cacheWrite.added(t);
+                cacheWrite.publish(new ChangeEvent.TransactionAdded(t));
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-            pstmt.setInt(1, t.getUserId());
-            pstmt.setInt(2, t.getCategoryId());
-            pstmt.setBigDecimal(3, t.getAmount());
-            pstmt.setString(4, t.getDescription());
-            // Chuyển đổi LocalDate sang java.sql.Date
-            pstmt.setDate(5, java.sql.Date.valueOf(t.getTransactionDate()));
-            pstmt.setString(6, t.getType());
+    /**
+     * Thêm nhiều giao dịch trong một transaction, dùng addBatch/executeBatch theo từng khối
+     */
+    public static BatchInsertResult addTransactions(List<Transaction> transactions) {
+        return addTransactions(transactions, DEFAULT_BATCH_CHUNK_SIZE);
+    }
 
-            return pstmt.executeUpdate() > 0;
+    public static BatchInsertResult addTransactions(List<Transaction> transactions, int chunkSize) {
+        BatchInsertResult result = new BatchInsertResult(transactions.size());
+        if (transactions.isEmpty()) {
+            return result;
+        }
 
+        try (Connection conn = Database.getConnection();
+             CacheWrites.Write cacheWrite = CacheWrites.begin()) {
+            conn.setAutoCommit(false);
+            try {
+                insertBatch(conn, transactions, chunkSize, result);
+                conn.commit();
+                assignGeneratedIds(transactions, result);
+                List<Transaction> inserted = new ArrayList<>(result.getInsertedCount());
+                for (int i = 0; i < transactions.size(); i++) {
+                    if (result.isInserted(i)) {
+                        cacheWrite.added(transactions.get(i));
+                        inserted.add(transactions.get(i));
+                    }
+                }
+                publishAdded(cacheWrite, inserted);
+            } catch (SQLException e) {
+                conn.rollback();
+                result.failAll(e.getMessage());
+                e.printStackTrace();
+            }
         } catch (SQLException e) {
+            result.failAll(e.getMessage());
             e.printStackTrace();
-            return false;
+        }
+        return result;
+    }
+
+    // Lô nhỏ: mỗi dòng một TransactionAdded; lô lớn: một TransactionsImported theo khoảng ngày của từng người dùng
+    static void publishAdded(CacheWrites.Write cacheWrite, List<Transaction> inserted) {
+        if (inserted.size() <= EVENT_BULK_THRESHOLD) {
+            for (Transaction t : inserted) {
+                cacheWrite.publish(new ChangeEvent.TransactionAdded(t));
+            }
+            return;
+        }
+
+        Map<Integer, LocalDate[]> ranges = new LinkedHashMap<>();
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (Transaction t : inserted) {
+            LocalDate date = t.getTransactionDate();
+            LocalDate[] range = ranges.computeIfAbsent(t.getUserId(), id -> new LocalDate[]{date, date});
+            if (date.isBefore(range[0])) {
+                range[0] = date;
+            }
+            if (date.isAfter(range[1])) {
+                range[1] = date;
+            }
+            counts.merge(t.getUserId(), 1, Integer::sum);
+        }
+        for (Map.Entry<Integer, LocalDate[]> entry : ranges.entrySet()) {
+            LocalDate[] range = entry.getValue();
+            cacheWrite.publish(new ChangeEvent.TransactionsImported(entry.getKey(), range[0], range[1],
+                    counts.get(entry.getKey())));
+        }
+    }
+
+    /**
+     * Chèn hàng loạt trên kết nối đã mở sẵn transaction (người gọi tự commit/rollback).
+     * Nếu một khối bị lỗi, khối đó được chạy lại từng dòng để xác định dòng nào hỏng.
+     * Id sinh ra chỉ được ghi vào result; người gọi gán vào các giao dịch sau khi commit (assignGeneratedIds).
+     */
+    static void insertBatch(Connection conn, List<Transaction> transactions, int chunkSize,
+                            BatchInsertResult result) throws SQLException {
+        int size = Math.max(1, chunkSize);
+        List<Integer> chunk = new ArrayList<>(size);
+
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_TRANSACTION_SQL);
+             Statement idStmt = conn.createStatement()) {
+
+            for (int start = 0; start < transactions.size(); start += size) {
+                int end = Math.min(start + size, transactions.size());
+                chunk.clear();
+
+                for (int i = start; i < end; i++) {
+                    Transaction t = transactions.get(i);
+                    String error = validateForInsert(t);
+                    if (error != null) {
+                        result.fail(i, error);
+                        continue;
+                    }
+                    bindInsert(pstmt, t);
+                    pstmt.addBatch();
+                    chunk.add(i);
+                }
+                if (chunk.isEmpty()) {
+                    continue;
+                }
+
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    pstmt.executeBatch();
+                    // Trong một transaction ghi, AUTOINCREMENT cấp id liên tiếp nên suy ra được id từng dòng
+                    long firstId = lastInsertRowId(idStmt) - chunk.size() + 1;
+                    for (int k = 0; k < chunk.size(); k++) {
+                        int index = chunk.get(k);
+                        result.setGeneratedId(index, (int) (firstId + k));
+                    }
+                    conn.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    // Driver SQLite không luôn ném BatchUpdateException, nên bắt SQLException chung
+                    conn.rollback(savepoint);
+                    pstmt.clearBatch();
+                    insertRowByRow(conn, pstmt, idStmt, transactions, chunk, result);
+                }
+            }
+        }
+
+        // Bảng tổng hợp theo tháng: gom các dòng đã chèn rồi ghi một lần, vẫn trong transaction của người gọi
+        List<Transaction> inserted = new ArrayList<>(result.getInsertedCount());
+        for (int i = 0; i < transactions.size(); i++) {
+            if (result.isInserted(i)) {
+                inserted.add(transactions.get(i));
+            }
+        }
+        MonthlyRollups.applyAll(conn, inserted);
+    }
+
+    /**
+     * Gán id đã sinh cho các giao dịch chèn thành công, gọi sau khi transaction của insertBatch đã commit
+     */
+    static void assignGeneratedIds(List<Transaction> transactions, BatchInsertResult result) {
+        for (int i = 0; i < transactions.size(); i++) {
+            if (result.isInserted(i)) {
+                transactions.get(i).setId(result.getGeneratedId(i));
+            }
+        }
+    }
+
+    // Chạy lại một khối bị lỗi từng dòng, mỗi dòng trong savepoint riêng
+    private static void insertRowByRow(Connection conn, PreparedStatement pstmt, Statement idStmt,
+                                       List<Transaction> transactions, List<Integer> chunk,
+                                       BatchInsertResult result) throws SQLException {
+        for (int index : chunk) {
+            Transaction t = transactions.get(index);
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                bindInsert(pstmt, t);
+                pstmt.executeUpdate();
+                result.setGeneratedId(index, (int) lastInsertRowId(idStmt));
+                conn.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                conn.rollback(savepoint);
+                result.fail(index, e.getMessage());
+            }
+        }
+    }
+
+    private static String validateForInsert(Transaction t) {
+        if (t == null) {
+            return "Giao dịch rỗng";
+        }
+        if (t.getAmount() == null) {
+            return "Thiếu số tiền";
+        }
+        if (t.getTransactionDate() == null) {
+            return "Thiếu ngày giao dịch";
+        }
+        if (!"INCOME".equals(t.getType()) && !"EXPENSE".equals(t.getType())) {
+            return "Loại giao dịch không hợp lệ: " + t.getType();
+        }
+        return null;
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, Transaction t) throws SQLException {
+        pstmt.setInt(1, t.getUserId());
+        pstmt.setInt(2, t.getCategoryId());
+        pstmt.setBigDecimal(3, t.getAmount());
+        pstmt.setString(4, t.getDescription());
+        pstmt.setDate(5, Date.valueOf(t.getTransactionDate()));
+        pstmt.setString(6, t.getType());
+    }
+
+    private static long lastInsertRowId(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            return rs.next() ? rs.getLong(1) : 0;
         }
     }
 
@@ -228,19 +534,41 @@ public class TransactionController {
                 "transaction_date = ?, type = ? WHERE id = ? AND user_id = ?";
 
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, t.getCategoryId());
-            pstmt.setBigDecimal(2, t.getAmount());
-            pstmt.setString(3, t.getDescription());
-            pstmt.setDate(4, java.sql.Date.valueOf(t.getTransactionDate()));
-            pstmt.setString(5, t.getType());
-            // Điều kiện WHERE
-            pstmt.setInt(6, t.getId());
-            pstmt.setInt(7, t.getUserId()); // Bảo mật: đảm bảo user chỉ sửa được của mình
-
-            return pstmt.executeUpdate() > 0;
-
+             CacheWrites.Write cacheWrite = CacheWrites.begin()) {
+            Database.beginWrite(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                // Lấy bản cũ để trừ khỏi bảng tổng hợp
+                Transaction old = findForUpdate(conn, t.getId());
+                if (old == null || old.getUserId() != t.getUserId()) {
+                    conn.rollback();
+                    return false;
+                }
+
+                pstmt.setInt(1, t.getCategoryId());
+                pstmt.setBigDecimal(2, t.getAmount());
+                pstmt.setString(3, t.getDescription());
+                pstmt.setDate(4, java.sql.Date.valueOf(t.getTransactionDate()));
+                pstmt.setString(5, t.getType());
+                // Điều kiện WHERE
+                pstmt.setInt(6, t.getId());
+                pstmt.setInt(7, t.getUserId()); // Bảo mật: đảm bảo user chỉ sửa được của mình
+
+                if (pstmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                MonthlyRollups.apply(conn, old, -1);
+                MonthlyRollups.apply(conn, t, 1);
+
+                conn.commit();
+                cacheWrite.removed(old);
+                cacheWrite.added(t);
+                cacheWrite.publish(new ChangeEvent.TransactionUpdated(old, t));
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -254,27 +582,75 @@ public class TransactionController {
         String sql = "DELETE FROM transactions WHERE id = ?";
 
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, transactionId);
-            return pstmt.executeUpdate() > 0;
-
+             CacheWrites.Write cacheWrite = CacheWrites.begin()) {
+            Database.beginWrite(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                Transaction old = findForUpdate(conn, transactionId);
+                if (old == null) {
+                    conn.rollback();
+                    return false;
+                }
+
+                pstmt.setInt(1, transactionId);
+                if (pstmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                MonthlyRollups.apply(conn, old, -1);
+
+                conn.commit();
+                cacheWrite.removed(old);
+                cacheWrite.publish(new ChangeEvent.TransactionDeleted(old));
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    // Đọc các cột của giao dịch mà bảng tổng hợp cần, trên kết nối đang mở transaction
+    private static Transaction findForUpdate(Connection conn, int transactionId) throws SQLException {
+        String sql = "SELECT id, user_id, category_id, amount, transaction_date, type FROM transactions WHERE id = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, transactionId);
+            ResultSet rs = pstmt.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            Transaction t = new Transaction();
+            t.setId(rs.getInt("id"));
+            t.setUserId(rs.getInt("user_id"));
+            t.setCategoryId(rs.getInt("category_id"));
+            t.setAmount(rs.getBigDecimal("amount"));
+            t.setTransactionDate(rs.getDate("transaction_date").toLocalDate());
+            t.setType(rs.getString("type"));
+            return t;
+        }
+    }
+
     public boolean addCategory(String name, String type) {
         String sql = "INSERT INTO categories (name, type) VALUES (?, ?)";
 
         try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             Statement idStmt = conn.createStatement()) {
 
             pstmt.setString(1, name);
             pstmt.setString(2, type);
 
-            return pstmt.executeUpdate() > 0;
+            boolean added = pstmt.executeUpdate() > 0;
+            if (added) {
+                Category category = new Category(name, type);
+                category.setId((int) lastInsertRowId(idStmt));
+                CategoryDictionary.added(category);
+                // Danh mục thêm ở đây không gắn user_id nên dùng chung cho mọi người dùng
+                EventBus.publish(new ChangeEvent.CategoryAdded(ChangeEvent.ALL_USERS, category.getId(), name, type));
+            }
+            return added;
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -284,64 +660,72 @@ public class TransactionController {
 
     /**
      * Lấy danh sách toàn bộ giao dịch của một người dùng cụ thể.
-     * Có JOIN với bảng categories để lấy tên danh mục.
+     * Tên danh mục lấy từ CategoryDictionary (hoặc JOIN với bảng categories nếu từ điển không dùng được).
      */
     public List<Transaction> getAllTransactions(int userId) {
-        List<Transaction> list = new ArrayList<>();
-        // Query kết hợp bảng transactions và categories để lấy category_name
-        String sql = "SELECT t.*, c.name AS category_name " +
-                "FROM transactions t " +
-                "LEFT JOIN categories c ON t.category_id = c.id " +
-                "WHERE t.user_id = ? " +
-                "ORDER BY t.transaction_date DESC, t.id DESC";
+        return findTransactions(TransactionQuery.forUser(userId).build());
+    }
 
-        try (Connection conn = Database.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * Lấy danh sách các danh mục (Category) để hiển thị lên ComboBox khi thêm/sửa.
+     * Đọc từ CategoryDictionary, chỉ truy vấn DB nếu từ điển không dùng được.
+     */
+    public List<Category> getCategories() {
+        CategoryDictionary dictionary = CategoryDictionary.get();
+        if (dictionary != null) {
+            return dictionary.listAll();
+        }
+        return loadCategories(null);
+    }
 
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
+    /**
+     * Các danh mục (mọi loại) mà người dùng dùng được: của riêng người dùng hoặc dùng chung
+     */
+    public List<Category> getCategories(int userId) {
+        CategoryDictionary dictionary = CategoryDictionary.get();
+        if (dictionary != null) {
+            return dictionary.list(userId);
+        }
+        return loadCategories(userId);
+    }
 
-            while (rs.next()) {
-                Transaction t = new Transaction();
-                t.setId(rs.getInt("id"));
-                t.setUserId(rs.getInt("user_id"));
-                t.setCategoryId(rs.getInt("category_id"));
-                t.setAmount(rs.getBigDecimal("amount")); //
-                t.setDescription(rs.getString("description"));
-                // Chuyển đổi java.sql.Date sang java.time.LocalDate
-                t.setTransactionDate(rs.getDate("transaction_date").toLocalDate()); //
-                t.setType(rs.getString("type"));
-
-                // Set tên category lấy từ bảng đã JOIN
-                t.setCategoryName(rs.getString("category_name")); //
-
-                list.add(t);
+    /**
+     * Các danh mục của một loại (INCOME/EXPENSE) mà người dùng dùng được (của riêng người dùng hoặc dùng chung)
+     */
+    public List<Category> getCategories(int userId, String type) {
+        CategoryDictionary dictionary = CategoryDictionary.get();
+        if (dictionary != null) {
+            return dictionary.list(userId, type);
+        }
+        List<Category> list = new ArrayList<>();
+        for (Category category : loadCategories(userId)) {
+            if (category.getType().equals(type)) {
+                list.add(category);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         return list;
     }
 
-    /**
-     * Lấy danh sách các danh mục (Category) để hiển thị lên ComboBox khi thêm/sửa
-     * (Hỗ trợ lọc theo loại: INCOME hoặc EXPENSE nếu cần)
-     */
-    public List<Category> getCategories() {
+    // Đọc bảng categories khi từ điển không dùng được; userId == null = mọi danh mục
+    private List<Category> loadCategories(Integer userId) {
         List<Category> list = new ArrayList<>();
-        String sql = "SELECT * FROM categories";
+        String sql = "SELECT * FROM categories" + (userId != null ? " WHERE user_id IS NULL OR user_id = ?" : "")
+                + " ORDER BY id";
 
         try (Connection conn = Database.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
+            if (userId != null) {
+                pstmt.setInt(1, userId);
+            }
+            ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                // Giả sử bạn có class Category với constructor tương ứng
-                // Nếu chưa có file Category.java chi tiết, bạn cần tạo Model này
                 Category c = new Category();
                 c.setId(rs.getInt("id"));
                 c.setName(rs.getString("name"));
                 c.setType(rs.getString("type"));
+                int owner = rs.getInt("user_id");
+                c.setUserId(rs.wasNull() ? null : owner);
                 list.add(c);
             }
 
@@ -350,4 +734,4 @@ public class TransactionController {
         }
         return list;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,345 @@
+package main.controller;
+
+import main.cache.CategoryDictionary;
+import main.dao.TransactionSearchIndex;
+import main.model.Transaction;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Điều kiện lọc danh sách giao dịch của một người dùng: khoảng ngày, loại, tập danh mục, khoảng số tiền,
+ * từ khóa trong mô tả, thứ tự sắp xếp và số dòng mỗi trang. Đối tượng không đổi, tạo bằng {@link #forUser}.
+ * TransactionController.findTransactions dịch điều kiện thành một câu SELECT có tham số. Câu SQL chỉ phụ thuộc
+ * vào việc có hay không từng điều kiện (danh sách IN được làm tròn lên lũy thừa của 2), nên các lần lọc với giá trị
+ * khác nhau dùng lại statement và plan đã chuẩn bị trong StatementCache.
+ * Trang sau đọc bằng keyset (dòng cuối của trang trước), riêng RELEVANCE đọc theo số dòng đã bỏ qua.
+ */
+public final class TransactionQuery {
+
+    /**
+     * Thứ tự sắp xếp; dòng cùng khóa được xếp theo id cùng chiều để keyset không bỏ sót dòng
+     */
+    public enum Sort {
+        NEWEST("t.transaction_date DESC, t.id DESC"),
+        OLDEST("t.transaction_date ASC, t.id ASC"),
+        AMOUNT_DESC("t.amount DESC, t.id DESC"),
+        AMOUNT_ASC("t.amount ASC, t.id ASC"),
+        // Mức liên quan với từ khóa (bm25), chỉ dùng được khi có text
+        RELEVANCE("f.fts_rank, t.id DESC");
+
+        private final String orderBy;
+
+        Sort(String orderBy) {
+            this.orderBy = orderBy;
+        }
+    }
+
+    private final int userId;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final String type; // null = cả thu và chi
+    private final List<Integer> categoryIds; // tăng dần, rỗng = mọi danh mục
+    private final BigDecimal minAmount;
+    private final BigDecimal maxAmount;
+    private final String text; // biểu thức MATCH của FTS5, null = không lọc theo mô tả
+    private final Sort sort;
+    private final int limit; // 0 = không giới hạn
+    private final Transaction after; // dòng cuối của trang trước (sắp xếp keyset)
+    private final int offset; // số dòng đã bỏ qua (RELEVANCE)
+
+    private TransactionQuery(Builder builder, Transaction after, int offset) {
+        this.userId = builder.userId;
+        this.startDate = builder.startDate;
+        this.endDate = builder.endDate;
+        this.type = builder.type;
+        this.categoryIds = Collections.unmodifiableList(new ArrayList<>(builder.categoryIds));
+        this.minAmount = builder.minAmount;
+        this.maxAmount = builder.maxAmount;
+        this.text = builder.text;
+        this.sort = builder.text == null && builder.sort == Sort.RELEVANCE ? Sort.NEWEST : builder.sort;
+        this.limit = builder.limit;
+        this.after = after;
+        this.offset = offset;
+    }
+
+    private TransactionQuery(TransactionQuery source, int limit, Transaction after, int offset) {
+        this.userId = source.userId;
+        this.startDate = source.startDate;
+        this.endDate = source.endDate;
+        this.type = source.type;
+        this.categoryIds = source.categoryIds;
+        this.minAmount = source.minAmount;
+        this.maxAmount = source.maxAmount;
+        this.text = source.text;
+        this.sort = source.sort;
+        this.limit = limit;
+        this.after = after;
+        this.offset = offset;
+    }
+
+    public static Builder forUser(int userId) {
+        return new Builder(userId);
+    }
+
+    /**
+     * Điều kiện đọc trang ngay sau page (kết quả của điều kiện này); null nếu page đã là trang cuối
+     */
+    public TransactionQuery nextPage(List<Transaction> page) {
+        if (limit == 0 || page.size() < limit) {
+            return null;
+        }
+        return continueAfter(page);
+    }
+
+    /**
+     * Điều kiện đọc tiếp (cùng limit) sau các dòng rows đã đọc bằng điều kiện này, kể cả khi rows gồm nhiều trang
+     */
+    public TransactionQuery continueAfter(List<Transaction> rows) {
+        if (rows.isEmpty()) {
+            return this;
+        }
+        return sort == Sort.RELEVANCE
+                ? new TransactionQuery(this, limit, null, offset + rows.size())
+                : new TransactionQuery(this, limit, rows.get(rows.size() - 1), 0);
+    }
+
+    /**
+     * Cùng điều kiện nhưng đọc lại từ đầu với số dòng limit
+     */
+    public TransactionQuery withLimit(int limit) {
+        return new TransactionQuery(this, Math.max(0, limit), null, 0);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * Có điều kiện nào ngoài người dùng hay không
+     */
+    public boolean isFiltered() {
+        return startDate != null || endDate != null || type != null || !categoryIds.isEmpty()
+                || minAmount != null || maxAmount != null || text != null;
+    }
+
+    /**
+     * Câu SQL và tham số theo đúng thứ tự dấu ?
+     */
+    Compiled compile(CategoryDictionary categories) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(TransactionController.selectTransactions(categories));
+
+        if (sort == Sort.RELEVANCE) {
+            sql.append("JOIN (SELECT rowid AS fts_id, rank AS fts_rank FROM transactions_fts " +
+                    "WHERE transactions_fts MATCH ?");
+            params.add(text);
+            if (!isFilteredBesidesText()) {
+                // Không còn điều kiện nào khác: xếp hạng và cắt trang ngay trong chỉ mục FTS
+                appendLimit(sql.append(" ORDER BY rank, rowid DESC"), params);
+            }
+            sql.append(") f ON f.fts_id = t.id ");
+        }
+
+        sql.append("WHERE t.user_id = ? ");
+        params.add(userId);
+        if (startDate != null) {
+            sql.append("AND t.transaction_date >= ? ");
+            params.add(startDate);
+        }
+        if (endDate != null) {
+            sql.append("AND t.transaction_date <= ? ");
+            params.add(endDate);
+        }
+        if (type != null) {
+            // Viết thẳng giá trị (chỉ có INCOME/EXPENSE) để planner dùng được index một phần theo type
+            sql.append("AND t.type = '").append(type).append("' ");
+        }
+        if (!categoryIds.isEmpty()) {
+            // Làm tròn số phần tử lên lũy thừa của 2 (lặp lại id cuối) để chỉ có vài dạng câu SQL
+            int size = Integer.highestOneBit(((categoryIds.size() - 1) << 1) | 1);
+            sql.append("AND t.category_id IN (");
+            for (int i = 0; i < size; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                params.add(categoryIds.get(Math.min(i, categoryIds.size() - 1)));
+            }
+            sql.append(") ");
+        }
+        if (minAmount != null) {
+            sql.append("AND t.amount >= ? ");
+            params.add(minAmount);
+        }
+        if (maxAmount != null) {
+            sql.append("AND t.amount <= ? ");
+            params.add(maxAmount);
+        }
+        if (text != null && sort != Sort.RELEVANCE) {
+            sql.append("AND t.id IN (SELECT rowid FROM transactions_fts WHERE transactions_fts MATCH ?) ");
+            params.add(text);
+        }
+        if (after != null) {
+            boolean byDate = sort == Sort.NEWEST || sort == Sort.OLDEST;
+            boolean descending = sort == Sort.NEWEST || sort == Sort.AMOUNT_DESC;
+            sql.append(byDate ? "AND (t.transaction_date, t.id) " : "AND (t.amount, t.id) ")
+                    .append(descending ? "< (?, ?) " : "> (?, ?) ");
+            params.add(byDate ? after.getTransactionDate() : after.getAmount());
+            params.add(after.getId());
+        }
+
+        sql.append("ORDER BY ").append(sort.orderBy);
+        if (sort != Sort.RELEVANCE || isFilteredBesidesText()) {
+            appendLimit(sql, params);
+        }
+        return new Compiled(sql.toString(), params);
+    }
+
+    private boolean isFilteredBesidesText() {
+        return startDate != null || endDate != null || type != null || !categoryIds.isEmpty()
+                || minAmount != null || maxAmount != null;
+    }
+
+    private void appendLimit(StringBuilder sql, List<Object> params) {
+        if (limit > 0) {
+            sql.append(" LIMIT ? OFFSET ?");
+            params.add(limit);
+            params.add(offset);
+        }
+    }
+
+    /**
+     * Câu SQL đã dịch cùng các tham số
+     */
+    static final class Compiled {
+        private final String sql;
+        private final List<Object> params;
+
+        private Compiled(String sql, List<Object> params) {
+            this.sql = sql;
+            this.params = params;
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        void bind(PreparedStatement pstmt) throws SQLException {
+            int index = 1;
+            for (Object param : params) {
+                if (param instanceof Integer) {
+                    pstmt.setInt(index++, (Integer) param);
+                } else if (param instanceof LocalDate) {
+                    pstmt.setDate(index++, Date.valueOf((LocalDate) param));
+                } else if (param instanceof BigDecimal) {
+                    pstmt.setBigDecimal(index++, (BigDecimal) param);
+                } else {
+                    pstmt.setString(index++, (String) param);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dựng TransactionQuery; điều kiện nào không gọi thì không lọc
+     */
+    public static final class Builder {
+        private final int userId;
+        private LocalDate startDate;
+        private LocalDate endDate;
+        private String type;
+        private final TreeSet<Integer> categoryIds = new TreeSet<>();
+        private BigDecimal minAmount;
+        private BigDecimal maxAmount;
+        private String text;
+        private Sort sort = Sort.NEWEST;
+        private int limit = 0;
+
+        private Builder(int userId) {
+            this.userId = userId;
+        }
+
+        /**
+         * Khoảng ngày (tính cả hai đầu), null = không giới hạn phía đó
+         */
+        public Builder between(LocalDate startDate, LocalDate endDate) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            return this;
+        }
+
+        /**
+         * Chỉ lấy các loại này ("INCOME", "EXPENSE"); không truyền gì hoặc đủ cả hai loại = không lọc
+         */
+        public Builder types(String... types) {
+            TreeSet<String> set = new TreeSet<>();
+            for (String type : types) {
+                if (!type.equals("INCOME") && !type.equals("EXPENSE")) {
+                    throw new IllegalArgumentException("Loại giao dịch không hợp lệ: " + type);
+                }
+                set.add(type);
+            }
+            this.type = set.size() == 1 ? set.first() : null;
+            return this;
+        }
+
+        /**
+         * Chỉ lấy các danh mục này; null hoặc rỗng = mọi danh mục
+         */
+        public Builder categories(Collection<Integer> categoryIds) {
+            this.categoryIds.clear();
+            if (categoryIds != null) {
+                this.categoryIds.addAll(categoryIds);
+            }
+            return this;
+        }
+
+        /**
+         * Khoảng số tiền (tính cả hai đầu), null = không giới hạn phía đó
+         */
+        public Builder amountBetween(BigDecimal minAmount, BigDecimal maxAmount) {
+            this.minAmount = minAmount;
+            this.maxAmount = maxAmount;
+            return this;
+        }
+
+        /**
+         * Mô tả chứa mọi từ trong text (khớp theo tiền tố, không phân biệt dấu); chuỗi rỗng = không lọc
+         */
+        public Builder text(String text) {
+            this.text = text != null ? TransactionSearchIndex.toMatchQuery(userId, text) : null;
+            return this;
+        }
+
+        public Builder sortBy(Sort sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        /**
+         * Số dòng mỗi trang, 0 = lấy hết
+         */
+        public Builder limit(int limit) {
+            this.limit = Math.max(0, limit);
+            return this;
+        }
+
+        public TransactionQuery build() {
+            return new TransactionQuery(this, null, 0);
+        }
+    }
+}
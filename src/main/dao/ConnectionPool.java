@@ -0,0 +1,370 @@
+package main.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool kết nối SQLite: giữ lại các kết nối vật lý để dùng lại thay vì mở file DB mỗi lần.
+ * Kết nối trả ra là proxy của {@link Connection}, gọi close() sẽ trả kết nối về pool.
+ * Mỗi kết nối vật lý mới được áp dụng các PRAGMA của {@link DatabaseProfile} đang dùng
+ * và có một {@link StatementCache} riêng.
+ */
+public class ConnectionPool {
+    private final String url;
+    private final DatabaseProfile profile;
+    private final int maxSize;
+    private final long checkoutTimeoutMs;
+    private final long validationIntervalMs;
+    private final int statementCacheSize;
+
+    // Kết nối rảnh, dùng như stack (LIFO) để kết nối "nóng" được dùng lại trước
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    // Số liệu thống kê
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger opened = new AtomicInteger();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, DatabaseProfile profile, int maxSize,
+                          long checkoutTimeoutMs, long validationIntervalMs, int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Kích thước pool phải lớn hơn 0: " + maxSize);
+        }
+        this.url = url;
+        this.profile = profile;
+        this.maxSize = maxSize;
+        this.checkoutTimeoutMs = checkoutTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Mượn một kết nối từ pool, chờ tối đa checkoutTimeoutMs nếu pool đã hết kết nối
+     */
+    public Connection getConnection() throws SQLException {
+        return checkout(false);
+    }
+
+    /**
+     * Mượn một kết nối chỉ đọc (PRAGMA query_only): mọi câu lệnh ghi trên kết nối này đều bị từ chối.
+     * Chế độ chỉ đọc được tắt khi kết nối trả về pool.
+     */
+    public Connection getReadOnlyConnection() throws SQLException {
+        return checkout(true);
+    }
+
+    private Connection checkout(boolean readOnly) throws SQLException {
+        if (closed) {
+            throw new SQLException("Pool kết nối đã bị đóng");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(checkoutTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Bị ngắt khi đang chờ kết nối", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTimeoutException("Hết thời gian chờ kết nối (" + checkoutTimeoutMs + " ms), pool size = " + maxSize);
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            if (readOnly) {
+                try {
+                    pooled.setQueryOnly(true);
+                } catch (SQLException e) {
+                    discard(pooled);
+                    throw e;
+                }
+            }
+            active.incrementAndGet();
+            checkouts.increment();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Lấy kết nối rảnh, kiểm tra lại kết nối đã để lâu trước khi dùng
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastReturned < validationIntervalMs || pooled.isValid()) {
+                return pooled;
+            }
+            validationFailures.increment();
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url);
+        try {
+            profile.applyConnectionPragmas(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        opened.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || !pooled.reset()) {
+                discard(pooled);
+            } else {
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        opened.decrementAndGet();
+        if (pooled.statements != null) {
+            pooled.statements.clear();
+        }
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Đóng toàn bộ kết nối rảnh; các kết nối đang được mượn sẽ bị đóng khi trả về
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public Stats getStats() {
+        long count = checkouts.sum();
+        long waitNanos = totalWaitNanos.sum();
+        return new Stats(maxSize, active.get(), idle.size(), opened.get(), count, timeouts.sum(),
+                validationFailures.sum(),
+                count > 0 ? TimeUnit.NANOSECONDS.toMicros(waitNanos / count) : 0,
+                TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get()));
+    }
+
+    /**
+     * Một kết nối vật lý trong pool
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements; // null nếu tắt cache statement
+        private volatile long lastReturned = System.currentTimeMillis();
+        private boolean queryOnly = false;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null;
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void setQueryOnly(boolean on) throws SQLException {
+            try (Statement stmt = physical.createStatement()) {
+                stmt.execute("PRAGMA query_only = " + (on ? "ON" : "OFF"));
+            }
+            queryOnly = on;
+        }
+
+        // Đưa kết nối về trạng thái mặc định trước khi trả về pool
+        boolean reset() {
+            try {
+                if (physical.isClosed()) {
+                    return false;
+                }
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (queryOnly) {
+                    setQueryOnly(false);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Lease(this));
+        }
+    }
+
+    /**
+     * Một lần mượn kết nối: close() trả kết nối về pool, dùng sau khi close() sẽ báo lỗi
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned = false;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + (returned ? ", returned" : "") + "]";
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Kết nối đã được trả về pool");
+            }
+            // prepareStatement(String) đi qua cache statement của kết nối vật lý
+            if (pooled.statements != null && "prepareStatement".equals(method.getName())
+                    && args.length == 1) {
+                return pooled.statements.prepare(pooled.physical, (Connection) proxy, (String) args[0]);
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Ảnh chụp số liệu của pool tại một thời điểm
+     */
+    public static class Stats {
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final int opened;
+        private final long checkouts;
+        private final long timeouts;
+        private final long validationFailures;
+        private final long avgWaitMicros;
+        private final long maxWaitMicros;
+
+        Stats(int maxSize, int active, int idle, int opened, long checkouts, long timeouts,
+              long validationFailures, long avgWaitMicros, long maxWaitMicros) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.opened = opened;
+            this.checkouts = checkouts;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.avgWaitMicros = avgWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getOpened() {
+            return opened;
+        }
+
+        public long getCheckouts() {
+            return checkouts;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public long getAvgWaitMicros() {
+            return avgWaitMicros;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool[size=" + maxSize + ", active=" + active + ", idle=" + idle + ", opened=" + opened
+                    + ", checkouts=" + checkouts + ", timeouts=" + timeouts
+                    + ", validationFailures=" + validationFailures
+                    + ", avgWait=" + avgWaitMicros + "us, maxWait=" + maxWaitMicros + "us]";
+        }
+    }
+}
@@ -1,22 +1,82 @@
 package main.dao;
 
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteConnectionConfig;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 public class Database {
     // Tên file cơ sở dữ liệu SQLite
-    private static final String URL = "jdbc:sqlite:src/database/personal_finance.db";
+    static final String FILE = "src/database/personal_finance.db";
+    private static final String URL = "jdbc:sqlite:" + FILE;
+
+    // Cấu hình đọc từ database.properties hoặc system property (-Dpf.db.profile=fast-read)
+    private static final DatabaseConfig CONFIG = DatabaseConfig.load();
+    private static final DatabaseProfile PROFILE = CONFIG.getProfile();
+
+    // Pool kết nối dùng chung, mỗi kết nối mới được áp dụng PRAGMA của PROFILE
+    private static final ConnectionPool POOL = new ConnectionPool(URL, PROFILE,
+            CONFIG.getInt("pf.db.pool.size", 4),
+            CONFIG.getLong("pf.db.pool.timeoutMs", 10_000L),
+            CONFIG.getLong("pf.db.pool.validationIntervalMs", 30_000L),
+            CONFIG.getInt("pf.db.statementCache.size", 64));
 
     static {
         // Tự động khởi tạo các bảng khi lớp Database được load
         initializeDatabase();
+
+        // Đóng các kết nối khi tắt ứng dụng
+        Runtime.getRuntime().addShutdownHook(new Thread(POOL::close, "db-pool-shutdown"));
     }
 
-    // Cung cấp kết nối tới cơ sở dữ liệu
+    // Cung cấp kết nối tới cơ sở dữ liệu (mượn từ pool, gọi close() để trả lại)
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL);
+        return POOL.getConnection();
+    }
+
+    // Kết nối chỉ đọc (PRAGMA query_only) cho các truy vấn báo cáo chạy song song
+    public static Connection getReadOnlyConnection() throws SQLException {
+        return POOL.getReadOnlyConnection();
+    }
+
+    /**
+     * Mở transaction ghi và giữ khóa ghi ngay từ đầu (BEGIN IMMEDIATE).
+     * Dùng cho các thao tác đọc rồi mới ghi: transaction thường bắt đầu bằng khóa đọc và sẽ bị
+     * SQLITE_BUSY khi nâng lên khóa ghi nếu kết nối khác vừa ghi, còn ở đây busy_timeout được áp dụng.
+     */
+    public static void beginWrite(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            throw new IllegalStateException("Kết nối đang ở trong một transaction");
+        }
+        // Driver mở transaction bằng BEGIN theo TransactionMode của kết nối khi setAutoCommit(false),
+        // và mở lại ngay sau mỗi commit/rollback: chỉ dùng IMMEDIATE cho lần BEGIN này rồi trả về DEFERRED,
+        // để transaction mở lại sau commit không giữ khóa ghi
+        SQLiteConnectionConfig config = conn.unwrap(SQLiteConnection.class).getConnectionConfig();
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        try {
+            conn.setAutoCommit(false);
+        } finally {
+            config.setTransactionMode(SQLiteConfig.TransactionMode.DEFERRED);
+        }
+    }
+
+    // Profile PRAGMA đang áp dụng (safe, balanced, fast-read)
+    public static DatabaseProfile getProfile() {
+        return PROFILE;
+    }
+
+    // Số liệu của pool kết nối (active, idle, thời gian chờ...)
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.getStats();
+    }
+
+    // Số liệu cache PreparedStatement (hit/miss/eviction)
+    public static StatementCache.Stats getStatementCacheStats() {
+        return StatementCache.getStats();
     }
 
     /**
@@ -26,6 +86,9 @@ public class Database {
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
 
+            // Chế độ journal (WAL/DELETE) được lưu trong file DB, chỉ cần đặt một lần
+            PROFILE.applyJournalMode(conn);
+
             // 1. Tạo bảng users dựa trên AuthController và User model
             String createUsersTable = "CREATE TABLE IF NOT EXISTS users ("
                     + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
@@ -41,7 +104,8 @@ public class Database {
             String createCategoriesTable = "CREATE TABLE IF NOT EXISTS categories ("
                     + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
                     + "name TEXT NOT NULL, "
-                    + "type TEXT NOT NULL" // INCOME hoặc EXPENSE
+                    + "type TEXT NOT NULL, " // INCOME hoặc EXPENSE
+                    + "user_id INTEGER, " // NULL = danh mục dùng chung
                     + "budget_limit DECIMAL(15, 2) DEFAULT 0"
                     + ");";
             stmt.execute(createCategoriesTable);
@@ -55,6 +119,7 @@ public class Database {
                     + "description TEXT, "
                     + "transaction_date DATE NOT NULL, "
                     + "type TEXT NOT NULL, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
                     + "FOREIGN KEY (user_id) REFERENCES users(id), "
                     + "FOREIGN KEY (category_id) REFERENCES categories(id)"
                     + ");";
@@ -67,16 +132,52 @@ public class Database {
                     + "category_id INTEGER, "
                     + "amount DECIMAL(15, 2) NOT NULL, "
                     + "description TEXT, "
-                    + "day_of_month INTEGER NOT NULL, " // Ngày thực hiện (1-31)
-                    + "last_executed_month TEXT, " // Lưu tháng gần nhất đã chạy (dạng "MM/yyyy")
+                    + "day_of_month INTEGER NOT NULL, " // Ngày thực hiện (1-31) khi không có recurrence
+                    + "last_executed_month TEXT, " // Cũ: tháng gần nhất đã chạy (dạng "MM/yyyy"), thay bằng last_run_date
+                    + "type TEXT NOT NULL DEFAULT 'EXPENSE', " // INCOME hoặc EXPENSE
+                    + "recurrence TEXT, " // Quy tắc lặp (RecurrenceRule), NULL = hằng tháng vào day_of_month
+                    + "start_date TEXT, " // "yyyy-MM-dd", không sinh giao dịch trước ngày này
+                    + "last_run_date TEXT, " // "yyyy-MM-dd" của lần gần nhất đã sinh giao dịch
                     + "FOREIGN KEY (user_id) REFERENCES users(id)"
                     + ");";
             stmt.execute(createRecurringTable);
 
+            // Mỗi kỳ (task, ngày chạy "yyyy-MM-dd") của giao dịch định kỳ chỉ được sinh một lần:
+            // khóa chính chặn việc sinh trùng kể cả khi hai lần chạy chồng lên nhau
+            String createRecurringExecutionsTable = "CREATE TABLE IF NOT EXISTS recurring_executions ("
+                    + "task_id INTEGER NOT NULL, "
+                    + "period TEXT NOT NULL, "
+                    + "transaction_id INTEGER, "
+                    + "executed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                    + "PRIMARY KEY (task_id, period), "
+                    + "FOREIGN KEY (task_id) REFERENCES recurring_tasks(id)"
+                    + ") WITHOUT ROWID;";
+            stmt.execute(createRecurringExecutionsTable);
+
+            // Bổ sung các cột mà báo cáo cần nhưng DB cũ chưa có
+            ensureColumn(conn, "categories", "user_id", "INTEGER");
+            ensureColumn(conn, "categories", "budget_limit", "DECIMAL(15, 2) DEFAULT 0");
+            ensureColumn(conn, "transactions", "created_at", "TIMESTAMP");
+            ensureColumn(conn, "recurring_tasks", "type", "TEXT NOT NULL DEFAULT 'EXPENSE'");
+            ensureColumn(conn, "recurring_tasks", "recurrence", "TEXT");
+            ensureColumn(conn, "recurring_tasks", "start_date", "TEXT");
+            if (ensureColumn(conn, "recurring_tasks", "last_run_date", "TEXT")) {
+                migrateRecurringPeriods(conn);
+            }
+
+            // Bảng tổng hợp theo tháng cho báo cáo (tự tính lại nếu vừa được tạo trên DB cũ)
+            MonthlyRollups.initialize(conn);
+
+            // Chỉ mục tìm kiếm toàn văn theo mô tả (tự đánh chỉ mục lại nếu vừa được tạo trên DB cũ)
+            TransactionSearchIndex.initialize(conn);
+
+            // Tạo các index cho các truy vấn của TransactionController và ReportController
+            createIndexes(stmt);
+
             // Thêm dữ liệu mẫu cho Category nếu bảng trống
             seedCategories(stmt);
 
-            System.out.println("Cơ sở dữ liệu đã được khởi tạo thành công.");
+            System.out.println("Cơ sở dữ liệu đã được khởi tạo thành công (profile " + PROFILE + ").");
 
         } catch (SQLException e) {
             System.err.println("Lỗi khởi tạo cơ sở dữ liệu: " + e.getMessage());
@@ -84,6 +185,87 @@ public class Database {
         }
     }
 
+    /**
+     * Các index được thiết kế theo đúng dạng truy vấn (user_id, type, transaction_date)
+     */
+    private static void createIndexes(Statement stmt) throws SQLException {
+        // Danh sách giao dịch / giao dịch gần đây / xuất CSV / tổng hợp theo tháng:
+        // WHERE user_id = ? [AND transaction_date BETWEEN ? AND ?] ORDER BY transaction_date DESC, id DESC
+        // (rowid = id đã nằm sẵn cuối mỗi entry của index nên không cần thêm cột id)
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_date "
+                + "ON transactions(user_id, transaction_date)");
+
+        // getTotalAmount: SUM(amount) WHERE user_id = ? AND type = ? AND transaction_date BETWEEN ? AND ?
+        // Có amount ở cuối để truy vấn chỉ đọc index (covering), không phải đọc bảng
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_type_date "
+                + "ON transactions(user_id, type, transaction_date, amount)");
+
+        // Báo cáo theo danh mục viết cứng type = 'EXPENSE' / 'INCOME' và JOIN theo category_id:
+        // index một phần cho từng loại, mỗi danh mục chỉ cần seek (user_id, category_id, khoảng ngày)
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_expense "
+                + "ON transactions(user_id, category_id, transaction_date, amount) WHERE type = 'EXPENSE'");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_income "
+                + "ON transactions(user_id, category_id, transaction_date, amount) WHERE type = 'INCOME'");
+
+        // TransactionQuery lọc theo khoảng số tiền / sắp xếp theo số tiền:
+        // WHERE user_id = ? AND amount BETWEEN ? AND ? ORDER BY amount, id (không phải quét và sắp xếp mọi dòng)
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_transactions_user_amount "
+                + "ON transactions(user_id, amount)");
+
+        // RecurringService: WHERE user_id = ?
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_recurring_tasks_user ON recurring_tasks(user_id)");
+
+        // Cập nhật thống kê cho query planner (chỉ chạy ANALYZE khi cần)
+        stmt.execute("PRAGMA optimize");
+    }
+
+    /**
+     * Thêm cột vào bảng nếu cột chưa tồn tại (dùng để nâng cấp DB đã tạo từ phiên bản cũ)
+     */
+    private static boolean ensureColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return false;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+        return true;
+    }
+
+    /**
+     * DB cũ đếm kỳ định kỳ theo tháng: đổi khóa kỳ "yyyy-MM" trong recurring_executions và last_executed_month
+     * ("MM/yyyy") thành ngày chạy của tháng đó (day_of_month, tháng ngắn hơn thì ngày cuối tháng)
+     */
+    private static void migrateRecurringPeriods(Connection conn) throws SQLException {
+        // Ngày chạy trong tháng có ngày đầu tháng m (biểu thức SQL), theo day_of_month của task t
+        String runDate = "date(%1$s, '+' || (max(1, min(t.day_of_month, "
+                + "CAST(strftime('%%d', %1$s, '+1 month', '-1 day') AS INTEGER))) - 1) || ' days')";
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE recurring_executions SET period = (SELECT "
+                    + String.format(runDate, "recurring_executions.period || '-01'")
+                    + " FROM recurring_tasks t WHERE t.id = recurring_executions.task_id) "
+                    + "WHERE length(period) = 7 AND task_id IN (SELECT id FROM recurring_tasks)");
+            stmt.executeUpdate("UPDATE recurring_tasks SET last_run_date = (SELECT "
+                    + String.format(runDate, "substr(t.last_executed_month, 4, 4) || '-' || "
+                    + "substr(t.last_executed_month, 1, 2) || '-01'")
+                    + " FROM recurring_tasks t WHERE t.id = recurring_tasks.id) "
+                    + "WHERE last_executed_month LIKE '__/____'");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     private static void seedCategories(Statement stmt) throws SQLException {
         // Kiểm tra xem đã có category nào chưa
         var rs = stmt.executeQuery("SELECT COUNT(*) FROM categories");
@@ -0,0 +1,72 @@
+package main.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Cấu hình cơ sở dữ liệu: đọc từ file properties, system property (-D...) sẽ ghi đè giá trị trong file.
+ * File mặc định là src/database/database.properties, có thể đổi bằng -Dpf.db.config=...
+ */
+public class DatabaseConfig {
+    private static final String DEFAULT_CONFIG_FILE = "src/database/database.properties";
+
+    private final Properties fileProperties = new Properties();
+
+    private DatabaseConfig() {
+    }
+
+    public static DatabaseConfig load() {
+        DatabaseConfig config = new DatabaseConfig();
+        Path path = Paths.get(System.getProperty("pf.db.config", DEFAULT_CONFIG_FILE));
+        if (Files.isRegularFile(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                config.fileProperties.load(in);
+            } catch (IOException e) {
+                System.err.println("Không đọc được file cấu hình " + path + ": " + e.getMessage());
+            }
+        }
+        return config;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = fileProperties.getProperty(key);
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("Giá trị không hợp lệ cho " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("Giá trị không hợp lệ cho " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public DatabaseProfile getProfile() {
+        String name = getString("pf.db.profile", "balanced");
+        try {
+            return DatabaseProfile.fromName(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ", dùng profile balanced");
+            return DatabaseProfile.BALANCED;
+        }
+    }
+}
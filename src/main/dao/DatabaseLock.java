@@ -0,0 +1,47 @@
+package main.dao;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Khóa file bảo đảm mỗi file DB chỉ được một tiến trình dùng (giao diện, --scheduler hoặc --rebuild-rollups).
+ * RangeSumIndex, LedgerCache, ReportResultCache chỉ được cập nhật theo các lần ghi trong cùng tiến trình,
+ * nên hai tiến trình cùng ghi một file DB sẽ làm số liệu trong cache sai tới khi đăng xuất.
+ * Không dùng tới lớp Database để khóa được lấy trước khi DB được mở và khởi tạo.
+ */
+public final class DatabaseLock {
+    private static final Path LOCK_FILE = Paths.get(Database.FILE + ".lock");
+
+    private static FileChannel channel;
+    private static FileLock lock;
+
+    private DatabaseLock() {
+    }
+
+    /**
+     * Giành khóa cho tiến trình này, giữ tới khi thoát; false nếu một tiến trình khác đang giữ
+     */
+    public static synchronized boolean acquire() {
+        if (lock != null) {
+            return true;
+        }
+        try {
+            FileChannel opened = FileChannel.open(LOCK_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock acquired = opened.tryLock();
+            if (acquired == null) {
+                opened.close();
+                return false;
+            }
+            channel = opened;
+            lock = acquired;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Không tạo được khóa " + LOCK_FILE + ": " + e.getMessage());
+            return false;
+        }
+    }
+}
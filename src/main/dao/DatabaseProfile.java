@@ -0,0 +1,85 @@
+package main.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Các cấu hình độ bền/hiệu năng của SQLite (PRAGMA) áp dụng cho mỗi kết nối
+ */
+public enum DatabaseProfile {
+    // Giống mặc định của SQLite: rollback journal, fsync đầy đủ
+    SAFE("DELETE", "FULL", -2_000, 0L, "DEFAULT"),
+
+    // WAL: đọc không bị chặn bởi ghi, fsync khi checkpoint, cache 16MB
+    BALANCED("WAL", "NORMAL", -16_000, 0L, "MEMORY"),
+
+    // Tối ưu cho màn hình báo cáo: cache 64MB và mmap 256MB
+    FAST_READ("WAL", "NORMAL", -64_000, 256L * 1024 * 1024, "MEMORY");
+
+    private static final int BUSY_TIMEOUT_MS = 5_000;
+
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize; // Số âm = KiB
+    private final long mmapSize;
+    private final String tempStore;
+
+    DatabaseProfile(String journalMode, String synchronous, int cacheSize, long mmapSize, String tempStore) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+    }
+
+    /**
+     * Tìm profile theo tên ("safe", "balanced", "fast-read"), không phân biệt hoa thường
+     */
+    public static DatabaseProfile fromName(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        try {
+            return valueOf(normalized);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Không có profile cơ sở dữ liệu: " + name);
+        }
+    }
+
+    /**
+     * journal_mode được lưu trong file DB nên chỉ cần đặt một lần khi khởi tạo
+     */
+    public void applyJournalMode(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = " + journalMode)) {
+            if (rs.next() && !journalMode.equalsIgnoreCase(rs.getString(1))) {
+                System.err.println("Không đặt được journal_mode = " + journalMode + ", hiện tại: " + rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Các PRAGMA chỉ có hiệu lực trên từng kết nối, áp dụng mỗi khi mở kết nối mới
+     */
+    public void applyConnectionPragmas(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    public String getJournalMode() {
+        return journalMode;
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-')
+                + "[journal_mode=" + journalMode + ", synchronous=" + synchronous
+                + ", cache_size=" + cacheSize + ", mmap_size=" + mmapSize + ", temp_store=" + tempStore + "]";
+    }
+}
@@ -0,0 +1,232 @@
+package main.dao;
+
+import main.model.Transaction;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bảng tổng hợp monthly_rollups: tổng tiền và số giao dịch theo (user_id, year_month, category_id, type).
+ * Mọi thao tác ghi vào transactions phải gọi apply(...) trên cùng kết nối, trong cùng transaction,
+ * để bảng tổng hợp luôn khớp với dữ liệu gốc. Báo cáo theo tháng đọc từ bảng này thay vì quét transactions.
+ */
+public final class MonthlyRollups {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO monthly_rollups (user_id, year_month, category_id, type, total, tx_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(user_id, year_month, category_id, type) DO UPDATE SET " +
+            "total = total + excluded.total, tx_count = tx_count + excluded.tx_count";
+
+    private static final String DELETE_EMPTY_SQL =
+            "DELETE FROM monthly_rollups " +
+            "WHERE user_id = ? AND year_month = ? AND category_id = ? AND type = ? AND tx_count <= 0";
+
+    private MonthlyRollups() {
+    }
+
+    /**
+     * Tạo bảng nếu chưa có. Bảng vừa được tạo trên DB đã có giao dịch sẽ được tính lại toàn bộ.
+     */
+    static void initialize(Connection conn) throws SQLException {
+        boolean existed = tableExists(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS monthly_rollups ("
+                    + "user_id INTEGER NOT NULL, "
+                    + "year_month TEXT NOT NULL, " // dạng "yyyy-MM"
+                    + "category_id INTEGER NOT NULL, "
+                    + "type TEXT NOT NULL, "
+                    + "total DECIMAL(15, 2) NOT NULL DEFAULT 0, "
+                    + "tx_count INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (user_id, year_month, category_id, type)"
+                    + ") WITHOUT ROWID");
+        }
+        if (!existed) {
+            boolean hasTransactions;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM transactions)")) {
+                hasTransactions = rs.next() && rs.getInt(1) == 1;
+            }
+            if (hasTransactions) {
+                rebuild(conn);
+            }
+        }
+    }
+
+    private static boolean tableExists(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'monthly_rollups'")) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Khóa tháng dùng trong bảng tổng hợp ("yyyy-MM")
+     */
+    public static String yearMonth(LocalDate date) {
+        return YearMonth.from(date).toString();
+    }
+
+    /**
+     * Khoảng [startDate, endDate] có trùng khít với các tháng trọn vẹn không (khi đó đọc được từ bảng tổng hợp)
+     */
+    public static boolean coversWholeMonths(LocalDate startDate, LocalDate endDate) {
+        return startDate.getDayOfMonth() == 1
+                && endDate.getDayOfMonth() == endDate.lengthOfMonth()
+                && !startDate.isAfter(endDate);
+    }
+
+    /**
+     * Cộng (sign = 1) hoặc trừ (sign = -1) một giao dịch vào bảng tổng hợp
+     */
+    public static void apply(Connection conn, Transaction t, int sign) throws SQLException {
+        Delta delta = new Delta();
+        delta.add(t, sign);
+        delta.flush(conn);
+    }
+
+    /**
+     * Gom thay đổi của nhiều giao dịch theo khóa rồi ghi một lần (dùng khi thêm hàng loạt)
+     */
+    public static void applyAll(Connection conn, List<Transaction> transactions) throws SQLException {
+        Delta delta = new Delta();
+        for (Transaction t : transactions) {
+            delta.add(t, 1);
+        }
+        delta.flush(conn);
+    }
+
+    /**
+     * Tính lại toàn bộ bảng tổng hợp từ transactions, trong một transaction
+     */
+    public static void rebuild() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                rebuild(conn);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void rebuild(Connection conn) throws SQLException {
+        // Ngày được lưu dạng epoch millis nên tháng được tính bên Java thay vì strftime
+        Delta delta = new Delta();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM monthly_rollups");
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT user_id, category_id, amount, transaction_date, type FROM transactions")) {
+                while (rs.next()) {
+                    delta.add(rs.getInt("user_id"), yearMonth(rs.getDate("transaction_date").toLocalDate()),
+                            rs.getInt("category_id"), rs.getString("type"), rs.getBigDecimal("amount"), 1);
+                }
+            }
+        }
+        delta.flush(conn);
+    }
+
+    /**
+     * Các thay đổi chưa ghi, gom theo khóa của bảng tổng hợp
+     */
+    private static class Delta {
+        private final Map<Key, Entry> entries = new HashMap<>();
+
+        void add(Transaction t, int sign) {
+            add(t.getUserId(), yearMonth(t.getTransactionDate()), t.getCategoryId(), t.getType(), t.getAmount(), sign);
+        }
+
+        void add(int userId, String yearMonth, int categoryId, String type, BigDecimal amount, int sign) {
+            Entry entry = entries.computeIfAbsent(new Key(userId, yearMonth, categoryId, type), k -> new Entry());
+            BigDecimal value = amount != null ? amount : BigDecimal.ZERO;
+            entry.total = entry.total.add(sign < 0 ? value.negate() : value);
+            entry.count += sign < 0 ? -1 : 1;
+        }
+
+        void flush(Connection conn) throws SQLException {
+            if (entries.isEmpty()) {
+                return;
+            }
+            boolean hasNegative = false;
+            try (PreparedStatement upsert = conn.prepareStatement(UPSERT_SQL)) {
+                for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                    Key key = e.getKey();
+                    bindKey(upsert, key);
+                    upsert.setBigDecimal(5, e.getValue().total);
+                    upsert.setInt(6, e.getValue().count);
+                    upsert.addBatch();
+                    hasNegative |= e.getValue().count < 0;
+                }
+                upsert.executeBatch();
+            }
+            if (hasNegative) {
+                // Xóa các dòng không còn giao dịch nào để bảng không phình ra sau khi xóa/sửa
+                try (PreparedStatement delete = conn.prepareStatement(DELETE_EMPTY_SQL)) {
+                    for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                        if (e.getValue().count < 0) {
+                            bindKey(delete, e.getKey());
+                            delete.addBatch();
+                        }
+                    }
+                    delete.executeBatch();
+                }
+            }
+            entries.clear();
+        }
+
+        private static void bindKey(PreparedStatement pstmt, Key key) throws SQLException {
+            pstmt.setInt(1, key.userId);
+            pstmt.setString(2, key.yearMonth);
+            pstmt.setInt(3, key.categoryId);
+            pstmt.setString(4, key.type);
+        }
+    }
+
+    private static class Entry {
+        private BigDecimal total = BigDecimal.ZERO;
+        private int count;
+    }
+
+    private static class Key {
+        private final int userId;
+        private final String yearMonth;
+        private final int categoryId;
+        private final String type;
+
+        Key(int userId, String yearMonth, int categoryId, String type) {
+            this.userId = userId;
+            this.yearMonth = yearMonth;
+            this.categoryId = categoryId;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userId == other.userId && categoryId == other.categoryId
+                    && yearMonth.equals(other.yearMonth) && Objects.equals(type, other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, yearMonth, categoryId, type);
+        }
+    }
+}
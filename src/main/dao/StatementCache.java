@@ -0,0 +1,215 @@
+package main.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache PreparedStatement theo câu SQL, gắn với một kết nối vật lý trong pool (LRU).
+ * Statement đang được dùng sẽ bị lấy ra khỏi cache, nên cùng một câu SQL lồng nhau
+ * trên một kết nối sẽ nhận được statement riêng.
+ */
+public class StatementCache {
+    // Số liệu dùng chung cho mọi kết nối
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final int capacity;
+    private final LinkedHashMap<String, PreparedStatement> idle;
+
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    EVICTIONS.increment();
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Trả về statement cho câu SQL: lấy từ cache nếu có, nếu không thì prepare mới.
+     * Gọi close() trên statement trả về sẽ đưa statement vật lý trở lại cache.
+     */
+    PreparedStatement prepare(Connection physical, Connection logical, String sql) throws SQLException {
+        PreparedStatement statement = take(sql);
+        if (statement == null) {
+            statement = physical.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new CachedStatement(sql, statement, logical));
+    }
+
+    private synchronized PreparedStatement take(String sql) {
+        PreparedStatement statement = idle.remove(sql);
+        if (statement != null) {
+            HITS.increment();
+        } else {
+            MISSES.increment();
+        }
+        return statement;
+    }
+
+    private synchronized void give(String sql, PreparedStatement statement) {
+        if (idle.containsKey(sql)) {
+            // Đã có bản khác của cùng câu SQL trong cache
+            closeQuietly(statement);
+        } else {
+            idle.put(sql, statement);
+        }
+    }
+
+    /**
+     * Đóng toàn bộ statement đang nằm trong cache
+     */
+    synchronized void clear() {
+        Iterator<PreparedStatement> it = idle.values().iterator();
+        while (it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static Stats getStats() {
+        return new Stats(HITS.sum(), MISSES.sum(), EVICTIONS.sum());
+    }
+
+    /**
+     * Statement logic: close() không đóng statement vật lý mà trả nó về cache
+     */
+    private class CachedStatement implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement physical;
+        private final Connection logical;
+        private final List<ResultSet> openResults = new ArrayList<>(1);
+        private boolean closed = false;
+
+        CachedStatement(String sql, PreparedStatement physical, Connection logical) {
+            this.sql = sql;
+            this.physical = physical;
+            this.logical = logical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "getConnection":
+                    return logical;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + sql + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement đã bị đóng");
+            }
+            Object result;
+            try {
+                result = method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // Ghi nhớ ResultSet để đóng khi statement được trả về cache (giống hành vi close() thật)
+            if (result instanceof ResultSet) {
+                openResults.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        private void recycle() throws SQLException {
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                openResults.clear();
+                physical.clearParameters();
+                physical.clearBatch();
+            } catch (SQLException e) {
+                physical.close();
+                throw e;
+            }
+            if (physical.isClosed()) {
+                return;
+            }
+            give(sql, physical);
+        }
+    }
+
+    /**
+     * Số liệu của cache statement (cộng dồn cho mọi kết nối)
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("StatementCache[hits=%d, misses=%d, evictions=%d, hitRate=%.1f%%]",
+                    hits, misses, evictions, getHitRate() * 100);
+        }
+    }
+}
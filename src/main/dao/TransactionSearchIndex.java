@@ -0,0 +1,117 @@
+package main.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Chỉ mục tìm kiếm toàn văn transactions_fts (SQLite FTS5) trên transactions.description.
+ * Bảng FTS không lưu lại nội dung (content=''), chỉ có chỉ mục từ và rowid = transactions.id; cột user_key
+ * ("u" + user_id) để lọc theo người dùng ngay trong chỉ mục. Các trigger trên transactions giữ chỉ mục
+ * khớp với dữ liệu gốc trong cùng transaction ghi, nên TransactionController không phải làm gì thêm.
+ */
+public final class TransactionSearchIndex {
+    // unicode61 bỏ dấu nhưng không coi "đ" là "d" có dấu: đổi trước khi đánh chỉ mục và khi tìm
+    private static final String INDEXED_DESCRIPTION = "replace(replace(%s.description, 'Đ', 'D'), 'đ', 'd')";
+
+    private TransactionSearchIndex() {
+    }
+
+    /**
+     * Tạo bảng FTS và trigger nếu chưa có. Bảng vừa được tạo trên DB đã có giao dịch sẽ được đánh chỉ mục lại.
+     */
+    static void initialize(Connection conn) throws SQLException {
+        boolean existed = tableExists(conn);
+        try (Statement stmt = conn.createStatement()) {
+            // unicode61 + remove_diacritics: "an" khớp "Ăn"; prefix '1 2 3' để tìm theo tiền tố ngắn không phải quét nhiều từ
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS transactions_fts USING fts5("
+                    + "description, user_key, "
+                    + "content = '', "
+                    + "tokenize = 'unicode61 remove_diacritics 2', "
+                    + "prefix = '1 2 3')");
+
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS transactions_fts_insert AFTER INSERT ON transactions BEGIN "
+                    + "INSERT INTO transactions_fts (rowid, description, user_key) "
+                    + "VALUES (NEW.id, " + indexed("NEW") + ", 'u' || NEW.user_id); "
+                    + "END");
+            // Bảng không lưu nội dung nên xóa bằng lệnh 'delete' kèm đúng giá trị cũ đã đánh chỉ mục
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS transactions_fts_delete AFTER DELETE ON transactions BEGIN "
+                    + "INSERT INTO transactions_fts (transactions_fts, rowid, description, user_key) "
+                    + "VALUES ('delete', OLD.id, " + indexed("OLD") + ", 'u' || OLD.user_id); "
+                    + "END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS transactions_fts_update "
+                    + "AFTER UPDATE OF description, user_id ON transactions BEGIN "
+                    + "INSERT INTO transactions_fts (transactions_fts, rowid, description, user_key) "
+                    + "VALUES ('delete', OLD.id, " + indexed("OLD") + ", 'u' || OLD.user_id); "
+                    + "INSERT INTO transactions_fts (rowid, description, user_key) "
+                    + "VALUES (NEW.id, " + indexed("NEW") + ", 'u' || NEW.user_id); "
+                    + "END");
+        }
+        if (!existed) {
+            rebuild(conn);
+        }
+    }
+
+    private static String indexed(String row) {
+        return String.format(INDEXED_DESCRIPTION, row);
+    }
+
+    private static boolean tableExists(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'transactions_fts'")) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Đánh chỉ mục lại toàn bộ từ transactions, trong một transaction
+     */
+    public static void rebuild() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            rebuild(conn);
+        }
+    }
+
+    private static void rebuild(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO transactions_fts (transactions_fts) VALUES ('delete-all')");
+            stmt.execute("INSERT INTO transactions_fts (rowid, description, user_key) "
+                    + "SELECT id, " + indexed("transactions") + ", 'u' || user_id FROM transactions");
+            // Gộp các segment vừa ghi để truy vấn chỉ phải đọc ít b-tree
+            stmt.execute("INSERT INTO transactions_fts (transactions_fts) VALUES ('optimize')");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Chuyển chuỗi người dùng gõ thành biểu thức MATCH của FTS5: mọi từ đều phải có và khớp theo tiền tố,
+     * mỗi từ được đặt trong ngoặc kép nên ký tự đặc biệt của FTS5 không gây lỗi cú pháp.
+     * Trả về null nếu chuỗi không có từ nào.
+     */
+    public static String toMatchQuery(int userId, String text) {
+        StringBuilder query = new StringBuilder();
+        String[] words = text.replace('Đ', 'D').replace('đ', 'd').trim().split("\\s+");
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            query.append(query.length() > 0 ? " AND " : "")
+                    .append('"').append(word.replace("\"", "\"\"")).append("\"*");
+        }
+        if (query.length() == 0) {
+            return null;
+        }
+        return "user_key : u" + userId + " AND description : (" + query + ")";
+    }
+}
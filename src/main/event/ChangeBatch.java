@@ -0,0 +1,94 @@
+package main.event;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Các sự kiện được gom lại trong một lần giao của EventBus, theo thứ tự phát
+ */
+public final class ChangeBatch {
+    private final List<ChangeEvent> events;
+
+    ChangeBatch(List<ChangeEvent> events) {
+        this.events = Collections.unmodifiableList(events);
+    }
+
+    public List<ChangeEvent> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * Các sự kiện thuộc loại type, theo thứ tự phát
+     */
+    public <T extends ChangeEvent> List<T> eventsOf(Class<T> type) {
+        List<T> list = new ArrayList<>();
+        for (ChangeEvent event : events) {
+            if (type.isInstance(event)) {
+                list.add(type.cast(event));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * true nếu có sự kiện liên quan tới người dùng
+     */
+    public boolean affects(int userId) {
+        for (ChangeEvent event : events) {
+            if (event.affects(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * true nếu giao dịch của người dùng thay đổi (thêm, sửa, xóa, nhập hoặc sinh tự động);
+     * thêm danh mục hay sửa khoản định kỳ không làm thay đổi giao dịch nào
+     */
+    public boolean affectsTransactions(int userId) {
+        for (ChangeEvent event : events) {
+            if (!(event instanceof ChangeEvent.CategoryAdded) && !(event instanceof ChangeEvent.RecurringTaskChanged)
+                    && event.affects(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * true nếu có giao dịch của người dùng thay đổi trong khoảng [startDate, endDate]
+     */
+    public boolean affects(int userId, LocalDate startDate, LocalDate endDate) {
+        for (ChangeEvent event : events) {
+            if (!event.affects(userId) || event.getDate() == null) {
+                continue;
+            }
+            LocalDate first = event.getDate();
+            LocalDate last = event instanceof ChangeEvent.TransactionsImported
+                    ? ((ChangeEvent.TransactionsImported) event).getEndDate() : first;
+            if (!last.isBefore(startDate) && !first.isAfter(endDate)) {
+                return true;
+            }
+            if (event instanceof ChangeEvent.TransactionUpdated) {
+                // Giao dịch được chuyển ra khỏi khoảng cũng làm thay đổi khoảng đó
+                LocalDate oldDate = ((ChangeEvent.TransactionUpdated) event).getOldTransaction().getTransactionDate();
+                if (!oldDate.isBefore(startDate) && !oldDate.isAfter(endDate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeBatch" + events;
+    }
+}
@@ -0,0 +1,199 @@
+package main.event;
+
+import main.model.Transaction;
+
+import java.time.LocalDate;
+
+/**
+ * Một thay đổi dữ liệu đã được commit, phát qua {@link EventBus}.
+ * Mỗi sự kiện mang người dùng, ngày và danh mục bị ảnh hưởng để bên nhận chỉ cập nhật phần cần thiết.
+ */
+public abstract class ChangeEvent {
+    // userId của thay đổi dùng chung cho mọi người dùng (vd. danh mục có user_id NULL)
+    public static final int ALL_USERS = 0;
+
+    private final int userId;
+    private final LocalDate date;
+    private final int categoryId;
+
+    protected ChangeEvent(int userId, LocalDate date, int categoryId) {
+        this.userId = userId;
+        this.date = date;
+        this.categoryId = categoryId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    // Ngày giao dịch bị ảnh hưởng, null nếu sự kiện không gắn với ngày nào
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    /**
+     * true nếu sự kiện liên quan tới dữ liệu của người dùng này
+     */
+    public boolean affects(int userId) {
+        return this.userId == userId || this.userId == ALL_USERS;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[user=" + userId + ", date=" + date + ", category=" + categoryId + "]";
+    }
+
+    /**
+     * Một giao dịch đã được thêm (đã có id)
+     */
+    public static final class TransactionAdded extends ChangeEvent {
+        private final Transaction transaction;
+
+        public TransactionAdded(Transaction transaction) {
+            super(transaction.getUserId(), transaction.getTransactionDate(), transaction.getCategoryId());
+            this.transaction = transaction;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    /**
+     * Một giao dịch đã được sửa; ngày và danh mục của sự kiện là của bản mới
+     */
+    public static final class TransactionUpdated extends ChangeEvent {
+        private final Transaction oldTransaction;
+        private final Transaction transaction;
+
+        public TransactionUpdated(Transaction oldTransaction, Transaction transaction) {
+            super(transaction.getUserId(), transaction.getTransactionDate(), transaction.getCategoryId());
+            this.oldTransaction = oldTransaction;
+            this.transaction = transaction;
+        }
+
+        // Bản trước khi sửa (chỉ có các cột số, ngày, loại và danh mục)
+        public Transaction getOldTransaction() {
+            return oldTransaction;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    /**
+     * Một giao dịch đã bị xóa
+     */
+    public static final class TransactionDeleted extends ChangeEvent {
+        private final Transaction transaction;
+
+        public TransactionDeleted(Transaction transaction) {
+            super(transaction.getUserId(), transaction.getTransactionDate(), transaction.getCategoryId());
+            this.transaction = transaction;
+        }
+
+        public int getTransactionId() {
+            return transaction.getId();
+        }
+
+        // Bản đã xóa (chỉ có các cột số, ngày, loại và danh mục)
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    /**
+     * Nhiều giao dịch được thêm một lần (nhập CSV, thêm hàng loạt), thay cho từng TransactionAdded.
+     * Chỉ mang khoảng ngày và số dòng; bên nhận nên đọc lại phần dữ liệu trong khoảng đó.
+     */
+    public static final class TransactionsImported extends ChangeEvent {
+        private final LocalDate endDate;
+        private final int count;
+
+        public TransactionsImported(int userId, LocalDate startDate, LocalDate endDate, int count) {
+            super(userId, startDate, 0);
+            this.endDate = endDate;
+            this.count = count;
+        }
+
+        // Ngày sớm nhất là getDate()
+        public LocalDate getEndDate() {
+            return endDate;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Một danh mục mới; userId là ALL_USERS nếu danh mục dùng chung
+     */
+    public static final class CategoryAdded extends ChangeEvent {
+        private final String name;
+        private final String type;
+
+        public CategoryAdded(int userId, int categoryId, String name, String type) {
+            super(userId, null, categoryId);
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Một giao dịch định kỳ đã được tự động sinh
+     */
+    public static final class RecurringExecuted extends ChangeEvent {
+        private final int taskId;
+        private final Transaction transaction;
+
+        public RecurringExecuted(int taskId, Transaction transaction) {
+            super(transaction.getUserId(), transaction.getTransactionDate(), transaction.getCategoryId());
+            this.taskId = taskId;
+            this.transaction = transaction;
+        }
+
+        public int getTaskId() {
+            return taskId;
+        }
+
+        public Transaction getTransaction() {
+            return transaction;
+        }
+    }
+
+    /**
+     * Một khoản định kỳ (recurring_tasks) đã được thêm, sửa hoặc xóa
+     */
+    public static final class RecurringTaskChanged extends ChangeEvent {
+        private final int taskId;
+        private final boolean deleted;
+
+        public RecurringTaskChanged(int userId, int taskId, boolean deleted) {
+            super(userId, null, 0);
+            this.taskId = taskId;
+            this.deleted = deleted;
+        }
+
+        public int getTaskId() {
+            return taskId;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package main.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bus sự kiện trong tiến trình cho các thay đổi dữ liệu đã commit.
+ * publish không chặn: sự kiện được đưa vào hàng đợi và giao trên luồng "pf-events" sau COALESCE_MS,
+ * mọi sự kiện phát trong khoảng đó được gom thành một ChangeBatch (một lần nhập nhiều dòng chỉ gây một lần làm mới).
+ * Mỗi người nghe nhận các batch theo đúng thứ tự phát, trên executor đã chọn khi đăng ký.
+ */
+public final class EventBus {
+    // Thời gian chờ gom sự kiện trước khi giao (-Dpf.events.coalesceMs=...)
+    private static final long COALESCE_MS = Long.getLong("pf.events.coalesceMs", 50);
+
+    private static final List<Subscription> SUBSCRIPTIONS = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService DISPATCHER = createDispatcher();
+
+    private static final LongAdder PUBLISHED = new LongAdder();
+    private static final LongAdder BATCHES = new LongAdder();
+
+    private static List<ChangeEvent> pending = new ArrayList<>();
+    private static boolean scheduled = false;
+
+    private EventBus() {
+    }
+
+    private static ScheduledExecutorService createDispatcher() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "pf-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Nhận các batch sự kiện đã gom
+     */
+    public interface Listener {
+        void onChange(ChangeBatch batch);
+    }
+
+    /**
+     * Đăng ký nhận sự kiện trên luồng của bus; listener phải xử lý nhanh
+     */
+    public static Subscription subscribe(Listener listener) {
+        return subscribe(listener, Runnable::run);
+    }
+
+    /**
+     * Đăng ký nhận sự kiện trên executor (vd. EDT của Swing); gọi Subscription.close() để hủy
+     */
+    public static Subscription subscribe(Listener listener, Executor executor) {
+        Subscription subscription = new Subscription(listener, executor);
+        SUBSCRIPTIONS.add(subscription);
+        return subscription;
+    }
+
+    public static void publish(ChangeEvent event) {
+        synchronized (EventBus.class) {
+            pending.add(event);
+            scheduleDispatch();
+        }
+        PUBLISHED.increment();
+    }
+
+    public static void publishAll(List<? extends ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        synchronized (EventBus.class) {
+            pending.addAll(events);
+            scheduleDispatch();
+        }
+        PUBLISHED.add(events.size());
+    }
+
+    // Gọi khi đang giữ khóa EventBus.class
+    private static void scheduleDispatch() {
+        if (!scheduled) {
+            scheduled = true;
+            DISPATCHER.schedule(EventBus::dispatch, COALESCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void dispatch() {
+        List<ChangeEvent> events;
+        synchronized (EventBus.class) {
+            events = pending;
+            pending = new ArrayList<>();
+            scheduled = false;
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+
+        ChangeBatch batch = new ChangeBatch(events);
+        BATCHES.increment();
+        for (Subscription subscription : SUBSCRIPTIONS) {
+            subscription.deliver(batch);
+        }
+    }
+
+    /**
+     * Số sự kiện đã phát và số batch đã giao (để theo dõi mức gom)
+     */
+    public static long getPublishedCount() {
+        return PUBLISHED.sum();
+    }
+
+    public static long getBatchCount() {
+        return BATCHES.sum();
+    }
+
+    /**
+     * Một người nghe đã đăng ký
+     */
+    public static final class Subscription implements AutoCloseable {
+        private final Listener listener;
+        private final Executor executor;
+        private volatile boolean closed = false;
+
+        private Subscription(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        private void deliver(ChangeBatch batch) {
+            executor.execute(() -> {
+                if (closed) {
+                    return;
+                }
+                try {
+                    listener.onChange(batch);
+                } catch (RuntimeException e) {
+                    // Lỗi của một người nghe không ảnh hưởng tới người nghe khác
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            SUBSCRIPTIONS.remove(this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package main.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Kết quả thêm giao dịch hàng loạt: ID sinh ra cho từng dòng và lỗi của các dòng thất bại
+ */
+public class BatchInsertResult {
+    public static final int FAILED_ID = -1;
+
+    private final int[] generatedIds;
+    private final Map<Integer, String> failures = new TreeMap<>(); // vị trí dòng -> thông báo lỗi
+
+    public BatchInsertResult(int size) {
+        this.generatedIds = new int[size];
+        Arrays.fill(generatedIds, FAILED_ID);
+    }
+
+    public void setGeneratedId(int index, int id) {
+        generatedIds[index] = id;
+        failures.remove(index);
+    }
+
+    public void fail(int index, String message) {
+        generatedIds[index] = FAILED_ID;
+        failures.put(index, message);
+    }
+
+    // Đánh dấu tất cả các dòng là thất bại (ví dụ khi transaction bị rollback)
+    public void failAll(String message) {
+        for (int i = 0; i < generatedIds.length; i++) {
+            fail(i, message);
+        }
+    }
+
+    /**
+     * ID sinh ra theo đúng thứ tự danh sách đầu vào, FAILED_ID nếu dòng đó lỗi
+     */
+    public int[] getGeneratedIds() {
+        return generatedIds.clone();
+    }
+
+    public int getGeneratedId(int index) {
+        return generatedIds[index];
+    }
+
+    public boolean isInserted(int index) {
+        return generatedIds[index] != FAILED_ID;
+    }
+
+    public Map<Integer, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    public int getInsertedCount() {
+        return generatedIds.length - failures.size();
+    }
+
+    public int getFailedCount() {
+        return failures.size();
+    }
+
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+}
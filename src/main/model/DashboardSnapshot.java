@@ -0,0 +1,97 @@
+package main.model;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ảnh chụp bất biến dữ liệu dashboard của một tháng: tổng thu chi, so sánh với tháng trước,
+ * các giao dịch lớn nhất và các giao dịch gần đây. Được đọc trong một lần (một kết nối, một snapshot DB).
+ */
+public final class DashboardSnapshot {
+    private final int userId;
+    private final YearMonth month;
+    private final Money income;
+    private final Money expense;
+    private final Money previousIncome;
+    private final Money previousExpense;
+    private final List<Transaction> topExpenses;
+    private final List<Transaction> topIncomes;
+    private final List<Transaction> recentTransactions;
+
+    public DashboardSnapshot(int userId, YearMonth month, Money income, Money expense,
+                             Money previousIncome, Money previousExpense,
+                             List<Transaction> topExpenses, List<Transaction> topIncomes,
+                             List<Transaction> recentTransactions) {
+        this.userId = userId;
+        this.month = month;
+        this.income = income;
+        this.expense = expense;
+        this.previousIncome = previousIncome;
+        this.previousExpense = previousExpense;
+        this.topExpenses = Collections.unmodifiableList(topExpenses);
+        this.topIncomes = Collections.unmodifiableList(topIncomes);
+        this.recentTransactions = Collections.unmodifiableList(recentTransactions);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public Money getIncome() {
+        return income;
+    }
+
+    public Money getExpense() {
+        return expense;
+    }
+
+    public Money getBalance() {
+        return income.minus(expense);
+    }
+
+    public Money getPreviousIncome() {
+        return previousIncome;
+    }
+
+    public Money getPreviousExpense() {
+        return previousExpense;
+    }
+
+    // Phần trăm thay đổi thu nhập so với tháng trước
+    public BigDecimal getIncomeChange() {
+        return percentageChange(income, previousIncome);
+    }
+
+    // Phần trăm thay đổi chi tiêu so với tháng trước
+    public BigDecimal getExpenseChange() {
+        return percentageChange(expense, previousExpense);
+    }
+
+    public List<Transaction> getTopExpenses() {
+        return topExpenses;
+    }
+
+    public List<Transaction> getTopIncomes() {
+        return topIncomes;
+    }
+
+    public List<Transaction> getRecentTransactions() {
+        return recentTransactions;
+    }
+
+    /**
+     * Tháng trước bằng 0 thì trả về 100% nếu tháng này có phát sinh, ngược lại 0%
+     */
+    public static BigDecimal percentageChange(Money current, Money previous) {
+        if (previous.isZero()) {
+            return current.isPositive() ? BigDecimal.valueOf(100) : BigDecimal.ZERO;
+        }
+        return Money.percent(current.getMinor() - previous.getMinor(), previous.getMinor(), 2);
+    }
+}
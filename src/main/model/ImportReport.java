@@ -0,0 +1,115 @@
+package main.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kết quả nhập file CSV: số dòng đã đọc/đã nhập, tốc độ và lỗi của từng dòng.
+ * Chỉ giữ tối đa maxErrors lỗi đầu tiên để bộ nhớ không tăng theo kích thước file.
+ */
+public class ImportReport {
+    private final int maxErrors;
+    private final List<LineError> errors = new ArrayList<>();
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsFailed;
+    private long droppedErrors;
+    private long elapsedMillis;
+    private boolean aborted;
+
+    public ImportReport(int maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    public synchronized void addRowsRead(long count) {
+        rowsRead += count;
+    }
+
+    public synchronized void addRowsImported(long count) {
+        rowsImported += count;
+    }
+
+    public synchronized void addError(long lineNumber, String message) {
+        rowsFailed++;
+        if (errors.size() < maxErrors) {
+            errors.add(new LineError(lineNumber, message));
+        } else {
+            droppedErrors++;
+        }
+    }
+
+    public synchronized void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public synchronized void setAborted(boolean aborted) {
+        this.aborted = aborted;
+    }
+
+    public synchronized long getRowsRead() {
+        return rowsRead;
+    }
+
+    public synchronized long getRowsImported() {
+        return rowsImported;
+    }
+
+    public synchronized long getRowsFailed() {
+        return rowsFailed;
+    }
+
+    // Số lỗi không được lưu lại chi tiết vì đã vượt quá maxErrors
+    public synchronized long getDroppedErrors() {
+        return droppedErrors;
+    }
+
+    public synchronized List<LineError> getErrors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public synchronized long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    public synchronized double getRowsPerSecond() {
+        return elapsedMillis > 0 ? rowsImported * 1000.0 / elapsedMillis : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Đã đọc %,d dòng, nhập %,d dòng, lỗi %,d dòng trong %,d ms (%,.0f dòng/giây)%s",
+                rowsRead, rowsImported, rowsFailed, elapsedMillis, getRowsPerSecond(),
+                aborted ? " - ĐÃ DỪNG" : "");
+    }
+
+    /**
+     * Lỗi của một dòng trong file (số dòng tính từ 1, kể cả dòng tiêu đề)
+     */
+    public static class LineError {
+        private final long lineNumber;
+        private final String message;
+
+        public LineError(long lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "Dòng " + lineNumber + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package main.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Số tiền lưu bằng long theo đơn vị nhỏ nhất (1/100), dùng cho các phép cộng dồn và chia trong báo cáo
+ * thay cho BigDecimal. Chỉ chuyển sang BigDecimal ở biên (JDBC, hiển thị).
+ * Quy tắc làm tròn: mọi phép chuyển đổi và chia đều làm tròn HALF_UP về 2 chữ số thập phân.
+ */
+public final class Money implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final RoundingMode ROUNDING = RoundingMode.HALF_UP;
+    public static final Money ZERO = new Money(0);
+
+    private static final long MINOR_PER_UNIT = 100;
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * Từ BigDecimal (làm tròn HALF_UP về 2 chữ số), null -> null
+     */
+    public static Money of(BigDecimal amount) {
+        return amount == null ? null : ofMinor(toMinor(amount));
+    }
+
+    /**
+     * BigDecimal -> đơn vị nhỏ nhất (làm tròn HALF_UP), null -> 0
+     */
+    public static long toMinor(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.setScale(SCALE, ROUNDING).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Đơn vị nhỏ nhất -> BigDecimal với 2 chữ số thập phân
+     */
+    public static BigDecimal toBigDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * Chia nguyên có làm tròn HALF_UP (làm tròn ra xa 0 khi đúng nửa)
+     */
+    public static long divideRounded(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder != 0 && Math.abs(remainder) >= Math.abs(divisor) - Math.abs(remainder)) {
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    /**
+     * Tỷ lệ phần trăm part / whole * 100 với scale chữ số thập phân, làm tròn HALF_UP (whole khác 0)
+     */
+    public static BigDecimal percent(long part, long whole, int scale) {
+        long factor = 100;
+        for (int i = 0; i < scale; i++) {
+            factor *= 10;
+        }
+        try {
+            return BigDecimal.valueOf(divideRounded(Math.multiplyExact(part, factor), whole), scale);
+        } catch (ArithmeticException e) {
+            // Số quá lớn cho long: tính bằng BigDecimal
+            return BigDecimal.valueOf(part).multiply(BigDecimal.valueOf(100))
+                    .divide(BigDecimal.valueOf(whole), scale, ROUNDING);
+        }
+    }
+
+    public long getMinor() {
+        return minor;
+    }
+
+    // Phần nguyên (bỏ phần lẻ, giống BigDecimal.longValue())
+    public long getUnits() {
+        return minor / MINOR_PER_UNIT;
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public Money negate() {
+        return ofMinor(-minor);
+    }
+
+    public Money times(long factor) {
+        return ofMinor(Math.multiplyExact(minor, factor));
+    }
+
+    /**
+     * Chia cho một số nguyên (ví dụ tính trung bình), làm tròn HALF_UP
+     */
+    public Money divide(long divisor) {
+        return ofMinor(divideRounded(minor, divisor));
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return toBigDecimal(minor);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,541 @@
+package main.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Quy tắc lặp của một khoản định kỳ. Dạng lưu trong cột recurring_tasks.recurrence (toString / parse):
+ * <pre>
+ *   DAILY, DAILY/3              mỗi ngày / mỗi 3 ngày
+ *   WEEKLY MON,FRI, WEEKLY/2 MON  các thứ đã chọn, mỗi tuần / mỗi 2 tuần
+ *   MONTHLY 31                  ngày 31 hằng tháng (tháng ngắn hơn: ngày cuối tháng)
+ *   NTH_WEEKDAY 2 TUE           thứ Ba thứ hai của tháng (-1 FRI: thứ Sáu cuối cùng)
+ *   LAST_BUSINESS_DAY           ngày cuối tháng từ thứ Hai tới thứ Sáu
+ *   CRON 1,15 * MON-FRI         3 trường ngày / tháng / thứ của cron (ghi đủ 5 trường thì phút, giờ bị bỏ qua)
+ * </pre>
+ * Chu kỳ của DAILY/n, WEEKLY/n được đếm từ ngày bắt đầu (start) của task; không có lần nào trước start.
+ * Lần kế tiếp / liền trước được tính trực tiếp, không duyệt từng ngày: O(1) với mọi loại
+ * (quy tắc theo tháng xét tối đa MAX_SEARCH_MONTHS tháng, mỗi tháng một phép tính bitmask).
+ */
+public abstract class RecurrenceRule {
+    // Đủ để gặp ngày 29/02 kế tiếp kể cả qua năm thế kỷ không nhuận (2096 -> 2104)
+    private static final int MAX_SEARCH_MONTHS = 12 * 9;
+
+    private static final String[] DAY_NAMES = {"MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN"};
+    private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP",
+            "OCT", "NOV", "DEC"};
+    // Thứ trong cron đánh số từ 0 = Chủ nhật (7 cũng là Chủ nhật)
+    private static final String[] CRON_DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN"};
+
+    RecurrenceRule() {
+    }
+
+    public static RecurrenceRule daily(int interval) {
+        return new Daily(interval);
+    }
+
+    public static RecurrenceRule weekly(int interval, DayOfWeek... days) {
+        int mask = 0;
+        for (DayOfWeek day : days) {
+            mask |= 1 << day.ordinal();
+        }
+        return new Weekly(interval, mask);
+    }
+
+    public static RecurrenceRule monthly(int dayOfMonth) {
+        return new Monthly(dayOfMonth);
+    }
+
+    /**
+     * Thứ day thứ n trong tháng (n = 1..5, -1 = cuối cùng); tháng không có lần thứ 5 thì bỏ qua tháng đó
+     */
+    public static RecurrenceRule nthWeekday(int n, DayOfWeek day) {
+        return new NthWeekday(n, day);
+    }
+
+    public static RecurrenceRule lastBusinessDay() {
+        return new LastBusinessDay();
+    }
+
+    /**
+     * Biểu thức cron "ngày tháng thứ" (hoặc đủ 5 trường "phút giờ ngày tháng thứ")
+     */
+    public static RecurrenceRule cron(String expression) {
+        return Cron.of(expression);
+    }
+
+    /**
+     * Đọc quy tắc từ dạng lưu trong DB (xem toString)
+     */
+    public static RecurrenceRule parse(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Quy tắc lặp bị trống");
+        }
+        String[] parts = text.trim().toUpperCase(Locale.ROOT).split("\\s+", 2);
+        String[] head = parts[0].split("/", 2);
+        String args = parts.length > 1 ? parts[1] : "";
+        int interval = head.length > 1 ? parseInt(head[1], text) : 1;
+        String[] fields = args.isEmpty() ? new String[0] : args.split("\\s+");
+        switch (head[0]) {
+            case "DAILY":
+                requireFields(fields, 0, text);
+                return new Daily(interval);
+            case "WEEKLY":
+                requireFields(fields, 1, text);
+                int mask = 0;
+                for (String name : fields[0].split(",")) {
+                    mask |= 1 << dayIndex(name, text);
+                }
+                return new Weekly(interval, mask);
+            case "MONTHLY":
+                requireFields(fields, 1, text);
+                return new Monthly(parseInt(fields[0], text));
+            case "NTH_WEEKDAY":
+                requireFields(fields, 2, text);
+                return new NthWeekday(parseInt(fields[0], text), DayOfWeek.of(dayIndex(fields[1], text) + 1));
+            case "LAST_BUSINESS_DAY":
+                requireFields(fields, 0, text);
+                return new LastBusinessDay();
+            case "CRON":
+                return Cron.of(args);
+            default:
+                throw new IllegalArgumentException("Quy tắc lặp không hợp lệ: " + text);
+        }
+    }
+
+    /**
+     * Lần đầu tiên không trước from và không trước start, null nếu không còn lần nào
+     */
+    public LocalDate next(LocalDate from, LocalDate start) {
+        return nextOnOrAfter(from.isBefore(start) ? start : from, start);
+    }
+
+    /**
+     * Lần cuối cùng không sau to và không trước start, null nếu không có
+     */
+    public LocalDate previous(LocalDate to, LocalDate start) {
+        if (to.isBefore(start)) {
+            return null;
+        }
+        LocalDate date = previousOnOrBefore(to, start);
+        return date == null || date.isBefore(start) ? null : date;
+    }
+
+    /**
+     * Mọi lần trong khoảng [from, to] (tính từ start), mỗi lần một phép tính next
+     */
+    public List<LocalDate> occurrences(LocalDate from, LocalDate to, LocalDate start) {
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = next(from, start); date != null && !date.isAfter(to); date = next(date.plusDays(1), start)) {
+            dates.add(date);
+        }
+        return dates;
+    }
+
+    // from không trước start
+    abstract LocalDate nextOnOrAfter(LocalDate from, LocalDate start);
+
+    // Có thể trả về ngày trước start (previous sẽ bỏ)
+    abstract LocalDate previousOnOrBefore(LocalDate to, LocalDate start);
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RecurrenceRule && toString().equals(o.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    private static String withInterval(String kind, int interval) {
+        return interval == 1 ? kind : kind + "/" + interval;
+    }
+
+    private static void requireInterval(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Chu kỳ lặp phải lớn hơn 0: " + interval);
+        }
+    }
+
+    private static void requireFields(String[] fields, int count, String text) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException("Quy tắc lặp không hợp lệ: " + text);
+        }
+    }
+
+    private static int parseInt(String value, String text) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Quy tắc lặp không hợp lệ: " + text);
+        }
+    }
+
+    // MON = 0 ... SUN = 6 (DayOfWeek.ordinal)
+    private static int dayIndex(String name, String text) {
+        for (int i = 0; i < DAY_NAMES.length; i++) {
+            if (DAY_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Thứ không hợp lệ: " + name + " (" + text + ")");
+    }
+
+    /**
+     * Mỗi interval ngày kể từ start
+     */
+    private static final class Daily extends RecurrenceRule {
+        private final int interval;
+
+        Daily(int interval) {
+            requireInterval(interval);
+            this.interval = interval;
+        }
+
+        @Override
+        LocalDate nextOnOrAfter(LocalDate from, LocalDate start) {
+            long days = from.toEpochDay() - start.toEpochDay();
+            return start.plusDays((days + interval - 1) / interval * interval);
+        }
+
+        @Override
+        LocalDate previousOnOrBefore(LocalDate to, LocalDate start) {
+            long days = to.toEpochDay() - start.toEpochDay();
+            return start.plusDays(days / interval * interval);
+        }
+
+        @Override
+        public String toString() {
+            return withInterval("DAILY", interval);
+        }
+    }
+
+    /**
+     * Các thứ trong days (bit i = DayOfWeek.ordinal() i) của mỗi interval tuần, tuần đầu là tuần chứa start
+     */
+    private static final class Weekly extends RecurrenceRule {
+        private static final int ALL_DAYS = 0x7F;
+
+        private final int interval;
+        private final int days;
+
+        Weekly(int interval, int days) {
+            requireInterval(interval);
+            if ((days & ALL_DAYS) == 0) {
+                throw new IllegalArgumentException("Quy tắc hằng tuần phải có ít nhất một thứ");
+            }
+            this.interval = interval;
+            this.days = days & ALL_DAYS;
+        }
+
+        @Override
+        LocalDate nextOnOrAfter(LocalDate from, LocalDate start) {
+            long firstMonday = firstMonday(start);
+            long week = Math.floorDiv(from.toEpochDay() - firstMonday, 7);
+            int day = from.getDayOfWeek().ordinal();
+            if (week % interval == 0) {
+                int remaining = days & (ALL_DAYS << day);
+                if (remaining != 0) {
+                    return LocalDate.ofEpochDay(firstMonday + week * 7 + Integer.numberOfTrailingZeros(remaining));
+                }
+            }
+            // Tuần có chạy kế tiếp, vào thứ sớm nhất
+            long nextWeek = (week / interval + 1) * interval;
+            return LocalDate.ofEpochDay(firstMonday + nextWeek * 7 + Integer.numberOfTrailingZeros(days));
+        }
+
+        @Override
+        LocalDate previousOnOrBefore(LocalDate to, LocalDate start) {
+            long firstMonday = firstMonday(start);
+            long week = Math.floorDiv(to.toEpochDay() - firstMonday, 7);
+            int day = to.getDayOfWeek().ordinal();
+            if (week % interval == 0) {
+                int passed = days & ((2 << day) - 1);
+                if (passed != 0) {
+                    return LocalDate.ofEpochDay(firstMonday + week * 7 + 31 - Integer.numberOfLeadingZeros(passed));
+                }
+            }
+            // Tuần có chạy liền trước, vào thứ muộn nhất
+            long previousWeek = week % interval == 0 ? week - interval : week / interval * interval;
+            return LocalDate.ofEpochDay(firstMonday + previousWeek * 7 + 31 - Integer.numberOfLeadingZeros(days));
+        }
+
+        private static long firstMonday(LocalDate start) {
+            return start.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toEpochDay();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < DAY_NAMES.length; i++) {
+                if ((days & (1 << i)) != 0) {
+                    names.append(names.length() > 0 ? "," : "").append(DAY_NAMES[i]);
+                }
+            }
+            return withInterval("WEEKLY", interval) + " " + names;
+        }
+    }
+
+    /**
+     * Quy tắc có tối đa một lần mỗi tháng hoặc được tính theo từng tháng: lần kế tiếp / liền trước
+     * chỉ cần xét tháng hiện tại rồi các tháng kề (tối đa MAX_SEARCH_MONTHS tháng)
+     */
+    private abstract static class MonthBased extends RecurrenceRule {
+        // Lần sớm nhất trong tháng từ ngày fromDay, null nếu không có
+        abstract LocalDate firstInMonth(YearMonth month, int fromDay);
+
+        // Lần muộn nhất trong tháng tới ngày toDay, null nếu không có
+        abstract LocalDate lastInMonth(YearMonth month, int toDay);
+
+        @Override
+        LocalDate nextOnOrAfter(LocalDate from, LocalDate start) {
+            YearMonth month = YearMonth.from(from);
+            LocalDate date = firstInMonth(month, from.getDayOfMonth());
+            for (int i = 0; date == null && i < MAX_SEARCH_MONTHS; i++) {
+                month = month.plusMonths(1);
+                date = firstInMonth(month, 1);
+            }
+            return date;
+        }
+
+        @Override
+        LocalDate previousOnOrBefore(LocalDate to, LocalDate start) {
+            YearMonth month = YearMonth.from(to);
+            LocalDate date = lastInMonth(month, to.getDayOfMonth());
+            for (int i = 0; date == null && i < MAX_SEARCH_MONTHS && !month.isBefore(YearMonth.from(start)); i++) {
+                month = month.minusMonths(1);
+                date = lastInMonth(month, 31);
+            }
+            return date;
+        }
+    }
+
+    /**
+     * Quy tắc đúng một ngày (hoặc không có) mỗi tháng
+     */
+    private abstract static class OncePerMonth extends MonthBased {
+        abstract LocalDate inMonth(YearMonth month);
+
+        @Override
+        LocalDate firstInMonth(YearMonth month, int fromDay) {
+            LocalDate date = inMonth(month);
+            return date != null && date.getDayOfMonth() >= fromDay ? date : null;
+        }
+
+        @Override
+        LocalDate lastInMonth(YearMonth month, int toDay) {
+            LocalDate date = inMonth(month);
+            return date != null && date.getDayOfMonth() <= toDay ? date : null;
+        }
+    }
+
+    private static final class Monthly extends OncePerMonth {
+        private final int dayOfMonth;
+
+        Monthly(int dayOfMonth) {
+            if (dayOfMonth < 1 || dayOfMonth > 31) {
+                throw new IllegalArgumentException("Ngày trong tháng phải từ 1 đến 31: " + dayOfMonth);
+            }
+            this.dayOfMonth = dayOfMonth;
+        }
+
+        @Override
+        LocalDate inMonth(YearMonth month) {
+            return month.atDay(Math.min(dayOfMonth, month.lengthOfMonth()));
+        }
+
+        @Override
+        public String toString() {
+            return "MONTHLY " + dayOfMonth;
+        }
+    }
+
+    private static final class NthWeekday extends OncePerMonth {
+        private final int n;
+        private final DayOfWeek day;
+
+        NthWeekday(int n, DayOfWeek day) {
+            if (n != -1 && (n < 1 || n > 5)) {
+                throw new IllegalArgumentException("Thứ tự trong tháng phải từ 1 đến 5 hoặc -1: " + n);
+            }
+            this.n = n;
+            this.day = day;
+        }
+
+        @Override
+        LocalDate inMonth(YearMonth month) {
+            if (n == -1) {
+                return month.atEndOfMonth().with(TemporalAdjusters.previousOrSame(day));
+            }
+            LocalDate date = month.atDay(1).with(TemporalAdjusters.nextOrSame(day)).plusWeeks(n - 1);
+            return date.getMonthValue() == month.getMonthValue() ? date : null;
+        }
+
+        @Override
+        public String toString() {
+            return "NTH_WEEKDAY " + n + " " + DAY_NAMES[day.ordinal()];
+        }
+    }
+
+    private static final class LastBusinessDay extends OncePerMonth {
+        @Override
+        LocalDate inMonth(YearMonth month) {
+            LocalDate end = month.atEndOfMonth();
+            switch (end.getDayOfWeek()) {
+                case SATURDAY:
+                    return end.minusDays(1);
+                case SUNDAY:
+                    return end.minusDays(2);
+                default:
+                    return end;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "LAST_BUSINESS_DAY";
+        }
+    }
+
+    /**
+     * Cron theo ngày: tập ngày, tháng, thứ lưu dạng bitmask; mỗi tháng tính mặt nạ các ngày khớp rồi lấy bit
+     * thấp / cao nhất. Như cron: khi cả ngày và thứ đều bị giới hạn (không bắt đầu bằng *) thì khớp một trong hai.
+     */
+    private static final class Cron extends MonthBased {
+        private final String expression;
+        private final long dayMask;      // bit 1..31, bit 0: L (ngày cuối tháng)
+        private final int monthMask;     // bit 1..12
+        private final boolean anyDay;      // trường ngày bắt đầu bằng *
+        private final boolean anyWeekday;  // trường thứ bắt đầu bằng *
+        // Mặt nạ các ngày 1..31 khớp trường thứ, theo thứ của ngày mùng 1 (chỉ số DayOfWeek.ordinal)
+        private final long[] weekdayMasks = new long[7];
+
+        private Cron(String expression, long dayMask, int monthMask, int weekdays, boolean anyDay,
+                     boolean anyWeekday) {
+            this.expression = expression;
+            this.dayMask = dayMask;
+            this.monthMask = monthMask;
+            this.anyDay = anyDay;
+            this.anyWeekday = anyWeekday;
+            for (int first = 0; first < 7; first++) {
+                long mask = 0;
+                for (int dayOfMonth = 1; dayOfMonth <= 31; dayOfMonth++) {
+                    if ((weekdays & (1 << ((first + dayOfMonth - 1) % 7))) != 0) {
+                        mask |= 1L << dayOfMonth;
+                    }
+                }
+                weekdayMasks[first] = mask;
+            }
+        }
+
+        static Cron of(String text) {
+            String[] fields = text.trim().toUpperCase(Locale.ROOT).split("\\s+");
+            if (fields.length == 5) {
+                // Giao dịch chỉ có ngày: bỏ trường phút, giờ
+                fields = new String[]{fields[2], fields[3], fields[4]};
+            }
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Biểu thức cron phải có 3 hoặc 5 trường: " + text);
+            }
+            long dayMask = parseField(fields[0], 1, 31, null, text);
+            int monthMask = (int) parseField(fields[1], 1, 12, MONTH_NAMES, text);
+            long cronWeekdays = parseField(fields[2], 0, 7, CRON_DAY_NAMES, text);
+            // Cron: 0 và 7 là Chủ nhật -> chỉ số DayOfWeek.ordinal (MON = 0)
+            int weekdays = 0;
+            for (int i = 0; i <= 7; i++) {
+                if ((cronWeekdays & (1L << i)) != 0) {
+                    weekdays |= 1 << ((i + 6) % 7);
+                }
+            }
+            Cron cron = new Cron(String.join(" ", fields), dayMask, monthMask, weekdays,
+                    fields[0].startsWith("*"), fields[2].startsWith("*"));
+            // Quy tắc khả thi thì có lần xảy ra trong mọi khoảng MAX_SEARCH_MONTHS tháng
+            if (cron.next(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 1, 1)) == null) {
+                throw new IllegalArgumentException("Biểu thức cron không bao giờ xảy ra: " + text);
+            }
+            return cron;
+        }
+
+        // Các dạng: *, */n, a, a-b, a-b/n, a/n, danh sách cách nhau bởi dấu phẩy; trường ngày nhận thêm L
+        private static long parseField(String field, int min, int max, String[] names, String text) {
+            long mask = 0;
+            for (String part : field.split(",")) {
+                if (names == null && part.equals("L")) {
+                    mask |= 1;
+                    continue;
+                }
+                String[] stepParts = part.split("/", 2);
+                int step = stepParts.length > 1 ? parseInt(stepParts[1], text) : 1;
+                String range = stepParts[0];
+                int low;
+                int high;
+                if (range.equals("*")) {
+                    low = min;
+                    high = max;
+                } else {
+                    String[] bounds = range.split("-", 2);
+                    low = fieldValue(bounds[0], names, min, text);
+                    high = bounds.length > 1 ? fieldValue(bounds[1], names, min, text)
+                            : (stepParts.length > 1 ? max : low);
+                }
+                if (step < 1 || low < min || high > max || low > high) {
+                    throw new IllegalArgumentException("Trường cron không hợp lệ: " + part + " (" + text + ")");
+                }
+                for (int value = low; value <= high; value += step) {
+                    mask |= 1L << value;
+                }
+            }
+            return mask;
+        }
+
+        // Tên thứ i trong names có giá trị min + i
+        private static int fieldValue(String value, String[] names, int min, String text) {
+            if (names != null) {
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i].equals(value)) {
+                        return min + i;
+                    }
+                }
+            }
+            return parseInt(value, text);
+        }
+
+        // Các ngày 1..length của tháng khớp biểu thức (bit d = ngày d)
+        private long matches(YearMonth month) {
+            if ((monthMask & (1 << month.getMonthValue())) == 0) {
+                return 0;
+            }
+            int length = month.lengthOfMonth();
+            long valid = ((1L << (length + 1)) - 1) & ~1L;
+            long days = dayMask & valid;
+            if ((dayMask & 1) != 0) {
+                days |= 1L << length;
+            }
+            long weekdays = weekdayMasks[month.atDay(1).getDayOfWeek().ordinal()] & valid;
+            return anyDay || anyWeekday ? days & weekdays : days | weekdays;
+        }
+
+        @Override
+        LocalDate firstInMonth(YearMonth month, int fromDay) {
+            long days = matches(month) & (-1L << fromDay);
+            return days == 0 ? null : month.atDay(Long.numberOfTrailingZeros(days));
+        }
+
+        @Override
+        LocalDate lastInMonth(YearMonth month, int toDay) {
+            long days = matches(month) & ((2L << toDay) - 1);
+            return days == 0 ? null : month.atDay(63 - Long.numberOfLeadingZeros(days));
+        }
+
+        @Override
+        public String toString() {
+            return "CRON " + expression;
+        }
+    }
+}
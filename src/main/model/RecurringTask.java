@@ -0,0 +1,125 @@
+package main.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public class RecurringTask {
+    private int id;
+    private int userId;
+    private int categoryId;
+    private BigDecimal amount;
+    private String description;
+    private String type = "EXPENSE"; // INCOME hoặc EXPENSE
+    private int dayOfMonth; // Ngày thực hiện (1-31), dùng khi không có recurrence
+    private RecurrenceRule recurrence; // null = hằng tháng vào ngày dayOfMonth
+    private LocalDate startDate; // Không sinh giao dịch trước ngày này, mốc đếm chu kỳ của quy tắc
+    private LocalDate lastRunDate; // Ngày của lần gần nhất đã sinh giao dịch, null nếu chưa chạy
+
+    // Constructors
+    public RecurringTask() {
+    }
+
+    public RecurringTask(int userId, int categoryId, BigDecimal amount, String description, int dayOfMonth) {
+        this.userId = userId;
+        this.categoryId = categoryId;
+        this.amount = amount;
+        this.description = description;
+        this.dayOfMonth = dayOfMonth;
+    }
+
+    public RecurringTask(int userId, int categoryId, BigDecimal amount, String description, String type,
+                         RecurrenceRule recurrence) {
+        this.userId = userId;
+        this.categoryId = categoryId;
+        this.amount = amount;
+        this.description = description;
+        this.type = type;
+        this.recurrence = recurrence;
+    }
+
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public int getDayOfMonth() {
+        return dayOfMonth;
+    }
+
+    // Đặt lại thành quy tắc hằng tháng vào ngày dayOfMonth
+    public void setDayOfMonth(int dayOfMonth) {
+        this.dayOfMonth = dayOfMonth;
+        this.recurrence = null;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Quy tắc lặp; task cũ chỉ có ngày trong tháng thì là MONTHLY dayOfMonth
+     */
+    public RecurrenceRule getRecurrence() {
+        return recurrence != null ? recurrence : RecurrenceRule.monthly(dayOfMonth);
+    }
+
+    public void setRecurrence(RecurrenceRule recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getLastRunDate() {
+        return lastRunDate;
+    }
+
+    public void setLastRunDate(LocalDate lastRunDate) {
+        this.lastRunDate = lastRunDate;
+    }
+}
@@ -7,7 +7,7 @@ public class Transaction {
     private int id;
     private int userId;
     private int categoryId;
-    private BigDecimal amount;
+    private Money amount; // null nếu chưa nhập
     private String description;
     private LocalDate transactionDate;
     private String type; // "INCOME" or "EXPENSE"
@@ -21,12 +21,28 @@ public class Transaction {
                        String description, LocalDate transactionDate, String type) {
         this.userId = userId;
         this.categoryId = categoryId;
-        this.amount = amount;
+        this.amount = Money.of(amount);
         this.description = description;
         this.transactionDate = transactionDate;
         this.type = type;
     }
 
+    /**
+     * Bản sao các trường (dùng khi cần sửa mà không đụng tới bản đang hiển thị)
+     */
+    public Transaction copy() {
+        Transaction t = new Transaction();
+        t.id = id;
+        t.userId = userId;
+        t.categoryId = categoryId;
+        t.amount = amount;
+        t.description = description;
+        t.transactionDate = transactionDate;
+        t.type = type;
+        t.categoryName = categoryName;
+        return t;
+    }
+
     // Getters and Setters
     public int getId() {
         return id;
@@ -52,11 +68,21 @@ public class Transaction {
         this.categoryId = categoryId;
     }
 
+    // Số tiền dạng BigDecimal cho JDBC và hiển thị
     public BigDecimal getAmount() {
-        return amount;
+        return amount != null ? amount.toBigDecimal() : null;
     }
 
+    // Làm tròn HALF_UP về 2 chữ số thập phân (giống cột DECIMAL(15, 2))
     public void setAmount(BigDecimal amount) {
+        this.amount = Money.of(amount);
+    }
+
+    public Money getMoney() {
+        return amount;
+    }
+
+    public void setMoney(Money amount) {
         this.amount = amount;
     }
 
@@ -0,0 +1,71 @@
+package main.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mục lục phân trang danh sách giao dịch theo thứ tự (ngày giảm dần, id giảm dần):
+ * tổng số dòng và khóa (ngày, id) của dòng cuối mỗi trang, để đọc trang bất kỳ bằng keyset thay cho OFFSET
+ */
+public class TransactionPageIndex {
+    private final int pageSize;
+    private final int rowCount;
+    private final List<Key> pageEnds;
+
+    public TransactionPageIndex(int pageSize, int rowCount, List<Key> pageEnds) {
+        this.pageSize = pageSize;
+        this.rowCount = rowCount;
+        this.pageEnds = new ArrayList<>(pageEnds);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getPageCount() {
+        return (rowCount + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Khóa của dòng cuối trang liền trước (trang bắt đầu ngay sau khóa này), null với trang đầu
+     */
+    public Key after(int page) {
+        return page == 0 ? null : pageEnds.get(page - 1);
+    }
+
+    public List<Key> getPageEnds() {
+        return Collections.unmodifiableList(pageEnds);
+    }
+
+    /**
+     * Vị trí của một giao dịch trong danh sách sắp xếp
+     */
+    public static class Key {
+        private final LocalDate date;
+        private final int id;
+
+        public Key(LocalDate date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return date + "#" + id;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package main.report;
+
+import java.util.Map;
+
+/**
+ * Một phần của báo cáo được tính trong lượt duyệt duy nhất của ReportEngine.
+ * accept được gọi lần lượt với từng lô giao dịch của khoảng thời gian, finish ghi kết quả vào báo cáo.
+ * Khi quét song song, mỗi khoảng ngày có một bộ aggregator riêng và các bộ được gộp theo thứ tự bằng merge.
+ */
+public interface Aggregator {
+
+    /**
+     * Tên hiển thị trong thống kê thời gian chạy
+     */
+    String name();
+
+    /**
+     * true nếu cần giờ tạo giao dịch (khi đó phải đọc DB thay vì sổ trong bộ nhớ)
+     */
+    default boolean needsCreatedHour() {
+        return false;
+    }
+
+    void accept(RowBatch batch);
+
+    /**
+     * Gộp kết quả của cùng loại aggregator đã chạy trên khoảng ngày liền sau (khi quét song song)
+     */
+    void merge(Aggregator later);
+
+    void finish(ReportContext context, Map<String, Object> report);
+}
@@ -0,0 +1,524 @@
+package main.report;
+
+import main.model.Money;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Các aggregator dùng cho báo cáo. Kết quả giữ đúng khóa và định dạng của các truy vấn SQL trước đây:
+ * các chỉ số tổng hợp được ghi vào map "statistics" của báo cáo, các danh sách ghi vào khóa riêng.
+ */
+public final class Aggregators {
+    public static final String STATISTICS = "statistics";
+
+    private static final String[] DAYS_OF_WEEK = {"Chủ nhật", "Thứ hai", "Thứ ba", "Thứ tư", "Thứ năm", "Thứ sáu", "Thứ bảy"};
+    // Theo thứ tự hiển thị: sáng, chiều, tối, đêm khuya
+    private static final String[] TIME_PERIODS = {"Buổi sáng (6h-12h)", "Buổi chiều (12h-18h)",
+            "Buổi tối (18h-24h)", "Đêm khuya (0h-6h)"};
+
+    private Aggregators() {
+    }
+
+    /**
+     * Map "statistics" của báo cáo, tạo mới nếu chưa có
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> statistics(Map<String, Object> report) {
+        return (Map<String, Object>) report.computeIfAbsent(STATISTICS, key -> new HashMap<String, Object>());
+    }
+
+    // Tổng thu, tổng chi, số dư
+    public static Aggregator sums() {
+        return new Sums();
+    }
+
+    // Số giao dịch thu, chi và tổng
+    public static Aggregator counts() {
+        return new Counts();
+    }
+
+    // Số ngày có giao dịch và tỷ lệ so với số ngày của khoảng thời gian
+    public static Aggregator activeDays() {
+        return new ActiveDays();
+    }
+
+    // Ngày đầu, ngày cuối, khoản chi và khoản thu lớn nhất cùng ngày của chúng
+    public static Aggregator extremes() {
+        return new Extremes();
+    }
+
+    // Tổng theo danh mục, ghi vào "income_by_category" hoặc "expense_by_category"
+    public static Aggregator categoryTotals(boolean income) {
+        return new CategoryTotals(income);
+    }
+
+    // limit giao dịch lớn nhất, ghi vào "top_incomes" hoặc "top_expenses"
+    public static Aggregator top(boolean income, int limit) {
+        return new Top(income, limit);
+    }
+
+    // Chi tiêu theo ngày trong tuần, ghi vào "expense_by_day"
+    public static Aggregator expenseByDayOfWeek() {
+        return new ExpenseByDayOfWeek();
+    }
+
+    // Chi tiêu theo buổi trong ngày (giờ tạo giao dịch), ghi vào "expense_by_time"
+    public static Aggregator expenseByTimeOfDay() {
+        return new ExpenseByTimeOfDay();
+    }
+
+    private static Date toSqlDate(long epochDay) {
+        return Date.valueOf(LocalDate.ofEpochDay(epochDay));
+    }
+
+    private static final class Sums implements Aggregator {
+        private long income;
+        private long expense;
+
+        @Override
+        public String name() {
+            return "sums";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.incomes[i]) {
+                    income += batch.amountsMinor[i];
+                } else {
+                    expense += batch.amountsMinor[i];
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            Sums other = (Sums) later;
+            income += other.income;
+            expense += other.expense;
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            Map<String, Object> statistics = statistics(report);
+            statistics.put("income", Money.toBigDecimal(income));
+            statistics.put("expense", Money.toBigDecimal(expense));
+            statistics.put("balance", Money.toBigDecimal(income - expense));
+        }
+    }
+
+    private static final class Counts implements Aggregator {
+        private int incomeCount;
+        private int expenseCount;
+
+        @Override
+        public String name() {
+            return "counts";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.incomes[i]) {
+                    incomeCount++;
+                } else {
+                    expenseCount++;
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            Counts other = (Counts) later;
+            incomeCount += other.incomeCount;
+            expenseCount += other.expenseCount;
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            Map<String, Object> statistics = statistics(report);
+            statistics.put("income_count", incomeCount);
+            statistics.put("expense_count", expenseCount);
+            statistics.put("total_count", incomeCount + expenseCount);
+        }
+    }
+
+    private static final class ActiveDays implements Aggregator {
+        private int activeDays;
+        private long lastDay = Long.MIN_VALUE;
+
+        @Override
+        public String name() {
+            return "active days";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            // Các dòng đến theo thứ tự ngày nên đếm ngày khác nhau bằng cách so với dòng trước
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.epochDays[i] != lastDay) {
+                    lastDay = batch.epochDays[i];
+                    activeDays++;
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            // Các khoảng ngày không giao nhau nên cộng thẳng
+            ActiveDays other = (ActiveDays) later;
+            activeDays += other.activeDays;
+            if (other.lastDay != Long.MIN_VALUE) {
+                lastDay = other.lastDay;
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            Map<String, Object> statistics = statistics(report);
+            statistics.put("active_days", activeDays);
+            statistics.put("activity_rate", Money.percent(activeDays, context.getDayCount(), 2));
+        }
+    }
+
+    private static final class Extremes implements Aggregator {
+        private long firstDay = Long.MAX_VALUE;
+        private long lastDay = Long.MIN_VALUE;
+        private long highestExpense = Long.MIN_VALUE;
+        private long highestExpenseDay;
+        private long highestIncome = Long.MIN_VALUE;
+        private long highestIncomeDay;
+
+        @Override
+        public String name() {
+            return "extremes";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                int day = batch.epochDays[i];
+                firstDay = Math.min(firstDay, day);
+                lastDay = Math.max(lastDay, day);
+                // Bằng nhau thì giữ giao dịch đến trước (ngày sớm hơn)
+                long amount = batch.amountsMinor[i];
+                if (batch.incomes[i]) {
+                    if (amount > highestIncome) {
+                        highestIncome = amount;
+                        highestIncomeDay = day;
+                    }
+                } else if (amount > highestExpense) {
+                    highestExpense = amount;
+                    highestExpenseDay = day;
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            Extremes other = (Extremes) later;
+            firstDay = Math.min(firstDay, other.firstDay);
+            lastDay = Math.max(lastDay, other.lastDay);
+            // Khoảng sau chỉ thắng khi lớn hơn hẳn, giống như khi duyệt tuần tự
+            if (other.highestIncome > highestIncome) {
+                highestIncome = other.highestIncome;
+                highestIncomeDay = other.highestIncomeDay;
+            }
+            if (other.highestExpense > highestExpense) {
+                highestExpense = other.highestExpense;
+                highestExpenseDay = other.highestExpenseDay;
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            Map<String, Object> statistics = statistics(report);
+            boolean any = firstDay != Long.MAX_VALUE;
+            statistics.put("first_date", any ? toSqlDate(firstDay) : null);
+            statistics.put("last_date", any ? toSqlDate(lastDay) : null);
+            statistics.put("highest_expense_date", highestExpense != Long.MIN_VALUE ? toSqlDate(highestExpenseDay) : null);
+            statistics.put("highest_income_date", highestIncome != Long.MIN_VALUE ? toSqlDate(highestIncomeDay) : null);
+            statistics.put("highest_expense", Money.toBigDecimal(highestExpense != Long.MIN_VALUE ? highestExpense : 0));
+            statistics.put("highest_income", Money.toBigDecimal(highestIncome != Long.MIN_VALUE ? highestIncome : 0));
+        }
+    }
+
+    private static final class CategoryTotals implements Aggregator {
+        private final boolean income;
+        private long[] totals = new long[64];
+        private int[] counts = new int[64];
+
+        CategoryTotals(boolean income) {
+            this.income = income;
+        }
+
+        @Override
+        public String name() {
+            return income ? "income by category" : "expense by category";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                int categoryId = batch.categoryIds[i];
+                if (batch.incomes[i] != income || categoryId < 0) {
+                    continue;
+                }
+                if (categoryId >= totals.length) {
+                    int capacity = Math.max(categoryId + 1, totals.length * 2);
+                    totals = Arrays.copyOf(totals, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                }
+                totals[categoryId] += batch.amountsMinor[i];
+                counts[categoryId]++;
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            CategoryTotals other = (CategoryTotals) later;
+            if (other.totals.length > totals.length) {
+                totals = Arrays.copyOf(totals, other.totals.length);
+                counts = Arrays.copyOf(counts, other.counts.length);
+            }
+            for (int id = 0; id < other.totals.length; id++) {
+                totals[id] += other.totals[id];
+                counts[id] += other.counts[id];
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            String type = income ? "INCOME" : "EXPENSE";
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 0; id < totals.length; id++) {
+                // Giống truy vấn cũ: chỉ danh mục đúng loại, của người dùng hoặc dùng chung, có tổng > 0
+                if (totals[id] > 0 && context.isCategoryVisible(id, type)) {
+                    ids.add(id);
+                }
+            }
+            ids.sort((a, b) -> Long.compare(totals[b], totals[a]));
+
+            List<Map<String, Object>> results = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("category", context.categoryName(id));
+                row.put("amount", Money.toBigDecimal(totals[id]));
+                row.put("count", counts[id]);
+                results.add(row);
+            }
+            report.put(income ? "income_by_category" : "expense_by_category", results);
+        }
+    }
+
+    private static final class Top implements Aggregator {
+        private final boolean income;
+        private final int limit;
+        // Heap nhỏ nhất trước: phần tử đầu là giao dịch nhỏ nhất đang giữ
+        private final PriorityQueue<Entry> heap;
+
+        Top(boolean income, int limit) {
+            this.income = income;
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(Math.max(1, limit + 1), Entry.ORDER.reversed());
+        }
+
+        @Override
+        public String name() {
+            return income ? "top incomes" : "top expenses";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            if (limit <= 0) {
+                return;
+            }
+            for (int i = 0; i < batch.size; i++) {
+                if (batch.incomes[i] != income) {
+                    continue;
+                }
+                long amount = batch.amountsMinor[i];
+                // Chỉ tạo đối tượng khi giao dịch lọt vào top
+                if (heap.size() < limit || amount > heap.peek().amountMinor) {
+                    heap.add(new Entry(batch.ids[i], amount, batch.epochDays[i], batch.categoryIds[i]));
+                    if (heap.size() > limit) {
+                        heap.poll();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            for (Entry entry : ((Top) later).heap) {
+                heap.add(entry);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            List<Entry> entries = new ArrayList<>(heap);
+            entries.sort(Entry.ORDER);
+
+            // Lượt duyệt không đọc mô tả: lấy riêng cho vài giao dịch trong top
+            List<Integer> ids = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                ids.add(entry.id);
+            }
+            Map<Integer, String> descriptions = context.loadDescriptions(ids);
+
+            List<Map<String, Object>> results = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("id", entry.id);
+                row.put("amount", Money.toBigDecimal(entry.amountMinor));
+                row.put("description", descriptions.get(entry.id));
+                row.put("date", LocalDate.ofEpochDay(entry.epochDay));
+                row.put("category", context.categoryName(entry.categoryId));
+                results.add(row);
+            }
+            report.put(income ? "top_incomes" : "top_expenses", results);
+        }
+
+        private static final class Entry {
+            // Số tiền giảm dần; bằng nhau thì giao dịch đến trước (ngày, id nhỏ hơn) đứng trước
+            static final Comparator<Entry> ORDER = Comparator.comparingLong((Entry e) -> -e.amountMinor)
+                    .thenComparingInt(e -> e.epochDay)
+                    .thenComparingInt(e -> e.id);
+
+            final int id;
+            final long amountMinor;
+            final int epochDay;
+            final int categoryId;
+
+            Entry(int id, long amountMinor, int epochDay, int categoryId) {
+                this.id = id;
+                this.amountMinor = amountMinor;
+                this.epochDay = epochDay;
+                this.categoryId = categoryId;
+            }
+        }
+    }
+
+    private static final class ExpenseByDayOfWeek implements Aggregator {
+        private final long[] totals = new long[7];
+        private final int[] counts = new int[7];
+
+        @Override
+        public String name() {
+            return "expense by day of week";
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                if (!batch.incomes[i]) {
+                    // 1970-01-01 là thứ năm; 0 = Chủ nhật giống strftime('%w')
+                    int day = Math.floorMod(batch.epochDays[i] + 4, 7);
+                    totals[day] += batch.amountsMinor[i];
+                    counts[day]++;
+                }
+            }
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            ExpenseByDayOfWeek other = (ExpenseByDayOfWeek) later;
+            for (int day = 0; day < 7; day++) {
+                totals[day] += other.totals[day];
+                counts[day] += other.counts[day];
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (int day = 0; day < 7; day++) {
+                if (counts[day] > 0) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("day_of_week", DAYS_OF_WEEK[day]);
+                    row.put("amount", Money.toBigDecimal(totals[day]));
+                    row.put("count", counts[day]);
+                    row.put("avg_amount", Money.toBigDecimal(Money.divideRounded(totals[day], counts[day])));
+                    results.add(row);
+                }
+            }
+            report.put("expense_by_day", results);
+        }
+    }
+
+    private static final class ExpenseByTimeOfDay implements Aggregator {
+        private final long[] totals = new long[TIME_PERIODS.length];
+        private final int[] counts = new int[TIME_PERIODS.length];
+
+        @Override
+        public String name() {
+            return "expense by time of day";
+        }
+
+        @Override
+        public boolean needsCreatedHour() {
+            return true;
+        }
+
+        @Override
+        public void accept(RowBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                if (!batch.incomes[i]) {
+                    int period = periodOf(batch.createdHours[i]);
+                    totals[period] += batch.amountsMinor[i];
+                    counts[period]++;
+                }
+            }
+        }
+
+        // Không rõ giờ tạo thì tính vào buổi tối, giống nhánh ELSE của truy vấn cũ
+        private static int periodOf(int hour) {
+            if (hour >= 0 && hour <= 5) {
+                return 3;
+            }
+            if (hour >= 6 && hour <= 11) {
+                return 0;
+            }
+            if (hour >= 12 && hour <= 17) {
+                return 1;
+            }
+            return 2;
+        }
+
+        @Override
+        public void merge(Aggregator later) {
+            ExpenseByTimeOfDay other = (ExpenseByTimeOfDay) later;
+            for (int period = 0; period < TIME_PERIODS.length; period++) {
+                totals[period] += other.totals[period];
+                counts[period] += other.counts[period];
+            }
+        }
+
+        @Override
+        public void finish(ReportContext context, Map<String, Object> report) {
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (int period = 0; period < TIME_PERIODS.length; period++) {
+                if (counts[period] > 0) {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("time_period", TIME_PERIODS[period]);
+                    row.put("amount", Money.toBigDecimal(totals[period]));
+                    row.put("count", counts[period]);
+                    results.add(row);
+                }
+            }
+            report.put("expense_by_time", results);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package main.report;
+
+import main.cache.CategoryDictionary;
+import main.model.Category;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Thông tin chung của một lần chạy báo cáo, dùng khi các aggregator ghi kết quả
+ */
+public final class ReportContext {
+    private final int userId;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final CategoryDictionary categories;
+    // Đọc từ bảng categories khi không có từ điển, một lần cho cả báo cáo
+    private Map<Integer, Category> loadedCategories;
+
+    ReportContext(int userId, LocalDate startDate, LocalDate endDate, CategoryDictionary categories) {
+        this.userId = userId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.categories = categories;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Số ngày trong khoảng thời gian (tính cả hai đầu)
+     */
+    public long getDayCount() {
+        return endDate.toEpochDay() - startDate.toEpochDay() + 1;
+    }
+
+    /**
+     * Tên danh mục theo id, null nếu không có danh mục đó. Lấy từ CategoryDictionary; từ điển không nạp được
+     * thì đọc bảng categories, đọc cũng lỗi thì báo cáo thất bại thay vì thiếu tên danh mục.
+     *
+     * @throws ReportException nếu không đọc được danh mục
+     */
+    public String categoryName(int id) {
+        if (categories != null) {
+            return categories.name(id);
+        }
+        Category category = loadedCategories().get(id);
+        return category != null ? category.getName() : null;
+    }
+
+    /**
+     * Danh mục có đúng loại và dùng được cho người dùng của báo cáo (của riêng người dùng hoặc dùng chung)
+     *
+     * @throws ReportException nếu không đọc được danh mục
+     */
+    public boolean isCategoryVisible(int id, String type) {
+        if (categories != null) {
+            return categories.isVisible(id, type, userId);
+        }
+        Category category = loadedCategories().get(id);
+        return category != null && type.equals(category.getType())
+                && (category.getUserId() == null || category.getUserId() == userId);
+    }
+
+    private Map<Integer, Category> loadedCategories() {
+        if (loadedCategories == null) {
+            loadedCategories = ReportEngine.loadCategories();
+        }
+        return loadedCategories;
+    }
+
+    /**
+     * Mô tả của các giao dịch theo id, đọc từ DB (lượt duyệt chỉ đọc các cột số)
+     */
+    public Map<Integer, String> loadDescriptions(Collection<Integer> ids) {
+        return ReportEngine.loadDescriptions(ids);
+    }
+}
@@ -0,0 +1,524 @@
+package main.report;
+
+import main.cache.CategoryDictionary;
+import main.cache.LedgerCache;
+import main.dao.Database;
+import main.model.Category;
+import main.model.Money;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Duyệt giao dịch của một khoảng thời gian đúng một lần và đưa từng lô cho tất cả aggregator.
+ * Nguồn dữ liệu là sổ trong bộ nhớ (LedgerCache) nếu không aggregator nào cần giờ tạo giao dịch,
+ * nếu không thì truy vấn trên bảng transactions (chỉ đọc các cột số, không đọc mô tả).
+ * <p>
+ * Khi đọc DB, khoảng thời gian được chia thành nhiều phần liên tiếp quét song song, mỗi phần một bộ
+ * aggregator và một kết nối chỉ đọc, rồi gộp lại theo thứ tự; các Section độc lập (ví dụ xu hướng theo tháng)
+ * chạy cùng lúc. Một phần lỗi thì các phần còn lại bị hủy; cả báo cáo bị giới hạn bởi pf.report.timeoutMs.
+ * Thời gian chạy của từng aggregator (đo theo lô) được ghi vào khóa "timings" của báo cáo.
+ */
+public final class ReportEngine {
+    // In thời gian từng aggregator ra stderr: -Dpf.report.timing=true
+    private static final boolean LOG_TIMINGS = Boolean.getBoolean("pf.report.timing");
+    // Số phần quét song song tối đa, 1 = chạy tuần tự trên luồng gọi
+    private static final int PARALLELISM = Integer.getInteger("pf.report.parallelism",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Khoảng thời gian ngắn hơn 2 lần số ngày này không được chia
+    private static final int MIN_PARTITION_DAYS = Integer.getInteger("pf.report.minPartitionDays", 14);
+    // Thời gian tối đa của một báo cáo
+    private static final long TIMEOUT_MS = Long.getLong("pf.report.timeoutMs", 30_000L);
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    // Thứ tự (ngày, id) có sẵn trong chỉ mục idx_transactions_user_date nên không phải sắp xếp
+    private static final String SCAN_SQL = "SELECT id, category_id, amount, type = 'INCOME', transaction_date%s " +
+            "FROM transactions " +
+            "WHERE user_id = ? AND transaction_date BETWEEN ? AND ? " +
+            "ORDER BY transaction_date, id";
+    // Giờ tạo giao dịch tính trong SQLite; NULL/không hợp lệ thành -1
+    private static final String CREATED_HOUR_COLUMN = ", COALESCE(CAST(strftime('%H', created_at) AS INTEGER), -1)";
+
+    private ReportEngine() {
+    }
+
+    /**
+     * Một phần của báo cáo không phụ thuộc vào lượt duyệt giao dịch, chạy song song với lượt duyệt
+     * trên kết nối chỉ đọc do engine cấp; kết quả được ghi vào báo cáo theo khóa của section.
+     * Section có cache riêng thì đọc qua cache đó (kết nối chỉ dùng khi cache không có).
+     */
+    public interface Section {
+        Object load(Connection conn) throws SQLException;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() chỉ có từ Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Số tác vụ đồng thời đã bị giới hạn bởi pool kết nối, pool luồng chỉ cần đủ cho chúng
+            return new ForkJoinPool(Math.max(2, PARALLELISM + 1));
+        }
+    }
+
+    public static Map<String, Object> run(int userId, LocalDate startDate, LocalDate endDate,
+                                          Supplier<List<Aggregator>> aggregators) {
+        return run(userId, startDate, endDate, aggregators, Collections.emptyMap());
+    }
+
+    /**
+     * Chạy các aggregator trên giao dịch của người dùng trong [startDate, endDate] cùng với các section.
+     *
+     * @param aggregators tạo một bộ aggregator mới (mỗi phần quét song song dùng một bộ riêng)
+     * @param sections    các phần độc lập, kết quả ghi vào báo cáo theo khóa
+     * @throws ReportException nếu đọc DB lỗi, báo cáo quá thời gian hoặc bị ngắt
+     */
+    public static Map<String, Object> run(int userId, LocalDate startDate, LocalDate endDate,
+                                          Supplier<List<Aggregator>> aggregators, Map<String, Section> sections) {
+        long startNanos = System.nanoTime();
+        Cancellation cancellation = new Cancellation(startNanos + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS));
+
+        List<Aggregator> first = aggregators.get();
+        boolean needsCreatedHour = first.stream().anyMatch(Aggregator::needsCreatedHour);
+        LedgerCache.Ledger ledger = needsCreatedHour ? null : LedgerCache.get(userId);
+
+        // Sổ trong bộ nhớ đủ nhanh để duyệt một lượt; DB thì chia theo khoảng ngày
+        List<Partition> partitions = new ArrayList<>();
+        List<LocalDate[]> ranges = ledger != null
+                ? Collections.singletonList(new LocalDate[]{startDate, endDate})
+                : split(startDate, endDate, partitionCount(startDate, endDate, sections.size()));
+        for (LocalDate[] range : ranges) {
+            partitions.add(new Partition(range[0], range[1], partitions.isEmpty() ? first : aggregators.get()));
+        }
+
+        List<String> sectionKeys = new ArrayList<>(sections.keySet());
+        Object[] sectionResults = new Object[sectionKeys.size()];
+        long[] sectionNanos = new long[sectionKeys.size()];
+
+        List<Task> tasks = new ArrayList<>();
+        for (Partition partition : partitions) {
+            tasks.add(() -> partition.scan(userId, ledger, needsCreatedHour, cancellation));
+        }
+        for (int s = 0; s < sectionKeys.size(); s++) {
+            tasks.add(sectionTask(sections.get(sectionKeys.get(s)), s, sectionResults, sectionNanos, cancellation));
+        }
+        execute(tasks, cancellation);
+
+        // Gộp các phần theo thứ tự thời gian vào bộ aggregator đầu tiên
+        for (int p = 1; p < partitions.size(); p++) {
+            List<Aggregator> later = partitions.get(p).aggregators;
+            for (int a = 0; a < first.size(); a++) {
+                long start = System.nanoTime();
+                first.get(a).merge(later.get(a));
+                partitions.get(0).nanos[a] += System.nanoTime() - start;
+            }
+        }
+
+        Map<String, Object> report = new HashMap<>();
+        ReportContext context = new ReportContext(userId, startDate, endDate, CategoryDictionary.get());
+        long[] nanos = partitions.get(0).nanos;
+        for (int a = 0; a < first.size(); a++) {
+            long start = System.nanoTime();
+            first.get(a).finish(context, report);
+            nanos[a] += System.nanoTime() - start;
+        }
+        for (int s = 0; s < sectionKeys.size(); s++) {
+            report.put(sectionKeys.get(s), sectionResults[s]);
+        }
+
+        // Thời gian của aggregator cộng dồn qua các phần; thời gian đọc = thời gian quét trừ phần của aggregator
+        Map<String, Duration> timings = new LinkedHashMap<>();
+        for (int a = 0; a < first.size(); a++) {
+            long total = 0;
+            for (Partition partition : partitions) {
+                total += partition.nanos[a];
+            }
+            timings.put(first.get(a).name(), Duration.ofNanos(total));
+        }
+        for (int p = 0; p < partitions.size(); p++) {
+            Partition partition = partitions.get(p);
+            long aggregatorNanos = 0;
+            for (int a = 0; a < first.size(); a++) {
+                aggregatorNanos += partition.nanos[a];
+            }
+            String name = (ledger != null ? "scan ledger " : "scan sql ") + partition.startDate + ".." + partition.endDate;
+            timings.put(name, Duration.ofNanos(Math.max(0, partition.scanNanos - aggregatorNanos)));
+        }
+        for (int s = 0; s < sectionKeys.size(); s++) {
+            timings.put("section " + sectionKeys.get(s), Duration.ofNanos(sectionNanos[s]));
+        }
+        timings.put("total", Duration.ofNanos(System.nanoTime() - startNanos));
+        report.put("timings", timings);
+
+        if (LOG_TIMINGS) {
+            StringBuilder line = new StringBuilder("Báo cáo user " + userId + " " + startDate + ".." + endDate + ":");
+            timings.forEach((name, time) -> line.append(' ').append(name).append('=')
+                    .append(time.toNanos() / 1_000).append("us"));
+            System.err.println(line);
+        }
+        return report;
+    }
+
+    /**
+     * Chỉ chạy các section (cùng lúc, cùng giới hạn thời gian và cách hủy như run), dùng khi phần duyệt
+     * giao dịch của báo cáo đã có sẵn (ví dụ lấy từ cache).
+     *
+     * @return kết quả theo khóa của section, thêm khóa "timings" với thời gian của từng section
+     * @throws ReportException nếu một section lỗi, quá thời gian hoặc bị ngắt
+     */
+    public static Map<String, Object> runSections(Map<String, Section> sections) {
+        long startNanos = System.nanoTime();
+        Cancellation cancellation = new Cancellation(startNanos + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS));
+
+        List<String> sectionKeys = new ArrayList<>(sections.keySet());
+        Object[] sectionResults = new Object[sectionKeys.size()];
+        long[] sectionNanos = new long[sectionKeys.size()];
+        List<Task> tasks = new ArrayList<>();
+        for (int s = 0; s < sectionKeys.size(); s++) {
+            tasks.add(sectionTask(sections.get(sectionKeys.get(s)), s, sectionResults, sectionNanos, cancellation));
+        }
+        if (!tasks.isEmpty()) {
+            execute(tasks, cancellation);
+        }
+
+        Map<String, Object> results = new HashMap<>();
+        Map<String, Duration> timings = new LinkedHashMap<>();
+        for (int s = 0; s < sectionKeys.size(); s++) {
+            results.put(sectionKeys.get(s), sectionResults[s]);
+            timings.put("section " + sectionKeys.get(s), Duration.ofNanos(sectionNanos[s]));
+        }
+        timings.put("total", Duration.ofNanos(System.nanoTime() - startNanos));
+        results.put("timings", timings);
+        return results;
+    }
+
+    // Section chạy trên kết nối chỉ đọc riêng, kết quả và thời gian ghi vào vị trí index
+    private static Task sectionTask(Section section, int index, Object[] results, long[] nanos,
+                                    Cancellation cancellation) {
+        return () -> {
+            long start = System.nanoTime();
+            try (Connection conn = Database.getReadOnlyConnection()) {
+                cancellation.check();
+                results[index] = section.load(conn);
+            }
+            nanos[index] = System.nanoTime() - start;
+        };
+    }
+
+    /**
+     * Số phần quét song song: không quá PARALLELISM, mỗi phần ít nhất MIN_PARTITION_DAYS ngày,
+     * và chừa lại một kết nối của pool cho giao diện (các section cũng chiếm kết nối)
+     */
+    private static int partitionCount(LocalDate startDate, LocalDate endDate, int sectionCount) {
+        long days = endDate.toEpochDay() - startDate.toEpochDay() + 1;
+        int connections = Database.getPoolStats().getMaxSize() - 1 - sectionCount;
+        long count = Math.min(Math.min(PARALLELISM, connections), days / MIN_PARTITION_DAYS);
+        return (int) Math.max(1, count);
+    }
+
+    /**
+     * Chia [startDate, endDate] thành count khoảng liên tiếp gần bằng nhau (theo số ngày)
+     */
+    private static List<LocalDate[]> split(LocalDate startDate, LocalDate endDate, int count) {
+        List<LocalDate[]> ranges = new ArrayList<>(count);
+        long first = startDate.toEpochDay();
+        long days = endDate.toEpochDay() - first + 1;
+        for (int i = 0; i < count; i++) {
+            long from = first + days * i / count;
+            long to = first + days * (i + 1) / count - 1;
+            ranges.add(new LocalDate[]{LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(to)});
+        }
+        return ranges;
+    }
+
+    private static void execute(List<Task> tasks, Cancellation cancellation) {
+        if (tasks.size() == 1) {
+            cancellation.check();
+            runTask(tasks.get(0));
+        } else {
+            runConcurrently(tasks, cancellation);
+        }
+    }
+
+    private static void runTask(Task task) {
+        try {
+            task.run();
+        } catch (SQLException e) {
+            throw new ReportException("Lỗi đọc dữ liệu báo cáo: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Chạy các tác vụ cùng lúc. Tác vụ đầu tiên lỗi làm hủy các tác vụ còn lại và báo cáo thất bại ngay,
+     * không chờ các tác vụ khác; quá thời gian cũng hủy tất cả.
+     */
+    private static void runConcurrently(List<Task> tasks, Cancellation cancellation) {
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> runTask(task), EXECUTOR);
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    cancellation.cancel();
+                    firstFailure.completeExceptionally(error);
+                }
+            });
+            futures.add(future);
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        try {
+            CompletableFuture.anyOf(all, firstFailure).get(cancellation.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancel(futures, cancellation);
+            throw new ReportException("Báo cáo vượt quá thời gian cho phép (" + TIMEOUT_MS + " ms)", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures, cancellation);
+            throw new ReportException("Bị ngắt khi đang tạo báo cáo", e);
+        } catch (ExecutionException e) {
+            cancel(futures, cancellation);
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof ReportException) {
+                throw (ReportException) cause;
+            }
+            throw new ReportException("Lỗi khi tạo báo cáo: " + cause, cause);
+        }
+    }
+
+    private static void cancel(List<CompletableFuture<Void>> futures, Cancellation cancellation) {
+        cancellation.cancel();
+        for (CompletableFuture<Void> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static void scanLedger(LedgerCache.Ledger ledger, LocalDate startDate, LocalDate endDate,
+                                   RowBatch batch, List<Aggregator> aggregators, long[] nanos,
+                                   Cancellation cancellation) {
+        ledger.readLock();
+        try {
+            int end = ledger.upperBound(endDate.toEpochDay());
+            for (int i = ledger.lowerBound(startDate.toEpochDay()); i < end; i++) {
+                int row = batch.size++;
+                batch.ids[row] = ledger.id(i);
+                batch.epochDays[row] = ledger.epochDay(i);
+                batch.amountsMinor[row] = ledger.amountMinor(i);
+                batch.categoryIds[row] = ledger.categoryId(i);
+                batch.incomes[row] = ledger.isIncome(i);
+                batch.createdHours[row] = -1;
+                if (batch.isFull()) {
+                    cancellation.check();
+                    dispatch(batch, aggregators, nanos);
+                }
+            }
+        } finally {
+            ledger.readUnlock();
+        }
+        dispatch(batch, aggregators, nanos);
+    }
+
+    private static void scanDatabase(int userId, LocalDate startDate, LocalDate endDate, boolean createdHour,
+                                     RowBatch batch, List<Aggregator> aggregators, long[] nanos,
+                                     Cancellation cancellation) throws SQLException {
+        String sql = String.format(SCAN_SQL, createdHour ? CREATED_HOUR_COLUMN : "");
+        try (Connection conn = Database.getReadOnlyConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            pstmt.setDate(2, Date.valueOf(startDate));
+            pstmt.setDate(3, Date.valueOf(endDate));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // Các dòng liền nhau thường cùng ngày: chỉ đổi sang epoch day khi giá trị lưu trữ thay đổi
+                long lastStoredDate = Long.MIN_VALUE;
+                int epochDay = 0;
+                while (rs.next()) {
+                    int row = batch.size++;
+                    batch.ids[row] = rs.getInt(1);
+                    batch.categoryIds[row] = rs.getInt(2);
+                    batch.amountsMinor[row] = amountMinor(rs, 3);
+                    batch.incomes[row] = rs.getInt(4) == 1;
+                    long storedDate = rs.getLong(5);
+                    if (storedDate != lastStoredDate) {
+                        lastStoredDate = storedDate;
+                        epochDay = (int) rs.getDate(5).toLocalDate().toEpochDay();
+                    }
+                    batch.epochDays[row] = epochDay;
+                    batch.createdHours[row] = createdHour ? rs.getInt(6) : -1;
+                    if (batch.isFull()) {
+                        cancellation.check();
+                        dispatch(batch, aggregators, nanos);
+                    }
+                }
+            }
+            dispatch(batch, aggregators, nanos);
+        }
+    }
+
+    /**
+     * Số tiền theo đơn vị nhỏ nhất. getDouble rẻ hơn nhiều so với getBigDecimal; giá trị có không quá
+     * 2 chữ số thập phân (trường hợp thường gặp) cho đúng kết quả, còn lại đọc lại bằng BigDecimal như cũ.
+     */
+    private static long amountMinor(ResultSet rs, int column) throws SQLException {
+        double scaled = rs.getDouble(column) * 100;
+        long rounded = Math.round(scaled);
+        if (Math.abs(scaled - rounded) < 1e-6 && Math.abs(scaled) < 1e13) {
+            return rounded;
+        }
+        return Money.toMinor(rs.getBigDecimal(column));
+    }
+
+    /**
+     * Mô tả của các giao dịch theo id (dùng cho vài dòng top sau khi duyệt xong)
+     */
+    static Map<Integer, String> loadDescriptions(Collection<Integer> ids) {
+        Map<Integer, String> descriptions = new HashMap<>();
+        if (ids.isEmpty()) {
+            return descriptions;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        String sql = "SELECT id, description FROM transactions WHERE id IN (" + placeholders + ")";
+
+        try (Connection conn = Database.getReadOnlyConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int id : ids) {
+                pstmt.setInt(index++, id);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                descriptions.put(rs.getInt("id"), rs.getString("description"));
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return descriptions;
+    }
+
+    /**
+     * Mọi danh mục theo id, đọc thẳng từ bảng categories (khi CategoryDictionary không nạp được)
+     *
+     * @throws ReportException nếu đọc DB lỗi
+     */
+    static Map<Integer, Category> loadCategories() {
+        Map<Integer, Category> categories = new HashMap<>();
+        try (Connection conn = Database.getReadOnlyConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id, name, type, user_id FROM categories")) {
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Category category = new Category(rs.getString("name"), rs.getString("type"));
+                category.setId(rs.getInt("id"));
+                int userId = rs.getInt("user_id");
+                category.setUserId(rs.wasNull() ? null : userId);
+                categories.put(category.getId(), category);
+            }
+
+        } catch (SQLException e) {
+            throw new ReportException("Không đọc được danh mục cho báo cáo: " + e.getMessage(), e);
+        }
+        return categories;
+    }
+
+    private static void dispatch(RowBatch batch, List<Aggregator> aggregators, long[] nanos) {
+        if (batch.size == 0) {
+            return;
+        }
+        for (int a = 0; a < aggregators.size(); a++) {
+            long start = System.nanoTime();
+            aggregators.get(a).accept(batch);
+            nanos[a] += System.nanoTime() - start;
+        }
+        batch.clear();
+    }
+
+    private interface Task {
+        void run() throws SQLException;
+    }
+
+    /**
+     * Một khoảng ngày liên tiếp với bộ aggregator riêng
+     */
+    private static final class Partition {
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final List<Aggregator> aggregators;
+        private final long[] nanos;
+        private long scanNanos;
+
+        Partition(LocalDate startDate, LocalDate endDate, List<Aggregator> aggregators) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.aggregators = aggregators;
+            this.nanos = new long[aggregators.size()];
+        }
+
+        void scan(int userId, LedgerCache.Ledger ledger, boolean createdHour, Cancellation cancellation)
+                throws SQLException {
+            long start = System.nanoTime();
+            cancellation.check();
+            RowBatch batch = new RowBatch();
+            if (ledger != null) {
+                scanLedger(ledger, startDate, endDate, batch, aggregators, nanos, cancellation);
+            } else {
+                scanDatabase(userId, startDate, endDate, createdHour, batch, aggregators, nanos, cancellation);
+            }
+            scanNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Cờ hủy dùng chung của một báo cáo, được các phần kiểm tra sau mỗi lô
+     */
+    private static final class Cancellation {
+        private final long deadlineNanos;
+        private volatile boolean cancelled = false;
+
+        Cancellation(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        long remainingNanos() {
+            return Math.max(0, deadlineNanos - System.nanoTime());
+        }
+
+        void check() {
+            if (cancelled) {
+                throw new ReportException("Báo cáo đã bị hủy");
+            }
+            if (remainingNanos() == 0) {
+                throw new ReportException("Báo cáo vượt quá thời gian cho phép (" + TIMEOUT_MS + " ms)");
+            }
+        }
+    }
+}
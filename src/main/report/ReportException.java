@@ -0,0 +1,14 @@
+package main.report;
+
+/**
+ * Báo cáo không tạo được: lỗi đọc dữ liệu, quá thời gian cho phép hoặc bị hủy
+ */
+public class ReportException extends RuntimeException {
+    public ReportException(String message) {
+        super(message);
+    }
+
+    public ReportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
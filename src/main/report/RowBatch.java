@@ -0,0 +1,60 @@
+package main.report;
+
+/**
+ * Một lô giao dịch dạng cột mà ReportEngine đưa cho các Aggregator.
+ * Lô được dùng lại giữa các lần gọi nên aggregator không được giữ tham chiếu tới mảng sau khi accept trả về.
+ * createdHour chỉ có khi một aggregator cần giờ tạo giao dịch (xem {@link Aggregator#needsCreatedHour()}).
+ */
+public final class RowBatch {
+    public static final int CAPACITY = 1024;
+
+    final int[] ids = new int[CAPACITY];
+    final int[] epochDays = new int[CAPACITY];
+    final long[] amountsMinor = new long[CAPACITY];
+    final int[] categoryIds = new int[CAPACITY];
+    final boolean[] incomes = new boolean[CAPACITY];
+    final int[] createdHours = new int[CAPACITY];
+    int size;
+
+    RowBatch() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int i) {
+        return ids[i];
+    }
+
+    public int epochDay(int i) {
+        return epochDays[i];
+    }
+
+    public long amountMinor(int i) {
+        return amountsMinor[i];
+    }
+
+    public int categoryId(int i) {
+        return categoryIds[i];
+    }
+
+    public boolean isIncome(int i) {
+        return incomes[i];
+    }
+
+    /**
+     * Giờ tạo giao dịch (0-23), -1 nếu không rõ
+     */
+    public int createdHour(int i) {
+        return createdHours[i];
+    }
+
+    boolean isFull() {
+        return size == CAPACITY;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package main.view;
+
+import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Chạy các truy vấn của giao diện trên luồng nền thay vì EDT của Swing.
+ * Dùng virtual thread nếu JVM hỗ trợ (Java 21+), nếu không thì một pool luồng daemon cố định.
+ * Kết quả được đưa về EDT qua executor EDT; dùng Latest để bỏ kết quả của các yêu cầu đã cũ.
+ */
+public final class BackgroundExecutor {
+    // Chạy tác vụ trên EDT của Swing
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private BackgroundExecutor() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() chỉ có từ Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "pf-background-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, EXECUTOR);
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, EXECUTOR);
+    }
+
+    /**
+     * Một nguồn dữ liệu của panel: chỉ kết quả của yêu cầu mới nhất được áp dụng lên giao diện.
+     * Mọi phương thức gọi trên EDT.
+     */
+    public static final class Latest {
+        private final Consumer<Boolean> loadingListener;
+        private long generation = 0;
+
+        public Latest() {
+            this(null);
+        }
+
+        /**
+         * @param loadingListener nhận true khi bắt đầu tải và false khi yêu cầu mới nhất kết thúc (trên EDT)
+         */
+        public Latest(Consumer<Boolean> loadingListener) {
+            this.loadingListener = loadingListener;
+        }
+
+        /**
+         * Chạy loader trên luồng nền rồi gọi apply trên EDT, trừ khi đã có yêu cầu mới hơn
+         */
+        public <T> CompletableFuture<T> submit(Supplier<T> loader, Consumer<T> apply) {
+            long requestGeneration = ++generation;
+            setLoading(true);
+
+            CompletableFuture<T> future = supply(loader);
+            future.whenCompleteAsync((result, error) -> {
+                if (requestGeneration != generation) {
+                    return; // Đã có yêu cầu mới hơn, bỏ kết quả này
+                }
+                setLoading(false);
+                if (error != null) {
+                    error.printStackTrace();
+                    return;
+                }
+                apply.accept(result);
+            }, EDT);
+            return future;
+        }
+
+        /**
+         * Bỏ kết quả của yêu cầu đang chạy (nếu có)
+         */
+        public void cancel() {
+            generation++;
+            setLoading(false);
+        }
+
+        private void setLoading(boolean loading) {
+            if (loadingListener != null) {
+                loadingListener.accept(loading);
+            }
+        }
+    }
+}
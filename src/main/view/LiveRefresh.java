@@ -0,0 +1,94 @@
+package main.view;
+
+import main.event.ChangeBatch;
+import main.event.EventBus;
+
+import javax.swing.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.HierarchyEvent;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Làm mới một panel khi EventBus báo có thay đổi liên quan, thay vì làm mới mỗi lần chuyển tab.
+ * Panel đang hiển thị được làm mới ngay; panel đang ẩn chỉ bị đánh dấu và làm mới khi được hiện lại.
+ * Đăng ký với bus khi panel thuộc một cửa sổ đã hiển thị, hủy khi cửa sổ bị dispose. Chỉ dùng trên EDT.
+ * Panel tự áp dụng từng thay đổi (không cần đọc lại) thì dùng {@link #listen}.
+ */
+public final class LiveRefresh {
+    private final JComponent panel;
+    private final Predicate<ChangeBatch> relevant;
+    private final Runnable refresh;
+    private final Consumer<ChangeBatch> listener;
+    private EventBus.Subscription subscription;
+    private boolean stale = false;
+
+    private LiveRefresh(JComponent panel, Predicate<ChangeBatch> relevant, Runnable refresh,
+                        Consumer<ChangeBatch> listener) {
+        this.panel = panel;
+        this.relevant = relevant;
+        this.refresh = refresh;
+        this.listener = listener;
+    }
+
+    /**
+     * @param relevant chọn các batch làm dữ liệu của panel thay đổi (gọi trên EDT)
+     * @param refresh  đọc lại dữ liệu của panel
+     */
+    public static void install(JComponent panel, Predicate<ChangeBatch> relevant, Runnable refresh) {
+        LiveRefresh liveRefresh = new LiveRefresh(panel, relevant, refresh, null);
+        liveRefresh.attach();
+        panel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) {
+                liveRefresh.refreshIfStale();
+            }
+        });
+    }
+
+    /**
+     * Giao mọi batch cho listener trên EDT (kể cả khi panel đang ẩn), trong thời gian panel thuộc cửa sổ đang mở
+     */
+    public static void listen(JComponent panel, Consumer<ChangeBatch> listener) {
+        new LiveRefresh(panel, batch -> true, null, listener).attach();
+    }
+
+    private void attach() {
+        panel.addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+                updateSubscription();
+            }
+        });
+        updateSubscription();
+    }
+
+    private void updateSubscription() {
+        if (panel.isDisplayable() && subscription == null) {
+            subscription = EventBus.subscribe(this::onChange, BackgroundExecutor.EDT);
+        } else if (!panel.isDisplayable() && subscription != null) {
+            subscription.close();
+            subscription = null;
+        }
+    }
+
+    private void onChange(ChangeBatch batch) {
+        if (!relevant.test(batch)) {
+            return;
+        }
+        if (listener != null) {
+            listener.accept(batch);
+        } else if (panel.isShowing()) {
+            refresh.run();
+        } else {
+            stale = true;
+        }
+    }
+
+    private void refreshIfStale() {
+        if (stale) {
+            stale = false;
+            refresh.run();
+        }
+    }
+}
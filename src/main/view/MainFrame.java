@@ -1,7 +1,9 @@
 package main.view;
 
+import main.cache.LedgerCache;
+import main.cache.RangeSumIndex;
+import main.cache.ReportResultCache;
 import main.controller.AuthController;
-import main.controller.RecurringService;
 import main.view.components.DashboardPanel;
 import main.view.components.ReportPanel;
 import main.view.components.TransactionPanel;
@@ -24,11 +26,8 @@ public class MainFrame extends JFrame {
 
         initComponents();
 
-        SwingUtilities.invokeLater(() -> {
-            RecurringService.checkAndExecuteTasks(AuthController.getCurrentUser().getId());
-            // Sau khi chạy xong, refresh lại dashboard để thấy thay đổi (nếu có)
-            ((DashboardPanel) mainContentPanel.getComponent(0)).refreshData();
-        });
+        // Giao dịch định kỳ do RecurringScheduler (khởi động trong Main) chạy trên luồng nền;
+        // giao dịch được sinh ra phát sự kiện nên các panel tự làm mới.
     }
 
     private void initComponents() {
@@ -112,7 +111,6 @@ public class MainFrame extends JFrame {
                 btnDashboard.setBackground(new Color(0, 102, 204));
                 //btnDashboard.setForeground(Color.WHITE);
                 cardLayout.show(mainContentPanel, "DASHBOARD");
-                ((DashboardPanel) mainContentPanel.getComponent(0)).refreshData();
             }
         });
 
@@ -123,7 +121,6 @@ public class MainFrame extends JFrame {
                 btnTransactions.setBackground(new Color(0, 102, 204));
                 //btnTransactions.setForeground(Color.WHITE);
                 cardLayout.show(mainContentPanel, "TRANSACTIONS");
-                ((TransactionPanel) mainContentPanel.getComponent(1)).refreshTable();
             }
         });
 
@@ -134,7 +131,6 @@ public class MainFrame extends JFrame {
                 btnReports.setBackground(new Color(0, 102, 204));
                 //btnReports.setForeground(Color.WHITE);
                 cardLayout.show(mainContentPanel, "REPORTS");
-                ((ReportPanel) mainContentPanel.getComponent(2)).refreshCharts();
             }
         });
 
@@ -149,6 +145,11 @@ public class MainFrame extends JFrame {
                 );
 
                 if (confirm == JOptionPane.YES_OPTION) {
+                    // Giải phóng dữ liệu đã nạp vào bộ nhớ của người dùng này
+                    int userId = AuthController.getCurrentUser().getId();
+                    RangeSumIndex.invalidate(userId);
+                    LedgerCache.evict(userId);
+                    ReportResultCache.invalidate(userId);
                     AuthController.setCurrentUser(null);
                     new LoginFrame().setVisible(true);
                     dispose();
@@ -10,6 +10,7 @@ import java.awt.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 public class TransactionDialog extends JDialog {
@@ -19,6 +20,8 @@ public class TransactionDialog extends JDialog {
     private JButton btnSave, btnCancel, btnAddCategory;
     private boolean success = false;
     private Transaction transaction;
+    // Danh mục của loại đang chọn, cùng thứ tự với cmbCategory
+    private List<Category> categories = new ArrayList<>();
 
     // Khởi tạo Controller để sử dụng các hàm xử lý dữ liệu
     private TransactionController controller = new TransactionController();
@@ -148,17 +151,13 @@ public class TransactionDialog extends JDialog {
         // Lấy loại category (INCOME/EXPENSE)
         String type = cmbType.getSelectedItem().equals("Thu nhập") ? "INCOME" : "EXPENSE";
 
-        // GỌI CONTROLLER ĐỂ LẤY DỮ LIỆU (Thay vì gọi TransactionPanel)
-        // Lưu ý: controller.getCategories() hiện đang lấy all, bạn có thể cần lọc theo type
-        // ở phía client hoặc viết thêm hàm getCategoriesByType trong Controller.
-        // Tạm thời lọc ở đây:
-        List<Category> allCategories = controller.getCategories();
+        // Lấy từ từ điển danh mục trong bộ nhớ, đã lọc theo loại và người dùng
+        int userId = AuthController.getCurrentUser().getId();
+        categories = controller.getCategories(userId, type);
 
         cmbCategory.removeAllItems();
-        for (Category category : allCategories) {
-            if (category.getType().equals(type)) {
-                cmbCategory.addItem(category.getName());
-            }
+        for (Category category : categories) {
+            cmbCategory.addItem(category.getName());
         }
 
         if (cmbCategory.getItemCount() > 0) {
@@ -198,13 +197,9 @@ public class TransactionDialog extends JDialog {
             updateCategories();
 
             SwingUtilities.invokeLater(() -> {
-                String type = transaction.getType().equals("INCOME") ? "INCOME" : "EXPENSE";
-                // Dùng Controller
-                List<Category> categories = controller.getCategories();
-
-                for (Category cat : categories) {
-                    if (cat.getId() == transaction.getCategoryId()) {
-                        cmbCategory.setSelectedItem(cat.getName());
+                for (int i = 0; i < categories.size(); i++) {
+                    if (categories.get(i).getId() == transaction.getCategoryId()) {
+                        cmbCategory.setSelectedIndex(i);
                         break;
                     }
                 }
@@ -243,17 +238,11 @@ public class TransactionDialog extends JDialog {
             }
 
             String type = cmbType.getSelectedItem().equals("Thu nhập") ? "INCOME" : "EXPENSE";
-            String categoryName = (String) cmbCategory.getSelectedItem();
-
-            // Tìm ID của category đã chọn
-            List<Category> categories = controller.getCategories();
-            int categoryId = -1;
-            for (Category cat : categories) {
-                if (cat.getName().equals(categoryName) && cat.getType().equals(type)) {
-                    categoryId = cat.getId();
-                    break;
-                }
-            }
+
+            // ID của category đã chọn (cmbCategory cùng thứ tự với danh sách categories)
+            int selectedIndex = cmbCategory.getSelectedIndex();
+            int categoryId = selectedIndex >= 0 && selectedIndex < categories.size()
+                    ? categories.get(selectedIndex).getId() : -1;
 
             if (categoryId == -1) {
                 JOptionPane.showMessageDialog(this, "Danh mục không hợp lệ!", "Lỗi", JOptionPane.ERROR_MESSAGE);
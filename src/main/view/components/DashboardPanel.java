@@ -1,8 +1,12 @@
 package main.view.components;
 
 import main.controller.AuthController;
-import main.controller.TransactionController;
+import main.controller.ReportController;
+import main.model.DashboardSnapshot;
+import main.model.Money;
 import main.model.Transaction;
+import main.view.BackgroundExecutor;
+import main.view.LiveRefresh;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -13,10 +17,15 @@ import java.time.YearMonth;
 import java.util.List;
 
 public class DashboardPanel extends JPanel {
+    private static final int RECENT_LIMIT = 10;
+
     private JLabel lblTotalIncome, lblTotalExpense, lblBalance;
+    private JLabel lblIncomeChange, lblExpenseChange;
     private JTable recentTransactionsTable;
     private DefaultTableModel tableModel;
     private JComboBox<String> monthComboBox, yearComboBox;
+    private JLabel lblLoading;
+    private final BackgroundExecutor.Latest loader = new BackgroundExecutor.Latest(this::setLoading);
 
     public DashboardPanel() {
         setLayout(new BorderLayout(10, 10));
@@ -24,6 +33,10 @@ public class DashboardPanel extends JPanel {
 
         initComponents();
         refreshData();
+
+        // Tự làm mới khi giao dịch của người dùng thay đổi
+        int userId = AuthController.getCurrentUser().getId();
+        LiveRefresh.install(this, batch -> batch.affectsTransactions(userId), this::refreshData);
     }
 
     private void initComponents() {
@@ -53,11 +66,16 @@ public class DashboardPanel extends JPanel {
         JButton btnRefresh = new JButton("Làm mới");
         btnRefresh.addActionListener(e -> refreshData());
 
+        lblLoading = new JLabel("Đang tải...");
+        lblLoading.setForeground(Color.GRAY);
+        lblLoading.setVisible(false);
+
         filterPanel.add(new JLabel("Tháng:"));
         filterPanel.add(monthComboBox);
         filterPanel.add(new JLabel("Năm:"));
         filterPanel.add(yearComboBox);
         filterPanel.add(btnRefresh);
+        filterPanel.add(lblLoading);
 
         headerPanel.add(lblTitle, BorderLayout.WEST);
         headerPanel.add(filterPanel, BorderLayout.EAST);
@@ -80,10 +98,12 @@ public class DashboardPanel extends JPanel {
         // Income card
         JPanel incomeCard = createStatCard("Tổng thu nhập", "0 VND", new Color(46, 204, 113));
         lblTotalIncome = (JLabel) ((JPanel) incomeCard.getComponent(1)).getComponent(0);
+        lblIncomeChange = createChangeLabel(incomeCard);
 
         // Expense card
         JPanel expenseCard = createStatCard("Tổng chi tiêu", "0 VND", new Color(231, 76, 60));
         lblTotalExpense = (JLabel) ((JPanel) expenseCard.getComponent(1)).getComponent(0);
+        lblExpenseChange = createChangeLabel(expenseCard);
 
         // Balance card
         JPanel balanceCard = createStatCard("Số dư", "0 VND", new Color(52, 152, 219));
@@ -121,6 +141,15 @@ public class DashboardPanel extends JPanel {
         return card;
     }
 
+    // Dòng "so với tháng trước" ở cuối thẻ thống kê
+    private JLabel createChangeLabel(JPanel card) {
+        JLabel label = new JLabel(" ");
+        label.setFont(new Font("Arial", Font.PLAIN, 12));
+        label.setForeground(Color.GRAY);
+        card.add(label, BorderLayout.SOUTH);
+        return label;
+    }
+
     private JPanel createRecentTransactionsPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createTitledBorder("Giao dịch gần đây"));
@@ -151,32 +180,29 @@ public class DashboardPanel extends JPanel {
         int selectedYear = Integer.parseInt((String) yearComboBox.getSelectedItem());
 
         YearMonth yearMonth = YearMonth.of(selectedYear, selectedMonth);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-
         int userId = AuthController.getCurrentUser().getId();
 
-        // Get totals
-        BigDecimal totalIncome = TransactionController.getTotalIncome(userId, startDate, endDate);
-        BigDecimal totalExpense = TransactionController.getTotalExpense(userId, startDate, endDate);
-        BigDecimal balance = totalIncome.subtract(totalExpense);
+        // Một lần đọc trên luồng nền, cập nhật giao diện trên EDT
+        loader.submit(() -> ReportController.getDashboardSnapshot(userId, yearMonth, 0, RECENT_LIMIT),
+                this::applySnapshot);
+    }
 
+    private void applySnapshot(DashboardSnapshot snapshot) {
         // Update labels
-        lblTotalIncome.setText(formatCurrency(totalIncome));
-        lblTotalExpense.setText(formatCurrency(totalExpense));
-        lblBalance.setText(formatCurrency(balance));
+        lblTotalIncome.setText(formatCurrency(snapshot.getIncome()));
+        lblTotalExpense.setText(formatCurrency(snapshot.getExpense()));
+        lblBalance.setText(formatCurrency(snapshot.getBalance()));
+        lblIncomeChange.setText(formatChange(snapshot.getIncomeChange()));
+        lblExpenseChange.setText(formatChange(snapshot.getExpenseChange()));
 
         // Update recent transactions
-        updateRecentTransactions(userId);
+        updateRecentTransactions(snapshot.getRecentTransactions());
     }
 
-    private void updateRecentTransactions(int userId) {
+    private void updateRecentTransactions(List<Transaction> transactions) {
         // Clear table
         tableModel.setRowCount(0);
 
-        // Get recent transactions
-        List<Transaction> transactions = TransactionController.getRecentTransactions(userId, 10);
-
         // Add rows to table
         for (Transaction transaction : transactions) {
             Object[] row = {
@@ -190,7 +216,19 @@ public class DashboardPanel extends JPanel {
         }
     }
 
+    private void setLoading(boolean loading) {
+        lblLoading.setVisible(loading);
+    }
+
+    private String formatChange(BigDecimal change) {
+        return (change.signum() > 0 ? "+" : "") + change + "% so với tháng trước";
+    }
+
     private String formatCurrency(BigDecimal amount) {
         return String.format("%,d VND", amount.longValue());
     }
+
+    private String formatCurrency(Money amount) {
+        return String.format("%,d VND", amount.getUnits());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package main.view.components;
+
+import main.controller.TransactionController;
+import main.controller.TransactionQuery;
+import main.model.Transaction;
+import main.view.BackgroundExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * TableModel hiển thị các giao dịch thỏa một TransactionQuery (bộ lọc và ô tìm kiếm của TransactionPanel).
+ * Đọc từng trang limit dòng của query, cuộn tới dòng cuối thì đọc tiếp trang sau (query.nextPage).
+ * Chỉ kết quả của query mới nhất được hiển thị. Chỉ dùng trên EDT.
+ */
+public class FilteredTransactionTableModel extends TransactionTableModel {
+    public static final int PAGE_SIZE = Integer.getInteger("pf.filter.pageSize", 100);
+
+    private final BackgroundExecutor.Latest loader;
+    private final List<Transaction> rows = new ArrayList<>();
+    private TransactionQuery query;
+    private TransactionQuery nextQuery; // null nếu đã đọc hết
+    private boolean loadingMore = false;
+
+    /**
+     * @param loadingListener nhận true/false khi bắt đầu/kết thúc một lần đọc
+     */
+    public FilteredTransactionTableModel(Consumer<Boolean> loadingListener) {
+        this.loader = new BackgroundExecutor.Latest(loadingListener);
+    }
+
+    /**
+     * Hiển thị kết quả của query, đọc lại từ đầu
+     */
+    public void setQuery(TransactionQuery query) {
+        loadingMore = false;
+        loader.submit(() -> TransactionController.findTransactions(query), page -> {
+            this.query = query;
+            rows.clear();
+            rows.addAll(page);
+            nextQuery = query.nextPage(page);
+            fireTableDataChanged();
+        });
+    }
+
+    public TransactionQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Đọc lại query hiện tại sau khi giao dịch thay đổi, giữ số dòng đã đọc để bảng không bị cuộn về đầu
+     */
+    public void refresh() {
+        if (query == null) {
+            return;
+        }
+        // Không giới hạn số dòng thì đọc lại đúng query, nếu không thì đọc lại đủ số dòng đang hiển thị
+        TransactionQuery reload = query.getLimit() == 0 ? query : query.withLimit(Math.max(query.getLimit(), rows.size()));
+        TransactionQuery current = query;
+        loadingMore = false;
+        loader.submit(() -> TransactionController.findTransactions(reload), page -> {
+            rows.clear();
+            rows.addAll(page);
+            // Trang sau tiếp tục theo limit của query gốc
+            nextQuery = page.size() < reload.getLimit() ? null : current.continueAfter(page);
+            fireTableDataChanged();
+        });
+    }
+
+    // Đọc trang kế tiếp và nối vào cuối bảng
+    private void loadMore() {
+        if (loadingMore || nextQuery == null) {
+            return;
+        }
+        loadingMore = true;
+        TransactionQuery pageQuery = nextQuery;
+        loader.submit(() -> TransactionController.findTransactions(pageQuery), page -> {
+            loadingMore = false;
+            int first = rows.size();
+            rows.addAll(page);
+            nextQuery = pageQuery.nextPage(page);
+            if (rows.size() > first) {
+                fireTableRowsInserted(first, rows.size() - 1);
+            }
+        });
+    }
+
+    @Override
+    public Transaction getTransactionAt(int row) {
+        return row >= 0 && row < rows.size() ? rows.get(row) : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Transaction t = getTransactionAt(row);
+        if (t == null) {
+            return null;
+        }
+        // Người dùng đã cuộn tới dòng cuối: đọc tiếp
+        if (row == rows.size() - 1) {
+            loadMore();
+        }
+        return columnValue(t, column);
+    }
+}
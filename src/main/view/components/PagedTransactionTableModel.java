@@ -0,0 +1,430 @@
+package main.view.components;
+
+import main.cache.CategoryDictionary;
+import main.controller.TransactionController;
+import main.event.ChangeBatch;
+import main.event.ChangeEvent;
+import main.model.Transaction;
+import main.model.TransactionPageIndex;
+import main.view.BackgroundExecutor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * TableModel đọc giao dịch theo trang khi bảng cần hiển thị (cuộn tới đâu tải tới đó).
+ * Mỗi trang là một khoảng khóa (ngày, id) giữa hai mốc của mục lục TransactionPageIndex và được đọc bằng keyset,
+ * giữ tối đa MAX_CACHED_PAGES trang gần dùng nhất và tải trước trang kế tiếp trên luồng nền.
+ * Thêm/sửa/xóa một giao dịch chỉ cập nhật trang chứa nó và số dòng của trang (cây Fenwick),
+ * rồi phát đúng một sự kiện fireTableRows*, không đọc lại toàn bộ bảng.
+ * Chỉ dùng trên EDT.
+ */
+public class PagedTransactionTableModel extends TransactionTableModel {
+    public static final int PAGE_SIZE = Integer.getInteger("pf.table.pageSize", 200);
+    private static final int MAX_CACHED_PAGES = Integer.getInteger("pf.table.cachedPages", 16);
+
+    private static final String LOADING = "Đang tải...";
+
+    // LRU theo thứ tự truy cập: trang lâu không dùng bị bỏ khi vượt MAX_CACHED_PAGES
+    private final Map<Integer, List<Transaction>> pages = new LinkedHashMap<Integer, List<Transaction>>(32, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Transaction>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Trang đang tải -> mã của lần tải; trang bị thay đổi trong lúc tải thì kết quả tải bị bỏ
+    private final Map<Integer, Integer> loadingPages = new HashMap<>();
+    private int nextLoadToken = 0;
+
+    private final BackgroundExecutor.Latest indexLoader;
+    private int userId;
+    // Trang p chứa các dòng có khóa trong (pageEnds[p - 1], pageEnds[p]], trang cuối không có mốc dưới
+    private List<TransactionPageIndex.Key> pageEnds = new ArrayList<>();
+    private PageSizes pageSizes = new PageSizes(new int[]{0});
+    private boolean reloading = false;
+    // Tăng mỗi lần reload hoặc chia trang, các trang đang tải theo mục lục cũ bị bỏ qua
+    private int generation = 0;
+
+    /**
+     * @param loadingListener nhận true/false khi bắt đầu/kết thúc dựng lại mục lục
+     */
+    public PagedTransactionTableModel(Consumer<Boolean> loadingListener) {
+        this.indexLoader = new BackgroundExecutor.Latest(loadingListener);
+    }
+
+    /**
+     * Dựng lại mục lục và xóa các trang đã tải (gọi khi đổi người dùng hoặc thay đổi hàng loạt)
+     */
+    public void reload(int userId) {
+        // Ghi nhận người dùng ngay: các thay đổi đến trong lúc dựng lại được lọc theo người dùng này
+        this.userId = userId;
+        reloading = true;
+        indexLoader.submit(() -> {
+            TransactionPageIndex newIndex = TransactionController.getTransactionPageIndex(userId, PAGE_SIZE);
+            // Tải luôn trang đầu để bảng hiện ngay dữ liệu
+            List<Transaction> firstPage = TransactionController.getTransactionsPage(userId, null, PAGE_SIZE);
+            return new Reload(newIndex, firstPage);
+        }, reload -> {
+            reloading = false;
+            generation++;
+            pageEnds = new ArrayList<>(reload.index.getPageEnds());
+            int[] sizes = new int[pageEnds.size() + 1];
+            for (int p = 0; p < sizes.length; p++) {
+                sizes[p] = Math.min(PAGE_SIZE, reload.index.getRowCount() - p * PAGE_SIZE);
+            }
+            pageSizes = new PageSizes(sizes);
+            pages.clear();
+            loadingPages.clear();
+            pages.put(0, reload.firstPage);
+            fireTableDataChanged();
+        });
+    }
+
+    /**
+     * Áp dụng các thay đổi giao dịch của người dùng đang hiển thị.
+     * Trả về số dòng được thêm trừ số dòng bị xóa ở trước anchorRow, để bảng giữ nguyên các dòng đang xem.
+     */
+    public int applyChanges(ChangeBatch batch, int anchorRow) {
+        if (reloading) {
+            // Mục lục đang dựng lại có thể đã gồm hoặc chưa gồm các thay đổi này, dựng lại lần nữa cho chắc
+            if (batch.affectsTransactions(userId)) {
+                reload(userId);
+            }
+            return 0;
+        }
+
+        int shift = 0;
+        for (ChangeEvent event : batch.getEvents()) {
+            if (event.getUserId() != userId) {
+                continue;
+            }
+            if (event instanceof ChangeEvent.TransactionsImported) {
+                reload(userId);
+                return 0;
+            }
+            if (event instanceof ChangeEvent.TransactionAdded) {
+                shift += insert(((ChangeEvent.TransactionAdded) event).getTransaction(), anchorRow);
+            } else if (event instanceof ChangeEvent.TransactionUpdated) {
+                ChangeEvent.TransactionUpdated updated = (ChangeEvent.TransactionUpdated) event;
+                Transaction old = updated.getOldTransaction();
+                Transaction t = updated.getTransaction();
+                if (old.getTransactionDate().equals(t.getTransactionDate())) {
+                    update(t);
+                } else {
+                    // Đổi ngày thì đổi vị trí: xóa ở chỗ cũ, thêm vào chỗ mới
+                    shift += remove(old, anchorRow);
+                    shift += insert(t, anchorRow);
+                }
+            } else if (event instanceof ChangeEvent.TransactionDeleted) {
+                shift += remove(((ChangeEvent.TransactionDeleted) event).getTransaction(), anchorRow);
+            }
+        }
+        return shift;
+    }
+
+    /**
+     * Giao dịch ở dòng row, null nếu trang chứa dòng đó chưa được tải
+     */
+    @Override
+    public Transaction getTransactionAt(int row) {
+        if (row < 0 || row >= getRowCount()) {
+            return null;
+        }
+        int page = pageSizes.pageOf(row);
+        List<Transaction> rows = pages.get(page);
+        int offset = row - pageSizes.prefix(page);
+        if (rows == null || offset >= rows.size()) {
+            return null;
+        }
+        return rows.get(offset);
+    }
+
+    @Override
+    public int getRowCount() {
+        return pageSizes.total();
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Transaction t = getTransactionAt(row);
+        if (t == null) {
+            if (row >= 0 && row < getRowCount()) {
+                requestPage(pageSizes.pageOf(row));
+            }
+            return column == 1 ? LOADING : null;
+        }
+        // Người dùng đang xem trang này: tải trước trang kế tiếp
+        requestPage(pageSizes.pageOf(row) + 1);
+
+        return columnValue(t, column);
+    }
+
+    // Thêm một dòng vào đúng vị trí; trả về 1 nếu dòng nằm trước anchorRow
+    private int insert(Transaction source, int anchorRow) {
+        Transaction t = withCategoryName(source);
+        int page = pageOf(t.getTransactionDate(), t.getId());
+        List<Transaction> rows = pages.get(page);
+        int offset = 0;
+        if (rows != null) {
+            offset = search(rows, t.getTransactionDate(), t.getId());
+            if (offset >= 0) {
+                // Đã có trong trang (trang được tải sau khi giao dịch được thêm)
+                rows.set(offset, t);
+                int row = pageSizes.prefix(page) + offset;
+                fireTableRowsUpdated(row, row);
+                return 0;
+            }
+            offset = -offset - 1;
+            rows.add(offset, t);
+        } else {
+            // Trang chưa tải hiện toàn "Đang tải...", vị trí trong trang không quan trọng
+            loadingPages.remove(page);
+        }
+        pageSizes.add(page, 1);
+
+        int row = pageSizes.prefix(page) + offset;
+        fireTableRowsInserted(row, row);
+        if (rows != null && rows.size() > 2 * PAGE_SIZE) {
+            split(page, rows);
+        }
+        return row < anchorRow ? 1 : 0;
+    }
+
+    // Xóa dòng có khóa của t; trả về -1 nếu dòng nằm trước anchorRow
+    private int remove(Transaction t, int anchorRow) {
+        int page = pageOf(t.getTransactionDate(), t.getId());
+        List<Transaction> rows = pages.get(page);
+        int offset = 0;
+        if (rows != null) {
+            offset = search(rows, t.getTransactionDate(), t.getId());
+            if (offset < 0) {
+                return 0; // Trang đã tải không có dòng này
+            }
+            rows.remove(offset);
+        } else {
+            if (pageSizes.size(page) == 0) {
+                return 0;
+            }
+            loadingPages.remove(page);
+        }
+        pageSizes.add(page, -1);
+
+        int row = pageSizes.prefix(page) + offset;
+        fireTableRowsDeleted(row, row);
+        return row < anchorRow ? -1 : 0;
+    }
+
+    // Sửa tại chỗ (khóa không đổi); trang chưa tải thì khi tải sẽ có bản mới
+    private void update(Transaction source) {
+        int page = pageOf(source.getTransactionDate(), source.getId());
+        List<Transaction> rows = pages.get(page);
+        if (rows == null) {
+            loadingPages.remove(page);
+            return;
+        }
+        int offset = search(rows, source.getTransactionDate(), source.getId());
+        if (offset < 0) {
+            return;
+        }
+        rows.set(offset, withCategoryName(source));
+        int row = pageSizes.prefix(page) + offset;
+        fireTableRowsUpdated(row, row);
+    }
+
+    // Trang quá lớn vì được thêm nhiều dòng: tách đôi để đọc lại trang không quá nặng
+    private void split(int page, List<Transaction> rows) {
+        Transaction last = rows.get(PAGE_SIZE - 1);
+        pageEnds.add(page, new TransactionPageIndex.Key(last.getTransactionDate(), last.getId()));
+
+        int[] sizes = new int[pageEnds.size() + 1];
+        for (int p = 0; p < sizes.length; p++) {
+            sizes[p] = p < page ? pageSizes.size(p)
+                    : p == page ? PAGE_SIZE
+                    : p == page + 1 ? rows.size() - PAGE_SIZE
+                    : pageSizes.size(p - 1);
+        }
+        pageSizes = new PageSizes(sizes);
+
+        // Đánh số lại các trang đã tải sau trang bị tách
+        Map<Integer, List<Transaction>> shifted = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Transaction>> entry : pages.entrySet()) {
+            int p = entry.getKey();
+            if (p == page) {
+                shifted.put(page, new ArrayList<>(rows.subList(0, PAGE_SIZE)));
+                shifted.put(page + 1, new ArrayList<>(rows.subList(PAGE_SIZE, rows.size())));
+            } else {
+                shifted.put(p < page ? p : p + 1, entry.getValue());
+            }
+        }
+        pages.clear();
+        pages.putAll(shifted);
+        generation++;
+        loadingPages.clear();
+    }
+
+    // Trang chứa khóa (date, id): trang đầu tiên có mốc không đứng trước khóa
+    private int pageOf(LocalDate date, int id) {
+        int low = 0;
+        int high = pageEnds.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            TransactionPageIndex.Key end = pageEnds.get(mid);
+            if (compare(date, id, end.getDate(), end.getId()) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Vị trí của khóa trong trang theo kiểu Collections.binarySearch (âm nếu không có)
+    private static int search(List<Transaction> rows, LocalDate date, int id) {
+        int low = 0;
+        int high = rows.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Transaction t = rows.get(mid);
+            int cmp = compare(t.getTransactionDate(), t.getId(), date, id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Thứ tự của bảng: ngày giảm dần, id giảm dần (âm nếu khóa a đứng trước khóa b)
+    private static int compare(LocalDate dateA, int idA, LocalDate dateB, int idB) {
+        int cmp = dateB.compareTo(dateA);
+        return cmp != 0 ? cmp : Integer.compare(idB, idA);
+    }
+
+    // Bản sao có tên danh mục (sự kiện chỉ mang category_id, và bảng không dùng chung đối tượng với hộp thoại)
+    private static Transaction withCategoryName(Transaction source) {
+        Transaction t = source.copy();
+        CategoryDictionary categories = CategoryDictionary.get();
+        if (categories != null) {
+            t.setCategoryName(categories.name(t.getCategoryId()));
+        }
+        return t;
+    }
+
+    // Tải trang trên luồng nền nếu chưa có trong cache và chưa đang tải
+    private void requestPage(int pageNumber) {
+        if (pageNumber >= pageSizes.pageCount() || pages.containsKey(pageNumber)
+                || loadingPages.containsKey(pageNumber)) {
+            return;
+        }
+
+        int token = ++nextLoadToken;
+        loadingPages.put(pageNumber, token);
+        int loadGeneration = generation;
+        int loadUserId = userId;
+        TransactionPageIndex.Key after = pageNumber == 0 ? null : pageEnds.get(pageNumber - 1);
+        int limit = pageSizes.size(pageNumber);
+
+        BackgroundExecutor.supply(() -> TransactionController.getTransactionsPage(loadUserId, after, limit))
+                .whenCompleteAsync((page, error) -> {
+                    if (loadGeneration != generation || !Integer.valueOf(token).equals(loadingPages.get(pageNumber))) {
+                        return;
+                    }
+                    loadingPages.remove(pageNumber);
+                    if (error != null) {
+                        error.printStackTrace();
+                        return;
+                    }
+                    pages.put(pageNumber, page);
+                    int firstRow = pageSizes.prefix(pageNumber);
+                    int lastRow = firstRow + pageSizes.size(pageNumber) - 1;
+                    if (lastRow >= firstRow) {
+                        fireTableRowsUpdated(firstRow, lastRow);
+                    }
+                }, BackgroundExecutor.EDT);
+    }
+
+    /**
+     * Số dòng của từng trang trên cây Fenwick: đổi số dòng một trang và tìm trang chứa một dòng đều O(log số trang)
+     */
+    private static final class PageSizes {
+        private final int[] sizes;
+        private final int[] tree;
+        private int total;
+
+        PageSizes(int[] sizes) {
+            this.sizes = sizes;
+            this.tree = new int[sizes.length + 1];
+            for (int p = 0; p < sizes.length; p++) {
+                total += sizes[p];
+                int i = p + 1;
+                tree[i] += sizes[p];
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+
+        int pageCount() {
+            return sizes.length;
+        }
+
+        int total() {
+            return total;
+        }
+
+        int size(int page) {
+            return sizes[page];
+        }
+
+        void add(int page, int delta) {
+            sizes[page] += delta;
+            total += delta;
+            for (int i = page + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        // Số dòng của các trang trước page
+        int prefix(int page) {
+            int sum = 0;
+            for (int i = page; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        // Trang chứa dòng row (0 <= row < total)
+        int pageOf(int row) {
+            int position = 0;
+            int remaining = row;
+            for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+                int next = position + step;
+                if (next < tree.length && tree[next] <= remaining) {
+                    position = next;
+                    remaining -= tree[next];
+                }
+            }
+            return position;
+        }
+    }
+
+    // Kết quả dựng lại mục lục kèm trang đầu tiên
+    private static class Reload {
+        private final TransactionPageIndex index;
+        private final List<Transaction> firstPage;
+
+        Reload(TransactionPageIndex index, List<Transaction> firstPage) {
+            this.index = index;
+            this.firstPage = firstPage;
+        }
+    }
+}
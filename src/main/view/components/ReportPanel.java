@@ -1,8 +1,11 @@
 package main.view.components;
 
 import main.controller.AuthController;
+import main.controller.ReportController;
 import main.controller.TransactionController;
-import main.model.Transaction;
+import main.model.Money;
+import main.view.BackgroundExecutor;
+import main.view.LiveRefresh;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -10,11 +13,13 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 public class ReportPanel extends JPanel {
     private JComboBox<String> reportTypeCombo;
@@ -22,6 +27,8 @@ public class ReportPanel extends JPanel {
     private JButton btnGenerate, btnExport;
     private JPanel chartPanel;
     private CardLayout chartCardLayout;
+    private JLabel lblLoading;
+    private final BackgroundExecutor.Latest loader = new BackgroundExecutor.Latest(this::setLoading);
 
     public ReportPanel() {
         setLayout(new BorderLayout(10, 10));
@@ -29,6 +36,10 @@ public class ReportPanel extends JPanel {
 
         initComponents();
         refreshCharts();
+
+        // Tự làm mới khi giao dịch của người dùng thay đổi
+        int userId = AuthController.getCurrentUser().getId();
+        LiveRefresh.install(this, batch -> batch.affectsTransactions(userId), this::refreshCharts);
     }
 
     private void initComponents() {
@@ -72,6 +83,11 @@ public class ReportPanel extends JPanel {
         controlPanel.add(btnGenerate);
         controlPanel.add(btnExport);
 
+        lblLoading = new JLabel("Đang tải...");
+        lblLoading.setForeground(Color.GRAY);
+        lblLoading.setVisible(false);
+        controlPanel.add(lblLoading);
+
         headerPanel.add(lblTitle, BorderLayout.WEST);
         headerPanel.add(controlPanel, BorderLayout.EAST);
 
@@ -130,9 +146,6 @@ public class ReportPanel extends JPanel {
         table.getTableHeader().setBackground(new Color(52, 152, 219));
         table.getTableHeader().setForeground(Color.WHITE);
 
-        // Add some sample data
-        updateExpenseTable(tableModel);
-
         JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setPreferredSize(new Dimension(600, 400));
 
@@ -142,31 +155,20 @@ public class ReportPanel extends JPanel {
         return panel;
     }
 
-    private void updateExpenseTable(DefaultTableModel tableModel) {
+    private void updateExpenseTable(DefaultTableModel tableModel, List<Object[]> expenseByCategory) {
         tableModel.setRowCount(0);
 
-        int selectedMonth = monthCombo.getSelectedIndex() + 1;
-        int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
-        YearMonth yearMonth = YearMonth.of(selectedYear, selectedMonth);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-
-        int userId = AuthController.getCurrentUser().getId();
-        List<Object[]> expenseByCategory = TransactionController.getExpenseByCategory(
-                userId, startDate, endDate);
-
-        BigDecimal totalExpense = BigDecimal.ZERO;
+        Money totalExpense = Money.ZERO;
         for (Object[] row : expenseByCategory) {
-            BigDecimal amount = (BigDecimal) row[1];
-            totalExpense = totalExpense.add(amount);
+            totalExpense = totalExpense.plus(Money.of((BigDecimal) row[1]));
         }
 
         // Add rows to table
         for (Object[] row : expenseByCategory) {
             String category = (String) row[0];
-            BigDecimal amount = (BigDecimal) row[1];
-            BigDecimal percentage = totalExpense.compareTo(BigDecimal.ZERO) > 0 ?
-                    amount.multiply(BigDecimal.valueOf(100)).divide(totalExpense, 1, RoundingMode.HALF_UP) :
+            Money amount = Money.of((BigDecimal) row[1]);
+            BigDecimal percentage = totalExpense.isPositive() ?
+                    Money.percent(amount.getMinor(), totalExpense.getMinor(), 1) :
                     BigDecimal.ZERO;
 
             Object[] tableRow = {
@@ -201,26 +203,17 @@ public class ReportPanel extends JPanel {
         gbc.insets = new Insets(10, 10, 10, 10);
         gbc.fill = GridBagConstraints.HORIZONTAL;
 
-        updateIncomeExpenseVisualization(visualizationPanel);
-
         panel.add(titleLabel, BorderLayout.NORTH);
         panel.add(visualizationPanel, BorderLayout.CENTER);
 
         return panel;
     }
 
-    private void updateIncomeExpenseVisualization(JPanel panel) {
+    private void updateIncomeExpenseVisualization(JPanel panel, Money totalIncome, Money totalExpense) {
         panel.removeAll();
 
-        int selectedMonth = monthCombo.getSelectedIndex() + 1;
-        int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
-        YearMonth yearMonth = YearMonth.of(selectedYear, selectedMonth);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-
-        int userId = AuthController.getCurrentUser().getId();
-        BigDecimal totalIncome = TransactionController.getTotalIncome(userId, startDate, endDate);
-        BigDecimal totalExpense = TransactionController.getTotalExpense(userId, startDate, endDate);
+        // Thanh tiến trình tính theo phần trăm để không tràn int khi số tiền lớn
+        Money total = totalIncome.plus(totalExpense);
 
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.insets = new Insets(10, 10, 10, 10);
@@ -245,8 +238,8 @@ public class ReportPanel extends JPanel {
         gbc.gridx = 0;
         gbc.gridy = 1;
         gbc.gridwidth = 2;
-        JProgressBar incomeBar = new JProgressBar(0, totalIncome.add(totalExpense).intValue());
-        incomeBar.setValue(totalIncome.intValue());
+        JProgressBar incomeBar = new JProgressBar(0, 100);
+        incomeBar.setValue(shareOf(totalIncome, total));
         incomeBar.setForeground(new Color(46, 204, 113));
         incomeBar.setString(formatCurrency(totalIncome));
         incomeBar.setStringPainted(true);
@@ -269,8 +262,8 @@ public class ReportPanel extends JPanel {
         gbc.gridx = 0;
         gbc.gridy = 3;
         gbc.gridwidth = 2;
-        JProgressBar expenseBar = new JProgressBar(0, totalIncome.add(totalExpense).intValue());
-        expenseBar.setValue(totalExpense.intValue());
+        JProgressBar expenseBar = new JProgressBar(0, 100);
+        expenseBar.setValue(shareOf(totalExpense, total));
         expenseBar.setForeground(new Color(231, 76, 60));
         expenseBar.setString(formatCurrency(totalExpense));
         expenseBar.setStringPainted(true);
@@ -285,7 +278,7 @@ public class ReportPanel extends JPanel {
 
         gbc.gridx = 1;
         gbc.gridy = 4;
-        BigDecimal balance = totalIncome.subtract(totalExpense);
+        Money balance = totalIncome.minus(totalExpense);
         JLabel lblBalanceValue = new JLabel(formatCurrency(balance));
         lblBalanceValue.setFont(new Font("Arial", Font.BOLD, 14));
         lblBalanceValue.setForeground(new Color(52, 152, 219));
@@ -295,15 +288,12 @@ public class ReportPanel extends JPanel {
         gbc.gridy = 5;
         gbc.gridwidth = 2;
         JProgressBar balanceBar = new JProgressBar(0, 100);
-        if (totalIncome.compareTo(BigDecimal.ZERO) > 0) {
-            int balancePercent = balance.multiply(BigDecimal.valueOf(100))
-                    .divide(totalIncome, 0, RoundingMode.HALF_UP).intValue();
-            balanceBar.setValue(Math.max(0, balancePercent));
+        if (totalIncome.isPositive()) {
+            balanceBar.setValue(Math.max(0, shareOf(balance, totalIncome)));
         }
         balanceBar.setForeground(new Color(52, 152, 219));
-        balanceBar.setString("Tỷ lệ tiết kiệm: " + (totalIncome.compareTo(BigDecimal.ZERO) > 0 ?
-                balance.multiply(BigDecimal.valueOf(100))
-                        .divide(totalIncome, 1, RoundingMode.HALF_UP) + "%" : "0%"));
+        balanceBar.setString("Tỷ lệ tiết kiệm: " + (totalIncome.isPositive() ?
+                Money.percent(balance.getMinor(), totalIncome.getMinor(), 1) + "%" : "0%"));
         balanceBar.setStringPainted(true);
         panel.add(balanceBar, gbc);
 
@@ -333,9 +323,6 @@ public class ReportPanel extends JPanel {
         table.getTableHeader().setBackground(new Color(52, 152, 219));
         table.getTableHeader().setForeground(Color.WHITE);
 
-        // Add data
-        updateTrendTable(tableModel);
-
         JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setPreferredSize(new Dimension(600, 400));
 
@@ -345,37 +332,24 @@ public class ReportPanel extends JPanel {
         return panel;
     }
 
-    private void updateTrendTable(DefaultTableModel tableModel) {
+    private void updateTrendTable(DefaultTableModel tableModel, List<MonthTotals> trend) {
         tableModel.setRowCount(0);
 
-        int userId = AuthController.getCurrentUser().getId();
-        LocalDate endDate = LocalDate.now().withDayOfMonth(1).plusMonths(1).minusDays(1);
-        LocalDate startDate = endDate.minusMonths(6).withDayOfMonth(1);
-
-        // Create monthly data
-        LocalDate currentMonth = startDate.withDayOfMonth(1);
-
-        BigDecimal grandTotalIncome = BigDecimal.ZERO;
-        BigDecimal grandTotalExpense = BigDecimal.ZERO;
+        Money grandTotalIncome = Money.ZERO;
+        Money grandTotalExpense = Money.ZERO;
 
-        while (!currentMonth.isAfter(endDate)) {
-            YearMonth yearMonth = YearMonth.from(currentMonth);
-            LocalDate monthStart = yearMonth.atDay(1);
-            LocalDate monthEnd = yearMonth.atEndOfMonth();
-
-            BigDecimal monthlyIncome = TransactionController.getTotalIncome(userId, monthStart, monthEnd);
-            BigDecimal monthlyExpense = TransactionController.getTotalExpense(userId, monthStart, monthEnd);
-            BigDecimal monthlyBalance = monthlyIncome.subtract(monthlyExpense);
+        for (MonthTotals month : trend) {
+            Money monthlyIncome = month.income;
+            Money monthlyExpense = month.expense;
+            Money monthlyBalance = monthlyIncome.minus(monthlyExpense);
 
             String savingsRate = "0%";
-            if (monthlyIncome.compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal rate = monthlyBalance.multiply(BigDecimal.valueOf(100))
-                        .divide(monthlyIncome, 1, RoundingMode.HALF_UP);
-                savingsRate = rate + "%";
+            if (monthlyIncome.isPositive()) {
+                savingsRate = Money.percent(monthlyBalance.getMinor(), monthlyIncome.getMinor(), 1) + "%";
             }
 
             Object[] row = {
-                    currentMonth.format(DateTimeFormatter.ofPattern("MM/yyyy")),
+                    month.month.format(DateTimeFormatter.ofPattern("MM/yyyy")),
                     formatCurrency(monthlyIncome),
                     formatCurrency(monthlyExpense),
                     formatCurrency(monthlyBalance),
@@ -383,19 +357,15 @@ public class ReportPanel extends JPanel {
             };
             tableModel.addRow(row);
 
-            grandTotalIncome = grandTotalIncome.add(monthlyIncome);
-            grandTotalExpense = grandTotalExpense.add(monthlyExpense);
-
-            currentMonth = currentMonth.plusMonths(1);
+            grandTotalIncome = grandTotalIncome.plus(monthlyIncome);
+            grandTotalExpense = grandTotalExpense.plus(monthlyExpense);
         }
 
         // Add total row
-        BigDecimal grandTotalBalance = grandTotalIncome.subtract(grandTotalExpense);
+        Money grandTotalBalance = grandTotalIncome.minus(grandTotalExpense);
         String grandTotalSavingsRate = "0%";
-        if (grandTotalIncome.compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal rate = grandTotalBalance.multiply(BigDecimal.valueOf(100))
-                    .divide(grandTotalIncome, 1, RoundingMode.HALF_UP);
-            grandTotalSavingsRate = rate + "%";
+        if (grandTotalIncome.isPositive()) {
+            grandTotalSavingsRate = Money.percent(grandTotalBalance.getMinor(), grandTotalIncome.getMinor(), 1) + "%";
         }
 
         Object[] totalRow = {
@@ -489,72 +459,93 @@ public class ReportPanel extends JPanel {
     }
 
     public void refreshCharts() {
+        int userId = AuthController.getCurrentUser().getId();
+        int selectedMonth = monthCombo.getSelectedIndex() + 1;
+        int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
+
+        // Truy vấn trên luồng nền, cập nhật giao diện trên EDT
+        loader.submit(() -> loadReportData(userId, selectedYear, selectedMonth), this::applyReportData);
+    }
+
+    private void applyReportData(ReportData data) {
         // Update expense table
         JPanel tablePanel = (JPanel) chartPanel.getComponent(0);
         JScrollPane scrollPane = (JScrollPane) tablePanel.getComponent(1);
         JTable table = (JTable) scrollPane.getViewport().getView();
-        updateExpenseTable((DefaultTableModel) table.getModel());
+        updateExpenseTable((DefaultTableModel) table.getModel(), data.expenseByCategory);
 
         // Update income/expense visualization
         JPanel summaryPanel = (JPanel) chartPanel.getComponent(1);
         JPanel visualizationPanel = (JPanel) summaryPanel.getComponent(1);
-        updateIncomeExpenseVisualization(visualizationPanel);
+        updateIncomeExpenseVisualization(visualizationPanel, data.totalIncome, data.totalExpense);
 
         // Update trend table
         JPanel trendPanel = (JPanel) chartPanel.getComponent(2);
         JScrollPane trendScrollPane = (JScrollPane) trendPanel.getComponent(1);
         JTable trendTable = (JTable) trendScrollPane.getViewport().getView();
-        updateTrendTable((DefaultTableModel) trendTable.getModel());
+        updateTrendTable((DefaultTableModel) trendTable.getModel(), data.trend);
 
-        // Update statistics
-        updateStatistics();
+        // Update stat cards
+        updateStatCard(0, formatCurrency(data.avgIncome));
+        updateStatCard(1, formatCurrency(data.avgExpense));
+        updateStatCard(2, formatCurrency(data.highestIncome));
+        updateStatCard(3, formatCurrency(data.highestExpense));
 
         // Repaint
         chartPanel.revalidate();
         chartPanel.repaint();
     }
 
-    private void updateStatistics() {
-        int userId = AuthController.getCurrentUser().getId();
-        int selectedMonth = monthCombo.getSelectedIndex() + 1;
-        int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
+    /**
+     * Đọc toàn bộ dữ liệu của các bảng báo cáo (chạy trên luồng nền, không đụng tới Swing)
+     */
+    private static ReportData loadReportData(int userId, int selectedYear, int selectedMonth) {
+        ReportData data = new ReportData();
+
+        // Tháng đang chọn: phân bổ chi tiêu và so sánh thu chi
+        YearMonth yearMonth = YearMonth.of(selectedYear, selectedMonth);
+        LocalDate startDate = yearMonth.atDay(1);
+        LocalDate endDate = yearMonth.atEndOfMonth();
+        data.expenseByCategory = TransactionController.getExpenseByCategory(userId, startDate, endDate);
+        data.totalIncome = TransactionController.getTotalIncome(userId, startDate, endDate);
+        data.totalExpense = TransactionController.getTotalExpense(userId, startDate, endDate);
+
+        // Xu hướng 6 tháng gần đây
+        LocalDate trendEnd = LocalDate.now().withDayOfMonth(1).plusMonths(1).minusDays(1);
+        LocalDate currentMonth = trendEnd.minusMonths(6).withDayOfMonth(1);
+        while (!currentMonth.isAfter(trendEnd)) {
+            YearMonth month = YearMonth.from(currentMonth);
+            LocalDate monthStart = month.atDay(1);
+            LocalDate monthEnd = month.atEndOfMonth();
+            data.trend.add(new MonthTotals(currentMonth,
+                    TransactionController.getTotalIncome(userId, monthStart, monthEnd),
+                    TransactionController.getTotalExpense(userId, monthStart, monthEnd)));
+            currentMonth = currentMonth.plusMonths(1);
+        }
 
+        loadStatistics(data, userId, selectedYear, selectedMonth);
+        return data;
+    }
+
+    private static void loadStatistics(ReportData data, int userId, int selectedYear, int selectedMonth) {
         // Calculate statistics for the last 6 months
         LocalDate endDate = LocalDate.of(selectedYear, selectedMonth, 1).plusMonths(1).minusDays(1);
         LocalDate startDate = endDate.minusMonths(6).withDayOfMonth(1);
 
-        BigDecimal totalIncome = BigDecimal.ZERO;
-        BigDecimal totalExpense = BigDecimal.ZERO;
-        BigDecimal highestIncome = BigDecimal.ZERO;
-        BigDecimal highestExpense = BigDecimal.ZERO;
-
-        // Get transactions for the period
-        List<Transaction> transactions =
-                TransactionController.getTransactionsByUser(userId, startDate, endDate);
-
-        for (Transaction t : transactions) {
-            if (t.getType().equals("INCOME")) {
-                totalIncome = totalIncome.add(t.getAmount());
-                if (t.getAmount().compareTo(highestIncome) > 0) {
-                    highestIncome = t.getAmount();
-                }
-            } else {
-                totalExpense = totalExpense.add(t.getAmount());
-                if (t.getAmount().compareTo(highestExpense) > 0) {
-                    highestExpense = t.getAmount();
-                }
-            }
-        }
+        // Tổng và giao dịch lớn nhất tính trong một lượt (có cache), không nạp từng giao dịch
+        Map<String, Object> statistics = ReportController.getAdvancedStatistics(userId, startDate, endDate);
+        Money totalIncome = Money.of((BigDecimal) statistics.get("income"));
+        Money totalExpense = Money.of((BigDecimal) statistics.get("expense"));
 
         // Calculate averages (per month)
-        BigDecimal avgIncome = totalIncome.divide(BigDecimal.valueOf(6), RoundingMode.HALF_UP);
-        BigDecimal avgExpense = totalExpense.divide(BigDecimal.valueOf(6), RoundingMode.HALF_UP);
+        data.avgIncome = totalIncome.divide(6);
+        data.avgExpense = totalExpense.divide(6);
+        data.highestIncome = Money.of((BigDecimal) statistics.get("highest_income"));
+        data.highestExpense = Money.of((BigDecimal) statistics.get("highest_expense"));
+    }
 
-        // Update stat cards
-        updateStatCard(0, formatCurrency(avgIncome));
-        updateStatCard(1, formatCurrency(avgExpense));
-        updateStatCard(2, formatCurrency(highestIncome));
-        updateStatCard(3, formatCurrency(highestExpense));
+    private void setLoading(boolean loading) {
+        lblLoading.setVisible(loading);
     }
 
     private void updateStatCard(int index, String value) {
@@ -571,38 +562,49 @@ public class ReportPanel extends JPanel {
 
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             java.io.File file = fileChooser.getSelectedFile();
-            try {
-                generateHTMLReport(file);
-                JOptionPane.showMessageDialog(this,
-                        "Xuất báo cáo thành công!",
-                        "Thành công",
-                        JOptionPane.INFORMATION_MESSAGE);
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this,
-                        "Lỗi khi xuất báo cáo: " + e.getMessage(),
-                        "Lỗi",
-                        JOptionPane.ERROR_MESSAGE);
-            }
+            int userId = AuthController.getCurrentUser().getId();
+            String fullName = AuthController.getCurrentUser().getFullName();
+            int selectedMonth = monthCombo.getSelectedIndex() + 1;
+            int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
+            String monthName = monthCombo.getSelectedItem().toString();
+
+            btnExport.setEnabled(false);
+            BackgroundExecutor.run(() -> {
+                try {
+                    generateHTMLReport(file, userId, fullName, selectedYear, selectedMonth, monthName);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }).whenCompleteAsync((result, error) -> {
+                btnExport.setEnabled(true);
+                if (error == null) {
+                    JOptionPane.showMessageDialog(this,
+                            "Xuất báo cáo thành công!",
+                            "Thành công",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    JOptionPane.showMessageDialog(this,
+                            "Lỗi khi xuất báo cáo: " + cause.getMessage(),
+                            "Lỗi",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }, BackgroundExecutor.EDT);
         }
     }
 
-    private void generateHTMLReport(java.io.File file) throws Exception {
-        int userId = AuthController.getCurrentUser().getId();
-        int selectedMonth = monthCombo.getSelectedIndex() + 1;
-        int selectedYear = Integer.parseInt((String) yearCombo.getSelectedItem());
-
+    private static void generateHTMLReport(java.io.File file, int userId, String fullName,
+                                           int selectedYear, int selectedMonth, String monthName) throws Exception {
         YearMonth yearMonth = YearMonth.of(selectedYear, selectedMonth);
         LocalDate startDate = yearMonth.atDay(1);
         LocalDate endDate = yearMonth.atEndOfMonth();
 
-        BigDecimal totalIncome = TransactionController.getTotalIncome(userId, startDate, endDate);
-        BigDecimal totalExpense = TransactionController.getTotalExpense(userId, startDate, endDate);
-        BigDecimal balance = totalIncome.subtract(totalExpense);
+        Money totalIncome = TransactionController.getTotalIncome(userId, startDate, endDate);
+        Money totalExpense = TransactionController.getTotalExpense(userId, startDate, endDate);
+        Money balance = totalIncome.minus(totalExpense);
         List<Object[]> expenseByCategory = TransactionController.getExpenseByCategory(
                 userId, startDate, endDate);
 
-        String monthName = monthCombo.getSelectedItem().toString();
-
         StringBuilder html = new StringBuilder();
         html.append("<!DOCTYPE html>\n")
                 .append("<html>\n")
@@ -648,15 +650,14 @@ public class ReportPanel extends JPanel {
                 .append("            <th>Tỷ lệ</th>\n")
                 .append("        </tr>\n");
 
-        BigDecimal totalExpenseForCategories = totalExpense.compareTo(BigDecimal.ZERO) > 0 ?
-                totalExpense : BigDecimal.ONE;
+        long totalExpenseForCategories = totalExpense.isPositive() ?
+                totalExpense.getMinor() : Money.toMinor(BigDecimal.ONE);
 
         int counter = 1;
         for (Object[] row : expenseByCategory) {
             String category = (String) row[0];
             BigDecimal amount = (BigDecimal) row[1];
-            BigDecimal percentage = amount.multiply(BigDecimal.valueOf(100))
-                    .divide(totalExpenseForCategories, 1, RoundingMode.HALF_UP);
+            BigDecimal percentage = Money.percent(Money.toMinor(amount), totalExpenseForCategories, 1);
 
             html.append("        <tr>\n")
                     .append("            <td>").append(counter++).append("</td>\n")
@@ -671,7 +672,7 @@ public class ReportPanel extends JPanel {
                 .append("    <div class='footer'>\n")
                 .append("        <p>Báo cáo được tạo tự động bởi ứng dụng Quản lý thu chi cá nhân</p>\n")
                 .append("        <p>Ngày tạo: ").append(LocalDate.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))).append("</p>\n")
-                .append("        <p>Người dùng: ").append(AuthController.getCurrentUser().getFullName()).append("</p>\n")
+                .append("        <p>Người dùng: ").append(fullName).append("</p>\n")
                 .append("    </div>\n")
                 .append("</body>\n")
                 .append("</html>");
@@ -681,7 +682,40 @@ public class ReportPanel extends JPanel {
         }
     }
 
-    private String formatCurrency(BigDecimal amount) {
-        return String.format("%,d VND", amount.intValue());
+    private static String formatCurrency(BigDecimal amount) {
+        return String.format("%,d VND", amount.longValue());
+    }
+
+    private static String formatCurrency(Money amount) {
+        return String.format("%,d VND", amount.getUnits());
+    }
+
+    // Tỷ lệ phần trăm (0-100) của part trên whole cho thanh tiến trình
+    private int shareOf(Money part, Money whole) {
+        return whole.isZero() ? 0 : Money.percent(part.getMinor(), whole.getMinor(), 0).intValue();
+    }
+
+    // Dữ liệu của một lần tải báo cáo, đọc trên luồng nền rồi áp dụng lên giao diện trên EDT
+    private static class ReportData {
+        private List<Object[]> expenseByCategory;
+        private Money totalIncome;
+        private Money totalExpense;
+        private final List<MonthTotals> trend = new ArrayList<>();
+        private Money avgIncome;
+        private Money avgExpense;
+        private Money highestIncome;
+        private Money highestExpense;
+    }
+
+    private static class MonthTotals {
+        private final LocalDate month;
+        private final Money income;
+        private final Money expense;
+
+        MonthTotals(LocalDate month, Money income, Money expense) {
+            this.month = month;
+            this.income = income;
+            this.expense = expense;
+        }
     }
-}
\ No newline at end of file
+}
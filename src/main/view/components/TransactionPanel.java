@@ -1,24 +1,54 @@
 package main.view.components;
 
 import main.controller.AuthController;
+import main.controller.CsvImportService;
 import main.controller.TransactionController;
+import main.controller.TransactionQuery;
+import main.event.ChangeBatch;
+import main.model.Category;
+import main.model.ImportReport;
 import main.model.Transaction;
+import main.view.LiveRefresh;
 import main.view.TransactionDialog;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.text.NumberFormat;
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class TransactionPanel extends JPanel {
+    private static final int FILTER_DELAY_MS = 300;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final Color INVALID_INPUT = new Color(255, 220, 220);
+
+    // Cùng thứ tự với cmbSort; "Mặc định" = liên quan nhất khi có từ khóa, nếu không thì mới nhất
+    private static final String[] SORT_NAMES = {"Mặc định", "Mới nhất", "Cũ nhất", "Số tiền giảm dần", "Số tiền tăng dần"};
+    private static final TransactionQuery.Sort[] SORTS = {
+            TransactionQuery.Sort.RELEVANCE, TransactionQuery.Sort.NEWEST, TransactionQuery.Sort.OLDEST,
+            TransactionQuery.Sort.AMOUNT_DESC, TransactionQuery.Sort.AMOUNT_ASC
+    };
+
     private JTable table;
-    private DefaultTableModel tableModel;
+    private JScrollPane scrollPane;
+    private PagedTransactionTableModel tableModel; // Đọc giao dịch theo trang khi cuộn
+    private FilteredTransactionTableModel filteredModel; // Kết quả lọc, hiển thị khi có điều kiện lọc
+    private JTextField txtSearch, txtFromDate, txtToDate, txtMinAmount, txtMaxAmount;
+    private JComboBox<String> cmbType, cmbSort;
+    private JButton btnCategories;
+    private List<Category> categories = new ArrayList<>();
+    private final Set<Integer> selectedCategoryIds = new TreeSet<>();
+    private Timer filterTimer;
     private TransactionController controller;
-    private List<Transaction> currentList; // Lưu danh sách hiện tại để lấy ID khi sửa/xóa
+    private JLabel lblLoading;
 
     public TransactionPanel() {
         controller = new TransactionController();
@@ -28,6 +58,9 @@ public class TransactionPanel extends JPanel {
 
         initComponents();
         refreshTable(); // Load dữ liệu lần đầu
+
+        // Thêm/sửa/xóa/nhập đều phát sự kiện, bảng chỉ cập nhật các dòng bị ảnh hưởng
+        LiveRefresh.listen(this, this::applyChanges);
     }
 
     private void initComponents() {
@@ -38,37 +71,44 @@ public class TransactionPanel extends JPanel {
         JButton btnAdd = createButton("Thêm mới", new Color(46, 204, 113));
         JButton btnEdit = createButton("Sửa", new Color(52, 152, 219));
         JButton btnDelete = createButton("Xóa", new Color(231, 76, 60));
+        JButton btnImport = createButton("Nhập CSV", new Color(241, 196, 15));
 
         toolbar.add(btnAdd);
         toolbar.add(btnEdit);
         toolbar.add(btnDelete);
+        toolbar.add(btnImport);
 
-        add(toolbar, BorderLayout.NORTH);
+        lblLoading = new JLabel("Đang tải...");
+        lblLoading.setForeground(Color.GRAY);
+        lblLoading.setVisible(false);
+        toolbar.add(lblLoading);
+
+        JPanel north = new JPanel(new GridLayout(2, 1));
+        north.add(toolbar);
+        north.add(createFilterBar());
+        add(north, BorderLayout.NORTH);
 
         // 2. Bảng dữ liệu (Table)
-        String[] columnNames = {"ID", "Ngày", "Danh mục", "Loại", "Số tiền", "Mô tả"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Không cho sửa trực tiếp trên bảng
-            }
-        };
+        tableModel = new PagedTransactionTableModel(this::setLoading);
+        filteredModel = new FilteredTransactionTableModel(this::setLoading);
 
         table = new JTable(tableModel);
+        // Hai model có cùng các cột: giữ nguyên cấu hình cột bên dưới khi đổi model
+        table.setAutoCreateColumnsFromModel(false);
         table.setRowHeight(30);
         table.setFont(new Font("Arial", Font.PLAIN, 14));
 
         // Ẩn cột ID
-        table.getColumnModel().getColumn(0).setMinWidth(0);
-        table.getColumnModel().getColumn(0).setMaxWidth(0);
-        table.getColumnModel().getColumn(0).setWidth(0);
+        table.getColumnModel().getColumn(TransactionTableModel.ID_COLUMN).setMinWidth(0);
+        table.getColumnModel().getColumn(TransactionTableModel.ID_COLUMN).setMaxWidth(0);
+        table.getColumnModel().getColumn(TransactionTableModel.ID_COLUMN).setWidth(0);
 
         // Format cột số tiền sang bên phải
         DefaultTableCellRenderer rightRenderer = new DefaultTableCellRenderer();
         rightRenderer.setHorizontalAlignment(JLabel.RIGHT);
-        table.getColumnModel().getColumn(4).setCellRenderer(rightRenderer);
+        table.getColumnModel().getColumn(TransactionTableModel.AMOUNT_COLUMN).setCellRenderer(rightRenderer);
 
-        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane = new JScrollPane(table);
         add(scrollPane, BorderLayout.CENTER);
 
         // --- Xử lý sự kiện ---
@@ -77,21 +117,20 @@ public class TransactionPanel extends JPanel {
         btnAdd.addActionListener(e -> {
             TransactionDialog dialog = new TransactionDialog((JFrame) SwingUtilities.getWindowAncestor(this), null, "Thêm giao dịch mới");
             dialog.setVisible(true);
-            if (dialog.isSuccess()) {
-                refreshTable();
-            }
         });
 
         // Nút Sửa
         btnEdit.addActionListener(e -> {
             int selectedRow = table.getSelectedRow();
             if (selectedRow >= 0) {
-                Transaction t = currentList.get(selectedRow); // Lấy object từ list dựa trên index
-                TransactionDialog dialog = new TransactionDialog((JFrame) SwingUtilities.getWindowAncestor(this), t, "Sửa giao dịch");
-                dialog.setVisible(true);
-                if (dialog.isSuccess()) {
-                    refreshTable();
+                Transaction t = currentModel().getTransactionAt(selectedRow); // Lấy object từ trang đã tải
+                if (t == null) {
+                    JOptionPane.showMessageDialog(this, "Dữ liệu đang được tải, vui lòng thử lại!");
+                    return;
                 }
+                // Hộp thoại sửa trên bản sao, bảng nhận bản mới qua sự kiện sau khi lưu
+                TransactionDialog dialog = new TransactionDialog((JFrame) SwingUtilities.getWindowAncestor(this), t.copy(), "Sửa giao dịch");
+                dialog.setVisible(true);
             } else {
                 JOptionPane.showMessageDialog(this, "Vui lòng chọn giao dịch cần sửa!");
             }
@@ -101,11 +140,14 @@ public class TransactionPanel extends JPanel {
         btnDelete.addActionListener(e -> {
             int selectedRow = table.getSelectedRow();
             if (selectedRow >= 0) {
+                Transaction t = currentModel().getTransactionAt(selectedRow);
+                if (t == null) {
+                    JOptionPane.showMessageDialog(this, "Dữ liệu đang được tải, vui lòng thử lại!");
+                    return;
+                }
                 int confirm = JOptionPane.showConfirmDialog(this, "Bạn có chắc chắn muốn xóa giao dịch này?", "Xác nhận", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    int id = (int) table.getValueAt(selectedRow, 0);
-                    if (controller.deleteTransaction(id)) {
-                        refreshTable();
+                    if (controller.deleteTransaction(t.getId())) {
                         JOptionPane.showMessageDialog(this, "Xóa thành công!");
                     }
                 }
@@ -113,28 +155,235 @@ public class TransactionPanel extends JPanel {
                 JOptionPane.showMessageDialog(this, "Vui lòng chọn giao dịch cần xóa!");
             }
         });
+
+        // Nút Nhập CSV
+        btnImport.addActionListener(e -> importCsv(btnImport));
+    }
+
+    // Nhập file CSV (định dạng giống file xuất từ báo cáo) trên luồng nền
+    private void importCsv(JButton btnImport) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Nhập giao dịch từ CSV");
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        java.nio.file.Path file = fileChooser.getSelectedFile().toPath();
+        int userId = AuthController.getCurrentUser().getId();
+        btnImport.setEnabled(false);
+
+        new SwingWorker<ImportReport, Void>() {
+            @Override
+            protected ImportReport doInBackground() throws Exception {
+                return CsvImportService.importFile(userId, file);
+            }
+
+            @Override
+            protected void done() {
+                btnImport.setEnabled(true);
+                try {
+                    ImportReport report = get();
+                    StringBuilder message = new StringBuilder(report.toString());
+                    List<ImportReport.LineError> errors = report.getErrors();
+                    for (int i = 0; i < Math.min(10, errors.size()); i++) {
+                        message.append("\n").append(errors.get(i));
+                    }
+                    JOptionPane.showMessageDialog(TransactionPanel.this, message.toString());
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(TransactionPanel.this, "Nhập file thất bại: " + ex.getMessage(),
+                            "Lỗi", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
-    // Hàm được gọi từ MainFrame khi chuyển tab
+    // Tải lại toàn bộ bảng (lần đầu và sau khi nhập hàng loạt)
     public void refreshTable() {
-        tableModel.setRowCount(0); // Xóa dữ liệu cũ
         int userId = AuthController.getCurrentUser().getId();
-        currentList = controller.getAllTransactions(userId);
-
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
-
-        for (Transaction t : currentList) {
-            Object[] row = {
-                    t.getId(),
-                    t.getTransactionDate().format(dateFormatter),
-                    t.getCategoryName(),
-                    t.getType().equals("INCOME") ? "Thu nhập" : "Chi tiêu",
-                    currencyFormatter.format(t.getAmount()),
-                    t.getDescription()
-            };
-            tableModel.addRow(row);
+        tableModel.reload(userId);
+    }
+
+    // Thanh lọc: từ khóa, loại, danh mục, khoảng ngày, khoảng số tiền và thứ tự sắp xếp
+    private JPanel createFilterBar() {
+        JPanel filterBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterBar.setBackground(Color.WHITE);
+
+        txtSearch = new JTextField(14);
+        cmbType = new JComboBox<>(new String[]{"Tất cả", "Thu nhập", "Chi tiêu"});
+        btnCategories = new JButton("Danh mục: Tất cả");
+        txtFromDate = new JTextField(7);
+        txtToDate = new JTextField(7);
+        txtMinAmount = new JTextField(7);
+        txtMaxAmount = new JTextField(7);
+        cmbSort = new JComboBox<>(SORT_NAMES);
+        JButton btnClear = new JButton("Bỏ lọc");
+
+        filterBar.add(new JLabel("Tìm:"));
+        filterBar.add(txtSearch);
+        filterBar.add(cmbType);
+        filterBar.add(btnCategories);
+        filterBar.add(new JLabel("Từ ngày:"));
+        filterBar.add(txtFromDate);
+        filterBar.add(new JLabel("đến:"));
+        filterBar.add(txtToDate);
+        filterBar.add(new JLabel("Số tiền từ:"));
+        filterBar.add(txtMinAmount);
+        filterBar.add(new JLabel("đến:"));
+        filterBar.add(txtMaxAmount);
+        filterBar.add(cmbSort);
+        filterBar.add(btnClear);
+
+        // Chỉ lọc khi người dùng ngừng gõ FILTER_DELAY_MS
+        filterTimer = new Timer(FILTER_DELAY_MS, e -> applyFilters());
+        filterTimer.setRepeats(false);
+        DocumentListener restartTimer = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterTimer.restart();
+            }
+        };
+        for (JTextField field : new JTextField[]{txtSearch, txtFromDate, txtToDate, txtMinAmount, txtMaxAmount}) {
+            field.getDocument().addDocumentListener(restartTimer);
+        }
+        cmbType.addActionListener(e -> applyFilters());
+        cmbSort.addActionListener(e -> applyFilters());
+        btnCategories.addActionListener(e -> chooseCategories());
+
+        btnClear.addActionListener(e -> {
+            for (JTextField field : new JTextField[]{txtSearch, txtFromDate, txtToDate, txtMinAmount, txtMaxAmount}) {
+                field.setText("");
+            }
+            selectedCategoryIds.clear();
+            btnCategories.setText("Danh mục: Tất cả");
+            cmbType.setSelectedIndex(0);
+            cmbSort.setSelectedIndex(0);
+            filterTimer.stop();
+            applyFilters();
+        });
+        return filterBar;
+    }
+
+    // Chọn nhiều danh mục trong một danh sách; không chọn danh mục nào = mọi danh mục
+    private void chooseCategories() {
+        categories = controller.getCategories(AuthController.getCurrentUser().getId());
+        JList<String> list = new JList<>(categories.stream().map(Category::getName).toArray(String[]::new));
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        for (int i = 0; i < categories.size(); i++) {
+            if (selectedCategoryIds.contains(categories.get(i).getId())) {
+                list.addSelectionInterval(i, i);
+            }
         }
+        JScrollPane listScroll = new JScrollPane(list);
+        listScroll.setPreferredSize(new Dimension(250, 300));
+        int option = JOptionPane.showConfirmDialog(this, listScroll, "Lọc theo danh mục",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        selectedCategoryIds.clear();
+        for (int index : list.getSelectedIndices()) {
+            selectedCategoryIds.add(categories.get(index).getId());
+        }
+        btnCategories.setText(selectedCategoryIds.isEmpty()
+                ? "Danh mục: Tất cả" : "Danh mục: " + selectedCategoryIds.size());
+        applyFilters();
+    }
+
+    // Dựng TransactionQuery từ thanh lọc; không có điều kiện nào thì quay lại danh sách đầy đủ theo trang
+    private void applyFilters() {
+        int userId = AuthController.getCurrentUser().getId();
+        int typeIndex = cmbType.getSelectedIndex();
+        TransactionQuery query = TransactionQuery.forUser(userId)
+                .text(txtSearch.getText())
+                .types(typeIndex == 1 ? new String[]{"INCOME"} : typeIndex == 2 ? new String[]{"EXPENSE"} : new String[0])
+                .categories(selectedCategoryIds)
+                .between(parseDate(txtFromDate), parseDate(txtToDate))
+                .amountBetween(parseAmount(txtMinAmount), parseAmount(txtMaxAmount))
+                .sortBy(SORTS[cmbSort.getSelectedIndex()])
+                .limit(FilteredTransactionTableModel.PAGE_SIZE)
+                .build();
+
+        if (!query.isFiltered() && query.getSort() == TransactionQuery.Sort.NEWEST) {
+            if (table.getModel() != tableModel) {
+                table.setModel(tableModel);
+            }
+            return;
+        }
+        filteredModel.setQuery(query);
+        if (table.getModel() != filteredModel) {
+            table.setModel(filteredModel);
+        }
+    }
+
+    // Ô trống = không lọc; nhập sai thì tô đỏ ô và bỏ qua điều kiện đó
+    private LocalDate parseDate(JTextField field) {
+        String text = field.getText().trim();
+        LocalDate date = null;
+        if (!text.isEmpty()) {
+            try {
+                date = LocalDate.parse(text, DATE_FORMAT);
+            } catch (DateTimeParseException e) {
+                // Giữ null
+            }
+        }
+        field.setBackground(!text.isEmpty() && date == null ? INVALID_INPUT : Color.WHITE);
+        return date;
+    }
+
+    private BigDecimal parseAmount(JTextField field) {
+        String text = field.getText().trim();
+        BigDecimal amount = null;
+        if (!text.isEmpty()) {
+            try {
+                amount = new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                // Giữ null
+            }
+        }
+        field.setBackground(!text.isEmpty() && amount == null ? INVALID_INPUT : Color.WHITE);
+        return amount;
+    }
+
+    private TransactionTableModel currentModel() {
+        return (TransactionTableModel) table.getModel();
+    }
+
+    // Áp dụng từng dòng thay đổi, giữ nguyên các dòng đang xem khi có dòng được thêm/xóa phía trên
+    private void applyChanges(ChangeBatch batch) {
+        if (table.getModel() == filteredModel) {
+            // Danh sách đầy đủ vẫn được cập nhật để dùng khi bỏ lọc
+            tableModel.applyChanges(batch, 0);
+            if (batch.affectsTransactions(AuthController.getCurrentUser().getId())) {
+                filteredModel.refresh();
+            }
+            return;
+        }
+
+        JViewport viewport = scrollPane.getViewport();
+        Point position = viewport.getViewPosition();
+        int firstVisibleRow = table.rowAtPoint(position);
+
+        int shift = tableModel.applyChanges(batch, firstVisibleRow < 0 ? 0 : firstVisibleRow);
+        if (shift != 0 && position.y > 0) {
+            position.y = Math.max(0, position.y + shift * table.getRowHeight());
+            viewport.setViewPosition(position);
+        }
+    }
+
+    private void setLoading(boolean loading) {
+        lblLoading.setVisible(loading);
     }
 
     private JButton createButton(String text, Color bg) {
@@ -0,0 +1,62 @@
+package main.view.components;
+
+import main.model.Transaction;
+
+import javax.swing.table.AbstractTableModel;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Các cột chung của bảng giao dịch (danh sách theo trang và kết quả tìm kiếm),
+ * để TransactionPanel đổi model mà giữ nguyên cấu hình cột của JTable.
+ */
+public abstract class TransactionTableModel extends AbstractTableModel {
+    static final int ID_COLUMN = 0;
+    static final int AMOUNT_COLUMN = 4;
+
+    private static final String[] COLUMN_NAMES = {"ID", "Ngày", "Danh mục", "Loại", "Số tiền", "Mô tả"};
+
+    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private final NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("vi", "VN"));
+
+    /**
+     * Giao dịch ở dòng row, null nếu chưa có dữ liệu cho dòng đó
+     */
+    public abstract Transaction getTransactionAt(int row);
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false; // Không cho sửa trực tiếp trên bảng
+    }
+
+    // Giá trị hiển thị của một giao dịch ở cột column
+    protected Object columnValue(Transaction t, int column) {
+        switch (column) {
+            case 0:
+                return t.getId();
+            case 1:
+                return t.getTransactionDate().format(dateFormatter);
+            case 2:
+                return t.getCategoryName();
+            case 3:
+                return t.getType().equals("INCOME") ? "Thu nhập" : "Chi tiêu";
+            case 4:
+                return currencyFormatter.format(t.getAmount());
+            case 5:
+                return t.getDescription();
+            default:
+                return null;
+        }
+    }
+}